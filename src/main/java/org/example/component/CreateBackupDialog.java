@@ -5,14 +5,23 @@ import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
+import lombok.Getter;
+import org.example.service.BackupFormat;
 import org.example.service.BackupService;
 
-public class CreateBackupDialog extends Dialog<BackupService.BackupResult> {
+// Собирает параметры бэкапа; сам бэкап выполняется вызывающим кодом в фоне
+public class CreateBackupDialog extends Dialog<CreateBackupDialog.BackupRequest> {
+    private static final String FULL_BACKUP = "Полный бэкап схемы";
+    private static final String TABLE_BACKUP = "Бэкап одной таблицы";
+    private static final String INCREMENTAL_BACKUP = "Инкрементальный бэкап схемы";
 
     private ComboBox<String> backupTypeCombo;
     private ComboBox<String> tableCombo;
+    private ComboBox<BackupFormat> formatCombo;
+    private Spinner<Integer> jobsSpinner;
+    private CheckBox compressCheckBox;
 
-    public CreateBackupDialog(BackupService backupService, java.util.List<String> availableTables) {
+    public CreateBackupDialog(java.util.List<String> availableTables) {
         setTitle("Создание бэкапа");
         setHeaderText("Настройте параметры бэкапа");
 
@@ -28,7 +37,7 @@ public class CreateBackupDialog extends Dialog<BackupService.BackupResult> {
 
         setResultConverter(buttonType -> {
             if (buttonType == createButtonType) {
-                return performBackup(backupService);
+                return buildRequest();
             }
             return null;
         });
@@ -46,8 +55,8 @@ public class CreateBackupDialog extends Dialog<BackupService.BackupResult> {
         typeLabel.setStyle("-fx-font-weight: bold;");
 
         backupTypeCombo = new ComboBox<>();
-        backupTypeCombo.getItems().addAll("Полный бэкап схемы", "Бэкап одной таблицы");
-        backupTypeCombo.setValue("Полный бэкап схемы");
+        backupTypeCombo.getItems().addAll(FULL_BACKUP, TABLE_BACKUP, INCREMENTAL_BACKUP);
+        backupTypeCombo.setValue(FULL_BACKUP);
 
         typeGrid.add(typeLabel, 0, 0);
         typeGrid.add(backupTypeCombo, 1, 0);
@@ -66,13 +75,42 @@ public class CreateBackupDialog extends Dialog<BackupService.BackupResult> {
         typeGrid.add(tableLabel, 0, 1);
         typeGrid.add(tableCombo, 1, 1);
 
+        Label formatLabel = new Label("Формат:");
+        formatLabel.setStyle("-fx-font-weight: bold;");
+
+        formatCombo = new ComboBox<>();
+        formatCombo.getItems().addAll(BackupFormat.values());
+        formatCombo.setValue(BackupService.DEFAULT_FORMAT);
+
+        typeGrid.add(formatLabel, 0, 2);
+        typeGrid.add(formatCombo, 1, 2);
+
+        Label jobsLabel = new Label("Потоков:");
+        jobsLabel.setStyle("-fx-font-weight: bold;");
+
+        jobsSpinner = new Spinner<>(1, 16, BackupService.DEFAULT_PARALLEL_JOBS);
+        jobsSpinner.setPrefWidth(80);
+        jobsSpinner.setTooltip(new Tooltip("Больше одного потока - таблицы выгружаются параллельно из общего снимка в архив .zip"));
+
+        typeGrid.add(jobsLabel, 0, 3);
+        typeGrid.add(jobsSpinner, 1, 3);
+
+        compressCheckBox = new CheckBox("Сжимать (gzip)");
+        compressCheckBox.setSelected(BackupService.DEFAULT_COMPRESS);
+        compressCheckBox.setTooltip(new Tooltip("Скрипт сохраняется в .sql.gz, сжатие идет на всех ядрах процессора"));
+
+        typeGrid.add(compressCheckBox, 1, 4);
+
         backupTypeCombo.valueProperty().addListener((obs, oldVal, newVal) -> {
-            boolean isTableBackup = "Бэкап одной таблицы".equals(newVal);
+            boolean isTableBackup = TABLE_BACKUP.equals(newVal);
             tableLabel.setVisible(isTableBackup);
             tableCombo.setVisible(isTableBackup);
+            jobsLabel.setDisable(!FULL_BACKUP.equals(newVal));
+            jobsSpinner.setDisable(!FULL_BACKUP.equals(newVal));
         });
 
-        Label infoLabel = new Label("Бэкап будет сохранен в папке backup/ в корне проекта");
+        Label infoLabel = new Label("Бэкап будет сохранен в папке backup/ в корне проекта.\n" +
+                "Инкрементальный бэкап содержит только изменения после последнего архива .zip этой схемы");
         infoLabel.setStyle("-fx-text-fill: #666; -fx-font-size: 11;");
 
         mainPanel.getChildren().addAll(typeGrid, infoLabel);
@@ -80,18 +118,20 @@ public class CreateBackupDialog extends Dialog<BackupService.BackupResult> {
         return mainPanel;
     }
 
-    private BackupService.BackupResult performBackup(BackupService backupService) {
+    private BackupRequest buildRequest() {
         String backupType = backupTypeCombo.getValue();
 
-        if ("Бэкап одной таблицы".equals(backupType)) {
+        if (TABLE_BACKUP.equals(backupType)) {
             String selectedTable = tableCombo.getValue();
             if (selectedTable == null || selectedTable.isEmpty()) {
                 showError("Выберите таблицу для бэкапа");
                 return null;
             }
-            return backupService.createTableBackup(selectedTable);
+            return new BackupRequest(selectedTable, formatCombo.getValue(), 1, compressCheckBox.isSelected(), false);
         } else {
-            return backupService.createBackup();
+            boolean incremental = INCREMENTAL_BACKUP.equals(backupType);
+            return new BackupRequest(null, formatCombo.getValue(), incremental ? 1 : jobsSpinner.getValue(),
+                    compressCheckBox.isSelected(), incremental);
         }
     }
 
@@ -102,4 +142,27 @@ public class CreateBackupDialog extends Dialog<BackupService.BackupResult> {
         alert.setContentText(message);
         alert.showAndWait();
     }
-}
\ No newline at end of file
+
+    @Getter
+    public static class BackupRequest {
+        // null - полный бэкап схемы
+        private final String tableName;
+        private final BackupFormat format;
+        private final int jobs;
+        private final boolean compress;
+        // Только изменения после последнего архива схемы
+        private final boolean incremental;
+
+        public BackupRequest(String tableName, BackupFormat format, int jobs, boolean compress, boolean incremental) {
+            this.tableName = tableName;
+            this.format = format;
+            this.jobs = jobs;
+            this.compress = compress;
+            this.incremental = incremental;
+        }
+
+        public boolean isFullSchema() {
+            return tableName == null;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package org.example.component;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+import org.example.entity.Column;
+import org.example.entity.ResultTable;
+import org.example.entity.Table;
+import org.example.service.DatabaseService;
+import org.example.util.EnvConfig;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Виртуальный список строк таблицы для TableView: строки подгружаются блоками по мере прокрутки,
+// в памяти держится ограниченное число блоков (LRU). Все поля меняются только в FX-потоке.
+// Начальный размер - оценка планировщика, без COUNT(*); неполный блок задает точный конец таблицы,
+// полный последний блок расширяет список еще на блок.
+public class LazyRowList extends ObservableListBase<Map<String, Object>> {
+    // Заглушка для строк, блок которых еще загружается; сравнивается по ссылке
+    public static final Map<String, Object> LOADING_ROW = Collections.unmodifiableMap(new HashMap<>());
+
+    // Последний запрошенный блок загружается первым: при быстрой прокрутке устаревшие запросы ждут
+    private static final ExecutorService LOADER = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingDeque<>() {
+                @Override
+                public boolean offer(Runnable runnable) {
+                    return offerFirst(runnable);
+                }
+            },
+            r -> {
+                Thread thread = new Thread(r, "table-block-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final DatabaseService databaseService;
+    private final String tableName;
+    private final List<String> columns;
+    private final List<String> keyColumns;
+    private final int blockSize;
+    private final int maxBlocks;
+
+    private final LinkedHashMap<Integer, List<Map<String, Object>>> blocks;
+    private final Set<Integer> pending = new HashSet<>();
+    private int size;
+    private boolean sizeExact;
+    // Читаются и фоновым загрузчиком
+    private volatile int generation;
+    private volatile int lastRequestedBlock;
+    private volatile boolean disposed;
+    private Consumer<Throwable> errorHandler = e -> System.err.println("Block load failed: " + e.getMessage());
+
+    public LazyRowList(DatabaseService databaseService, String tableName, int blockSize) throws SQLException {
+        this.databaseService = databaseService;
+        this.tableName = tableName;
+        this.blockSize = blockSize > 0 ? blockSize : 100;
+        this.maxBlocks = Math.max(4, EnvConfig.getInt("TABLE_CACHE_BLOCKS", 50));
+
+        Table table = databaseService.getCatalog().getTable(tableName);
+        if (table == null) {
+            throw new SQLException("Table '" + tableName + "' not found in schema '" + databaseService.getCurrentSchema() + "'");
+        }
+        List<String> names = new ArrayList<>();
+        for (Column column : table.getColumns()) {
+            names.add(column.getName());
+        }
+        this.columns = Collections.unmodifiableList(names);
+        this.keyColumns = databaseService.getCatalog().getPrimaryKey(tableName);
+
+        this.blocks = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Map<String, Object>>> eldest) {
+                return size() > maxBlocks;
+            }
+        };
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public void setErrorHandler(Consumer<Throwable> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    // Оценивает число строк в фоне и публикует новый размер; кэш блоков сбрасывается
+    public void refresh(Runnable onReady) {
+        int gen = ++generation;
+        pending.clear();
+        Set<Integer> cachedBlocks = new HashSet<>(blocks.keySet());
+        blocks.clear();
+
+        LOADER.execute(() -> {
+            try {
+                long estimate = databaseService.estimateRows(tableName);
+                Platform.runLater(() -> {
+                    if (disposed || gen != generation) return;
+                    // Без статистики показываем один блок: его загрузка уточнит размер
+                    sizeExact = false;
+                    resize((int) Math.min(Integer.MAX_VALUE, estimate > 0 ? estimate : blockSize), cachedBlocks);
+                    if (onReady != null) onReady.run();
+                });
+            } catch (Exception e) {
+                Platform.runLater(() -> {
+                    if (!disposed && gen == generation) errorHandler.accept(e);
+                });
+            }
+        });
+    }
+
+    public void dispose() {
+        disposed = true;
+        blocks.clear();
+        pending.clear();
+    }
+
+    // false, пока размер - оценка, а конец таблицы еще не загружен
+    public boolean isSizeExact() {
+        return sizeExact;
+    }
+
+    public boolean isLoaded(Map<String, Object> row) {
+        return row != null && row != LOADING_ROW;
+    }
+
+    @Override
+    public Map<String, Object> get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        int block = index / blockSize;
+        List<Map<String, Object>> rows = blocks.get(block);
+        if (rows == null) {
+            requestBlock(block, false);
+            return LOADING_ROW;
+        }
+        int offset = index % blockSize;
+        return offset < rows.size() ? rows.get(offset) : LOADING_ROW;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void resize(int newSize, Set<Integer> previouslyCached) {
+        int oldSize = size;
+        size = newSize;
+
+        beginChange();
+        // Строки ранее загруженных блоков снова станут заглушками до перечитывания
+        for (int block : previouslyCached) {
+            int from = block * blockSize;
+            int to = Math.min(Math.min(oldSize, newSize), from + blockSize);
+            if (from < to) {
+                nextReplace(from, to, Collections.nCopies(to - from, LOADING_ROW));
+            }
+        }
+        if (newSize > oldSize) {
+            nextAdd(oldSize, newSize);
+        } else if (newSize < oldSize) {
+            nextRemove(newSize, Collections.nCopies(oldSize - newSize, LOADING_ROW));
+        }
+        endChange();
+    }
+
+    private void requestBlock(int block, boolean prefetch) {
+        if (disposed || pending.contains(block)) return;
+        pending.add(block);
+        if (!prefetch) {
+            lastRequestedBlock = block;
+        }
+
+        // Границы берем из соседних блоков в кэше: тогда запрос идет по индексу первичного ключа без OFFSET
+        Object[] afterKey = null;
+        Object[] beforeKey = null;
+        if (!keyColumns.isEmpty()) {
+            List<Map<String, Object>> previous = blocks.get(block - 1);
+            List<Map<String, Object>> next = blocks.get(block + 1);
+            if (previous != null && previous.size() == blockSize) {
+                afterKey = keyOf(previous.get(previous.size() - 1));
+            } else if (next != null && !next.isEmpty()) {
+                beforeKey = keyOf(next.get(0));
+            }
+        }
+
+        int gen = generation;
+        Object[] after = afterKey;
+        Object[] before = beforeKey;
+        LOADER.execute(() -> loadBlock(gen, block, after, before, prefetch));
+    }
+
+    private void loadBlock(int gen, int block, Object[] afterKey, Object[] beforeKey, boolean prefetch) {
+        if (disposed || gen != generation || Math.abs(block - lastRequestedBlock) > maxBlocks) {
+            // Пользователь уже ушел далеко от этого блока - не тратим запрос
+            Platform.runLater(() -> pending.remove(block));
+            return;
+        }
+
+        try {
+            ResultTable result;
+            if (afterKey != null) {
+                result = databaseService.fetchPage(tableName, keyColumns, afterKey, true, blockSize);
+            } else if (beforeKey != null) {
+                result = databaseService.fetchPage(tableName, keyColumns, beforeKey, false, blockSize);
+                if (result.getRowCount() < blockSize) {
+                    // Перед следующим блоком строк меньше, чем по оценке размера, - ключ не задает позицию блока
+                    result = databaseService.fetchPageByOffset(tableName, keyColumns, (long) block * blockSize, blockSize);
+                }
+            } else {
+                result = databaseService.fetchPageByOffset(tableName, keyColumns, (long) block * blockSize, blockSize);
+            }
+            List<Map<String, Object>> rows = result.rows();
+            Platform.runLater(() -> onBlockLoaded(gen, block, rows, prefetch));
+        } catch (Exception e) {
+            Platform.runLater(() -> {
+                pending.remove(block);
+                if (!disposed && gen == generation) errorHandler.accept(e);
+            });
+        }
+    }
+
+    private void onBlockLoaded(int gen, int block, List<Map<String, Object>> rows, boolean prefetch) {
+        pending.remove(block);
+        if (disposed || gen != generation) return;
+
+        blocks.put(block, rows);
+
+        int from = block * blockSize;
+        int end = from + rows.size();
+        int to = Math.min(size, end);
+        beginChange();
+        if (from < to) {
+            nextReplace(from, to, Collections.nCopies(to - from, LOADING_ROW));
+        }
+        if (rows.size() < blockSize) {
+            // Неполный блок - конец таблицы: лишние строки-заглушки оценки убираются
+            if (end < size) {
+                blocks.keySet().removeIf(cached -> cached > block);
+                nextRemove(end, Collections.nCopies(size - end, LOADING_ROW));
+                size = end;
+            }
+            sizeExact = true;
+        } else if (end >= size) {
+            // Полный последний блок - строк больше оценки, открываем следующий блок
+            nextAdd(size, end + blockSize);
+            size = end + blockSize;
+            sizeExact = false;
+        }
+        endChange();
+
+        // Предзагрузка следующего блока по ходу прокрутки (только для блоков, запрошенных самим TableView)
+        int nextBlock = block + 1;
+        if (!prefetch && (long) nextBlock * blockSize < size && !blocks.containsKey(nextBlock)) {
+            requestBlock(nextBlock, true);
+        }
+    }
+
+    private Object[] keyOf(Map<String, Object> row) {
+        Object[] key = new Object[keyColumns.size()];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = row.get(keyColumns.get(i));
+        }
+        return key;
+    }
+}
@@ -3,16 +3,23 @@ package org.example.component;
 import javafx.collections.FXCollections;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
+import lombok.Getter;
+import org.example.entity.BackupManifest;
 import org.example.service.BackupService;
 
 import java.io.File;
 import java.util.List;
 
-public class RestoreBackupDialog extends Dialog<File> {
+public class RestoreBackupDialog extends Dialog<RestoreBackupDialog.RestoreRequest> {
+    private static final String ALL_TABLES = "Все таблицы";
 
     private ListView<File> backupsList;
+    private ComboBox<String> tableCombo;
+    private CheckBox atomicCheckBox;
+    private Spinner<Integer> jobsSpinner;
 
     public RestoreBackupDialog(BackupService backupService) {
         setTitle("Восстановление из бэкапа");
@@ -31,7 +38,11 @@ public class RestoreBackupDialog extends Dialog<File> {
 
         setResultConverter(buttonType -> {
             if (buttonType == restoreButtonType) {
-                return backupsList.getSelectionModel().getSelectedItem();
+                File selected = backupsList.getSelectionModel().getSelectedItem();
+                String table = tableCombo.getValue();
+                return selected == null ? null
+                        : new RestoreRequest(selected, atomicCheckBox.isSelected(), jobsSpinner.getValue(),
+                        table == null || ALL_TABLES.equals(table) ? null : table);
             }
             return null;
         });
@@ -56,31 +67,110 @@ public class RestoreBackupDialog extends Dialog<File> {
 
         List<File> backups = backupService.getAvailableBackups();
         backupsList.setItems(FXCollections.observableArrayList(backups));
+        // Оглавления берутся из каталога бэкапов - файлы при прокрутке списка не открываются
+        backupsList.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(File file, boolean empty) {
+                super.updateItem(file, empty);
+                if (empty || file == null) {
+                    setText(null);
+                    return;
+                }
+                BackupManifest manifest = backupService.getBackupInfo(file);
+                setText(manifest == null ? file.getName()
+                        : String.format("%s  [%s, таблиц: %d, строк: %d]", file.getName(), manifest.getSchema(),
+                        manifest.getTables().size(), manifest.getTotalRows()));
+            }
+        });
 
         Label selectedInfoLabel = new Label();
         selectedInfoLabel.setStyle("-fx-text-fill: #666; -fx-font-size: 11;");
 
+        ListView<String> contentsList = new ListView<>();
+        contentsList.setPrefHeight(120);
+
+        Label tableLabel = new Label("Восстановить:");
+        tableCombo = new ComboBox<>();
+        tableCombo.getItems().add(ALL_TABLES);
+        tableCombo.setValue(ALL_TABLES);
+        tableCombo.setTooltip(new Tooltip("Одна таблица сверяется с копией по первичному ключу: строки, которых нет " +
+                "в копии, удаляются, остальные обновляются или добавляются. Таблица без первичного ключа заменяется " +
+                "целиком, если на нее не ссылаются другие таблицы. Данные читаются прямо по смещению из оглавления, " +
+                "без просмотра всего файла"));
+        HBox tableBox = new HBox(10, tableLabel, tableCombo);
+
         backupsList.getSelectionModel().selectedItemProperty().addListener(
                 (obs, oldVal, newVal) -> {
+                    tableCombo.getItems().setAll(ALL_TABLES);
+                    tableCombo.setValue(ALL_TABLES);
+                    contentsList.getItems().clear();
                     if (newVal != null) {
+                        String baseBackup = backupService.getBaseBackupName(newVal);
+                        BackupManifest manifest = backupService.getBackupInfo(newVal);
                         selectedInfoLabel.setText(
-                                String.format("Файл: %s\nРазмер: %.2f KB\nИзменен: %s",
+                                String.format("Файл: %s\nРазмер: %.2f KB%s\nИзменен: %s%s%s",
                                         newVal.getName(),
                                         newVal.length() / 1024.0,
-                                        new java.util.Date(newVal.lastModified())
+                                        newVal.getName().toLowerCase().endsWith(".gz") ? " (сжат gzip)" : "",
+                                        new java.util.Date(newVal.lastModified()),
+                                        manifest != null && manifest.getDurationMillis() > 0
+                                                ? String.format("\nСоздавался: %.1f с", manifest.getDurationMillis() / 1000.0)
+                                                : "",
+                                        baseBackup != null
+                                                ? "\nИнкремент от " + baseBackup + " - будет восстановлена вся цепочка"
+                                                : ""
                                 )
                         );
+                        if (manifest != null) {
+                            for (BackupManifest.TableEntry table : manifest.getTables()) {
+                                contentsList.getItems().add(table.getName() + " - строк: " + table.getRows());
+                                if (!manifest.isIncremental()) {
+                                    tableCombo.getItems().add(table.getName());
+                                }
+                            }
+                        }
                     } else {
                         selectedInfoLabel.setText("");
                     }
                 }
         );
 
+        atomicCheckBox = new CheckBox("Одной транзакцией (при ошибке ничего не изменится)");
+        atomicCheckBox.setSelected(BackupService.RESTORE_ATOMIC);
+
+        Label jobsLabel = new Label("Потоков загрузки:");
+        jobsSpinner = new Spinner<>(1, 16, BackupService.DEFAULT_RESTORE_JOBS);
+        jobsSpinner.setPrefWidth(80);
+        jobsSpinner.setTooltip(new Tooltip("Таблицы загружаются параллельно, каждая в своей транзакции; " +
+                "ключи и внешние ключи создаются после загрузки"));
+        HBox jobsBox = new HBox(10, jobsLabel, jobsSpinner);
+        jobsBox.disableProperty().bind(atomicCheckBox.selectedProperty()
+                .or(tableCombo.valueProperty().isNotEqualTo(ALL_TABLES)));
+        atomicCheckBox.disableProperty().bind(tableCombo.valueProperty().isNotEqualTo(ALL_TABLES));
+
         Label warningLabel = new Label("⚠️ Внимание: восстановление перезапишет существующие данные!");
         warningLabel.setStyle("-fx-text-fill: #cc0000; -fx-font-weight: bold;");
 
-        mainPanel.getChildren().addAll(listLabel, backupsList, selectedInfoLabel, warningLabel);
+        mainPanel.getChildren().addAll(listLabel, backupsList, selectedInfoLabel, contentsList, tableBox,
+                atomicCheckBox, jobsBox, warningLabel);
 
         return mainPanel;
     }
-}
\ No newline at end of file
+
+    @Getter
+    public static class RestoreRequest {
+        private final File backupFile;
+        // true - все или ничего; false - параллельная загрузка по таблицам
+        private final boolean atomic;
+        private final int jobs;
+        // null - весь бэкап, иначе только эта таблица
+        private final String tableName;
+
+        public RestoreRequest(File backupFile, boolean atomic, int jobs, String tableName) {
+            this.backupFile = backupFile;
+            this.atomic = atomic;
+            this.jobs = jobs;
+            this.tableName = tableName;
+        }
+    }
+}
@@ -1,18 +1,37 @@
 package org.example.controller;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
 import javafx.beans.property.SimpleObjectProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
 import javafx.fxml.FXML;
+import javafx.scene.Node;
 import javafx.scene.control.*;
+import javafx.scene.control.skin.VirtualFlow;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.KeyCode;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
+import javafx.util.Duration;
 import org.example.component.*;
 import org.example.entity.Column;
+import org.example.entity.ResultTable;
 import org.example.service.*;
+import org.example.util.EnvConfig;
+import org.example.util.PastedRows;
 
 import java.io.File;
+import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -27,16 +46,27 @@ public class MainController {
     @FXML private ListView<String> tablesList;
     @FXML private TableView<Map<String, Object>> tableView;
     @FXML private Label statusLabel;
+    @FXML private Label taskLabel;
+    @FXML private ProgressBar taskProgress;
+    @FXML private Button cancelTaskButton;
 
     // Query tab
     @FXML private TextArea queryTextArea;
     @FXML private TableView<Object> queryResultTable;
     @FXML private ComboBox<String> savedQueriesCombo;
     @FXML private Label currentTableLabel;
+    @FXML private Button executeQueryButton;
+    @FXML private Button stopQueryButton;
+    @FXML private Spinner<Integer> queryTimeoutSpinner;
+    @FXML private CheckBox queryCacheCheckBox;
+    @FXML private Menu exportFormatMenu;
 
     @FXML private Button editRecordButton;
     @FXML private Button addRecordButton;
     @FXML private Button deleteRecordButton;
+    @FXML private Button previousPageButton;
+    @FXML private Button nextPageButton;
+    @FXML private Label pageLabel;
 
     private DatabaseService databaseService;
     private SchemaService schemaService;
@@ -45,14 +75,25 @@ public class MainController {
     private QueryService queryService;
     private BackupService backupService;
     private ExportService exportService;
+    private ImportService importService;
+    private final TaskRunner taskRunner = new TaskRunner();
 
     private String currentTable;
+    private LazyRowList lazyRows;
+    private Task<QueryService.QueryResult> runningQuery;
+    // Результат последнего запроса по порциям - из них же читает экспорт
+    private final List<ResultTable> queryResultChunks = new ArrayList<>();
+    private Timeline queryTimer;
     private boolean isInitialized = false;
+    // Формат всех экспортов - выбирается в меню Export
+    private ExportFormat exportFormat = ExportService.DEFAULT_FORMAT;
+
+    private static final int PAGE_SIZE = EnvConfig.getInt("TABLE_PAGE_SIZE", 100);
 
     public void setServices(DatabaseService databaseService, SchemaService schemaService,
                             TableService tableService, NavigationService navigationService,
                             QueryService queryService, BackupService backupService,
-                            ExportService exportService) {
+                            ExportService exportService, ImportService importService) {
         this.databaseService = databaseService;
         this.schemaService = schemaService;
         this.tableService = tableService;
@@ -60,6 +101,7 @@ public class MainController {
         this.queryService = queryService;
         this.backupService = backupService;
         this.exportService = exportService;
+        this.importService = importService;
 
 
         if (isInitialized) {
@@ -78,16 +120,41 @@ public class MainController {
                 (obs, oldVal, newVal) -> onTableSelected(newVal)
         );
 
-        tableView.getSelectionModel().selectedItemProperty().addListener(
-                (obs, oldVal, newVal) -> updateButtonsState()
+        tableView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        tableView.getSelectionModel().getSelectedIndices().addListener(
+                (ListChangeListener<Integer>) change -> updateButtonsState()
         );
 
+        tableView.skinProperty().addListener((obs, oldSkin, newSkin) -> {
+            VirtualFlow<?> flow = findVirtualFlow();
+            if (flow != null) {
+                flow.positionProperty().addListener((o, oldPos, newPos) -> updatePagerControls());
+            }
+        });
+
+        taskRunner.getRunningTasks().addListener((ListChangeListener<Task<?>>) change -> updateTaskIndicator());
+
+        queryTimeoutSpinner.setValueFactory(
+                new SpinnerValueFactory.IntegerSpinnerValueFactory(0, 24 * 60 * 60, QueryService.DEFAULT_TIMEOUT_SECONDS));
+
+        setupExportFormatMenu();
         setupKeyboardShortcuts();
         if (navigationService != null) {
             setupNavigation();
         }
     }
 
+    private void setupExportFormatMenu() {
+        ToggleGroup group = new ToggleGroup();
+        for (ExportFormat format : ExportFormat.values()) {
+            RadioMenuItem item = new RadioMenuItem(format.getDisplayName());
+            item.setToggleGroup(group);
+            item.setSelected(format == exportFormat);
+            item.setOnAction(e -> exportFormat = format);
+            exportFormatMenu.getItems().add(item);
+        }
+    }
+
     private void setupKeyboardShortcuts() {
         queryTextArea.setOnKeyPressed(event -> {
             switch (event.getCode()) {
@@ -108,11 +175,19 @@ public class MainController {
             }
         });
 
-        statusLabel.setText("Горячие клавиши: F5 - выполнить запрос, F9 - сохранить запрос, Ctrl+Del - удалить запрос");
+        tableView.setOnKeyPressed(event -> {
+            if (event.getCode() == KeyCode.V && event.isShortcutDown()) {
+                pasteRecords();
+                event.consume();
+            }
+        });
+
+        statusLabel.setText("Горячие клавиши: F5 - выполнить запрос, F9 - сохранить запрос, Ctrl+Del - удалить запрос, " +
+                "Ctrl+V в таблице - вставить строки из буфера");
     }
 
     private void updateButtonsState() {
-        boolean hasSelection = tableView.getSelectionModel().getSelectedItem() != null;
+        boolean hasSelection = !tableView.getSelectionModel().getSelectedIndices().isEmpty();
         boolean tableSelected = currentTable != null;
 
         editRecordButton.setDisable(!hasSelection || !tableSelected);
@@ -121,20 +196,13 @@ public class MainController {
     }
 
     private void initializeData() {
-        try {
-            loadSchemas();
-            statusLabel.setText("Подключено к базе данных");
-
-            updateButtonsState();
-        } catch (Exception e) {
-            showAlert("Ошибка инициализации", e.getMessage());
-        }
+        loadSchemas();
+        statusLabel.setText("Подключено к базе данных");
+        updateButtonsState();
     }
 
     private void loadSchemas() {
-        try {
-            List<String> schemas = schemaService.getAvailableSchemas();
-
+        taskRunner.submit("Загрузка схем", progress -> schemaService.getAvailableSchemas(), schemas -> {
             String currentSelection = schemaCombo.getValue();
 
             schemaCombo.getItems().setAll(schemas);
@@ -149,10 +217,41 @@ public class MainController {
             } else if (!schemas.isEmpty()) {
                 schemaCombo.setValue(schemas.get(0));
             }
+        }, e -> showAlert("Ошибка загрузки схем", e.getMessage()));
+    }
+
+    // Индикатор в строке состояния показывает последнюю запущенную фоновую операцию
+    private void updateTaskIndicator() {
+        List<Task<?>> tasks = taskRunner.getRunningTasks();
+        boolean busy = !tasks.isEmpty();
 
-        } catch (Exception ex) {
-            showAlert("Ошибка загрузки схем", ex.getMessage());
+        taskLabel.textProperty().unbind();
+        taskProgress.progressProperty().unbind();
+        for (Node node : List.of(taskLabel, taskProgress, cancelTaskButton)) {
+            node.setVisible(busy);
+            node.setManaged(busy);
         }
+        if (!busy) {
+            return;
+        }
+
+        Task<?> task = tasks.get(tasks.size() - 1);
+        if (tasks.size() > 1) {
+            taskLabel.textProperty().bind(Bindings.concat(task.messageProperty(), " (+" + (tasks.size() - 1) + ")"));
+        } else {
+            taskLabel.textProperty().bind(task.messageProperty());
+        }
+        taskProgress.progressProperty().bind(task.progressProperty());
+    }
+
+    @FXML
+    private void cancelCurrentTask() {
+        List<Task<?>> tasks = taskRunner.getRunningTasks();
+        if (tasks.isEmpty()) return;
+
+        Task<?> task = tasks.get(tasks.size() - 1);
+        task.cancel(true);
+        statusLabel.setText("Операция отменена: " + task.getTitle());
     }
 
     @FXML
@@ -160,20 +259,25 @@ public class MainController {
         String schema = schemaCombo.getValue();
         if (schema == null) return;
 
-        try {
+        taskRunner.submit("Переключение схемы", progress -> {
             schemaService.switchToSchema(schema);
+            return databaseService.getCatalog();
+        }, catalog -> {
             currentSchemaLabel.setText("Текущая: " + schema);
             refreshAfterTableOperation();
             statusLabel.setText("Схема изменена на: " + schema);
-        } catch (Exception ex) {
-            showAlert("Ошибка установки схемы", ex.getMessage());
+        }, e -> {
+            showAlert("Ошибка установки схемы", e.getMessage());
             loadSchemas();
-        }
+        });
     }
 
     private void loadTablesForCurrentSchema() {
-        try {
-            List<String> tables = databaseService.getTablesInCurrentSchema();
+        loadTablesForCurrentSchema(null);
+    }
+
+    private void loadTablesForCurrentSchema(Runnable onLoaded) {
+        taskRunner.submit("Загрузка списка таблиц", progress -> databaseService.getTablesInCurrentSchema(), tables -> {
             tablesList.getItems().setAll(tables);
 
             tablesList.getSelectionModel().clearSelection();
@@ -181,12 +285,10 @@ public class MainController {
             if (currentTableLabel != null) {
                 currentTableLabel.setText("Выберите таблицу для просмотра данных");
             }
-            tableView.getItems().clear();
-            tableView.getColumns().clear();
-
-        } catch (Exception ex) {
-            showAlert("Ошибка загрузки таблиц", ex.getMessage());
-        }
+            clearTableView();
+            updateButtonsState();
+            if (onLoaded != null) onLoaded.run();
+        }, e -> showAlert("Ошибка загрузки таблиц", e.getMessage()));
     }
 
     private void onTableSelected(String tableName) {
@@ -201,28 +303,21 @@ public class MainController {
     }
 
     private void loadTablePreview(String tableName) {
-        try {
-            DatabaseService.QueryResult result = databaseService.fetchPreview(tableName, 100);
-
-            tableView.getItems().clear();
-            tableView.getColumns().clear();
-
-            List<String> columns = result.getColumns();
-
-            List<Map<String, Object>> sortedRows = new ArrayList<>(result.getRows());
-            if (!sortedRows.isEmpty() && sortedRows.get(0).containsKey("id")) {
-                sortedRows.sort((row1, row2) -> {
-                    Object id1 = row1.get("id");
-                    Object id2 = row2.get("id");
-                    if (id1 instanceof Number && id2 instanceof Number) {
-                        return Long.compare(((Number) id1).longValue(), ((Number) id2).longValue());
-                    }
-                    return 0;
-                });
+        clearTableView();
+
+        taskRunner.submit("Загрузка таблицы " + tableName,
+                progress -> new LazyRowList(databaseService, tableName, PAGE_SIZE), rows -> {
+            if (!tableName.equals(currentTable)) {
+                // Пока грузилась структура, пользователь выбрал другую таблицу
+                rows.dispose();
+                return;
             }
+            rows.setErrorHandler(e -> statusLabel.setText("Ошибка загрузки строк: " + e.getMessage()));
 
-            for (String colName : columns) {
+            for (String colName : rows.getColumns()) {
                 TableColumn<Map<String, Object>, Object> col = new TableColumn<>(colName);
+                // Сортировка TableView перебрала бы весь список, то есть загрузила бы всю таблицу
+                col.setSortable(false);
                 col.setCellValueFactory(cellData -> {
                     Map<String, Object> row = cellData.getValue();
                     Object val = row.get(colName);
@@ -231,82 +326,182 @@ public class MainController {
                 tableView.getColumns().add(col);
             }
 
-            for (Map<String, Object> row : sortedRows) {
-                Map<String, Object> safeRow = new HashMap<>();
-                for (String col : columns) {
-                    safeRow.put(col, row.getOrDefault(col, null));
-                }
-                tableView.getItems().add(safeRow);
+            lazyRows = rows;
+            tableView.setItems(rows);
+            // Размер уточняется по мере загрузки блоков
+            rows.addListener((ListChangeListener<Map<String, Object>>) change -> {
+                if (rows == lazyRows) updatePagerControls();
+            });
+            rows.refresh(() -> {
+                updatePagerControls();
+                statusLabel.setText("Загружена таблица: " + tableName + " (строк: " + rowCountText() + ")");
+            });
+        }, e -> {
+            if (e instanceof IllegalArgumentException) {
+                showAlert("Неверное имя таблицы", e.getMessage());
+            } else {
+                showAlert("Ошибка превью", e.getMessage());
             }
+        });
+    }
+
+    private void clearTableView() {
+        if (lazyRows != null) {
+            lazyRows.dispose();
+            lazyRows = null;
+        }
+        tableView.setItems(FXCollections.observableArrayList());
+        tableView.getColumns().clear();
+        updatePagerControls();
+    }
+
+    private void updatePagerControls() {
+        boolean hasRows = lazyRows != null && !lazyRows.isEmpty();
+        int first = hasRows ? firstVisibleRow() : 0;
+        previousPageButton.setDisable(!hasRows || first == 0);
+        nextPageButton.setDisable(!hasRows || first + PAGE_SIZE >= lazyRows.size());
+        pageLabel.setText(hasRows
+                ? String.format("%d–%d из %s", first + 1, Math.min(lazyRows.size(), first + PAGE_SIZE), rowCountText())
+                : "");
+    }
+
+    // Пока конец таблицы не загружен, число строк - оценка планировщика
+    private String rowCountText() {
+        return (lazyRows.isSizeExact() ? "" : "~") + lazyRows.size();
+    }
+
+    private int firstVisibleRow() {
+        VirtualFlow<?> flow = findVirtualFlow();
+        if (flow != null && flow.getFirstVisibleCell() != null) {
+            return Math.max(0, flow.getFirstVisibleCell().getIndex());
+        }
+        return 0;
+    }
+
+    private VirtualFlow<?> findVirtualFlow() {
+        Node node = tableView.lookup(".virtual-flow");
+        return node instanceof VirtualFlow ? (VirtualFlow<?>) node : null;
+    }
+
+    @FXML
+    private void showNextPage() {
+        if (lazyRows == null) return;
+        scrollToRow(firstVisibleRow() + PAGE_SIZE);
+    }
+
+    @FXML
+    private void showPreviousPage() {
+        if (lazyRows == null) return;
+        scrollToRow(firstVisibleRow() - PAGE_SIZE);
+    }
 
-            statusLabel.setText("Загружена таблица: " + tableName);
+    private void scrollToRow(int index) {
+        int target = Math.max(0, Math.min(index, lazyRows.size() - 1));
+        tableView.scrollTo(target);
+        Platform.runLater(this::updatePagerControls);
+    }
 
-        } catch (IllegalArgumentException iae) {
-            showAlert("Неверное имя таблицы", iae.getMessage());
-        } catch (Exception ex) {
-            showAlert("Ошибка превью", ex.getMessage());
+    // Выделенные строки; null, если часть из них еще загружается
+    private List<Map<String, Object>> getSelectedRecords() {
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (Integer index : tableView.getSelectionModel().getSelectedIndices()) {
+            Map<String, Object> row = tableView.getItems().get(index);
+            if (row == LazyRowList.LOADING_ROW) {
+                return null;
+            }
+            records.add(row);
         }
+        return records;
     }
 
     @FXML
     private void editSelectedRecord() {
-        Map<String, Object> selectedRecord = tableView.getSelectionModel().getSelectedItem();
+        List<Map<String, Object>> selectedRecords = getSelectedRecords();
 
-        if (selectedRecord == null) {
+        if (selectedRecords == null) {
+            showAlert("Ошибка", "Дождитесь загрузки выделенных записей");
+            return;
+        }
+        if (selectedRecords.isEmpty()) {
             showAlert("Ошибка", "Выберите запись для редактирования");
             return;
         }
+        Map<String, Object> selectedRecord = selectedRecords.get(0);
 
         if (currentTable == null) {
             showAlert("Ошибка", "Таблица не выбрана");
             return;
         }
 
-        try {
-            org.example.entity.Table tableInfo = tableService.getTableInfo(currentTable);
-
-            EditRecordDialog dialog = new EditRecordDialog(currentTable, selectedRecord, tableInfo.getColumns());
+        String tableName = currentTable;
+        taskRunner.submit("Загрузка структуры таблицы", progress -> tableService.getTableInfo(tableName),
+                tableInfo -> showEditDialog(tableName, selectedRecords, tableInfo.getColumns()),
+                e -> {
+                    System.err.println("Failed to load table info, trying alternative approach: " + e.getMessage());
+                    e.printStackTrace();
 
-            dialog.showAndWait().ifPresent(updatedData -> {
-                if (updatedData != null && !updatedData.equals(selectedRecord)) {
-                    updateRecordInDatabase(currentTable, selectedRecord, updatedData);
-                }
-            });
+                    try {
+                        List<Column> dynamicColumns = createDynamicColumnsFromPreview();
+                        showEditDialog(tableName, selectedRecords, dynamicColumns);
 
-        } catch (Exception e) {
-            System.err.println("Failed to load table info, trying alternative approach: " + e.getMessage());
-            e.printStackTrace();
+                    } catch (Exception ex) {
+                        System.err.println("Alternative approach also failed: " + ex.getMessage());
+                        ex.printStackTrace();
 
-            try {
-                List<Column> dynamicColumns = createDynamicColumnsFromPreview();
-                EditRecordDialog dialog = new EditRecordDialog(currentTable, selectedRecord, dynamicColumns);
+                        try {
+                            List<Column> simpleColumns = createSimpleColumnsFromRecord(selectedRecord);
+                            showEditDialog(tableName, selectedRecords, simpleColumns);
 
-                dialog.showAndWait().ifPresent(updatedData -> {
-                    if (updatedData != null && !updatedData.equals(selectedRecord)) {
-                        updateRecordInDatabase(currentTable, selectedRecord, updatedData);
+                        } catch (Exception finalEx) {
+                            String errorMessage = "Не удалось загрузить информацию о таблице: " + e.getMessage();
+                            showAlert("Ошибка", errorMessage);
+                        }
                     }
                 });
+    }
 
-            } catch (Exception ex) {
-                System.err.println("Alternative approach also failed: " + ex.getMessage());
-                ex.printStackTrace();
-
-                try {
-                    List<Column> simpleColumns = createSimpleColumnsFromRecord(selectedRecord);
-                    EditRecordDialog dialog = new EditRecordDialog(currentTable, selectedRecord, simpleColumns);
+    private void showEditDialog(String tableName, List<Map<String, Object>> selectedRecords, List<Column> columns) {
+        Map<String, Object> selectedRecord = selectedRecords.get(0);
+        EditRecordDialog dialog = new EditRecordDialog(tableName, selectedRecord, columns);
+        if (selectedRecords.size() > 1) {
+            dialog.setHeaderText("Измененные поля будут записаны во все выделенные записи: " + selectedRecords.size());
+        }
 
-                    dialog.showAndWait().ifPresent(updatedData -> {
-                        if (updatedData != null && !updatedData.equals(selectedRecord)) {
-                            updateRecordInDatabase(currentTable, selectedRecord, updatedData);
-                        }
-                    });
+        dialog.showAndWait().ifPresent(updatedData -> {
+            if (updatedData == null || updatedData.equals(selectedRecord)) {
+                return;
+            }
+            if (selectedRecords.size() == 1) {
+                updateRecordInDatabase(tableName, selectedRecord, updatedData);
+                return;
+            }
 
-                } catch (Exception finalEx) {
-                    String errorMessage = "Не удалось загрузить информацию о таблице: " + e.getMessage();
-                    showAlert("Ошибка", errorMessage);
+            // В остальные записи переносим только поля, которые пользователь поменял
+            Map<String, Object> changes = new LinkedHashMap<>();
+            updatedData.forEach((column, value) -> {
+                if (!sameValue(value, selectedRecord.get(column))) {
+                    changes.put(column, value);
                 }
+            });
+            if (!changes.isEmpty()) {
+                updateRecordsInDatabase(tableName, selectedRecords, changes);
+            }
+        });
+    }
+
+    // Значения из диалога приходят в других типах (Double вместо BigDecimal, строки вместо дат)
+    private static boolean sameValue(Object newValue, Object oldValue) {
+        if (newValue == null || oldValue == null) {
+            return newValue == oldValue;
+        }
+        if (newValue instanceof Number && oldValue instanceof Number) {
+            try {
+                return new BigDecimal(newValue.toString()).compareTo(new BigDecimal(oldValue.toString())) == 0;
+            } catch (NumberFormatException e) {
+                return newValue.equals(oldValue);
             }
         }
+        return String.valueOf(newValue).equals(String.valueOf(oldValue));
     }
 
     private List<Column> createDynamicColumnsFromPreview() {
@@ -356,29 +551,63 @@ public class MainController {
             return;
         }
 
-        try {
-            org.example.entity.Table tableInfo = tableService.getTableInfo(currentTable);
-
-            AddRecordDialog dialog = new AddRecordDialog(currentTable, tableInfo.getColumns());
+        String tableName = currentTable;
+        taskRunner.submit("Загрузка структуры таблицы", progress -> tableService.getTableInfo(tableName), tableInfo -> {
+            AddRecordDialog dialog = new AddRecordDialog(tableName, tableInfo.getColumns());
 
             dialog.showAndWait().ifPresent(newData -> {
                 if (newData != null && !newData.isEmpty()) {
-                    insertRecordToDatabase(currentTable, newData);
+                    insertRecordToDatabase(tableName, newData);
                 }
             });
-
-        } catch (Exception e) {
+        }, e -> {
             System.err.println("Error in addNewRecord: " + e.getMessage());
             e.printStackTrace();
             showAlert("Ошибка", "Не удалось открыть форму добавления: " + e.getMessage());
+        });
+    }
+
+    // Строки из буфера обмена (скопированные из Excel, по табуляции) добавляются одним пакетом
+    private void pasteRecords() {
+        if (currentTable == null) {
+            showAlert("Ошибка", "Выберите таблицу для вставки записей");
+            return;
+        }
+        String text = Clipboard.getSystemClipboard().getString();
+        if (text == null || text.isBlank()) {
+            showAlert("Ошибка", "В буфере обмена нет текста для вставки");
+            return;
         }
+
+        String tableName = currentTable;
+        taskRunner.submit("Разбор вставляемых строк",
+                progress -> PastedRows.parse(text, tableService.getTableInfo(tableName).getColumns()), rows -> {
+            if (rows.isEmpty()) {
+                showAlert("Ошибка", "В буфере обмена нет строк для вставки");
+                return;
+            }
+
+            Alert confirmation = new Alert(Alert.AlertType.CONFIRMATION);
+            confirmation.setTitle("Вставка записей");
+            confirmation.setHeaderText("Добавление записей: " + rows.size());
+            confirmation.setContentText("Добавить строки из буфера обмена в таблицу " + tableName + "?");
+            confirmation.showAndWait().ifPresent(response -> {
+                if (response == ButtonType.OK) {
+                    insertRecordsToDatabase(tableName, rows);
+                }
+            });
+        }, e -> showAlert("Ошибка", "Не удалось разобрать строки из буфера обмена: " + e.getMessage()));
     }
 
     @FXML
     private void deleteSelectedRecord() {
-        Map<String, Object> selectedRecord = tableView.getSelectionModel().getSelectedItem();
+        List<Map<String, Object>> selectedRecords = getSelectedRecords();
 
-        if (selectedRecord == null) {
+        if (selectedRecords == null) {
+            showAlert("Ошибка", "Дождитесь загрузки выделенных записей");
+            return;
+        }
+        if (selectedRecords.isEmpty()) {
             showAlert("Ошибка", "Выберите запись для удаления");
             return;
         }
@@ -390,20 +619,27 @@ public class MainController {
 
         Alert confirmation = new Alert(Alert.AlertType.CONFIRMATION);
         confirmation.setTitle("Подтверждение удаления");
-        confirmation.setHeaderText("Удаление записи");
-        confirmation.setContentText("Вы уверены, что хотите удалить выбранную запись?\nЭто действие нельзя отменить.");
+        if (selectedRecords.size() == 1) {
+            confirmation.setHeaderText("Удаление записи");
+            confirmation.setContentText("Вы уверены, что хотите удалить выбранную запись?\nЭто действие нельзя отменить.");
+        } else {
+            confirmation.setHeaderText("Удаление записей: " + selectedRecords.size());
+            confirmation.setContentText("Вы уверены, что хотите удалить выбранные записи?\nЭто действие нельзя отменить.");
+        }
 
         confirmation.showAndWait().ifPresent(response -> {
             if (response == ButtonType.OK) {
-                deleteRecordFromDatabase(currentTable, selectedRecord);
+                if (selectedRecords.size() == 1) {
+                    deleteRecordFromDatabase(currentTable, selectedRecords.get(0));
+                } else {
+                    deleteRecordsFromDatabase(currentTable, selectedRecords);
+                }
             }
         });
     }
 
     private void insertRecordToDatabase(String tableName, Map<String, Object> newData) {
-        try {
-            boolean success = tableService.insertData(tableName, newData);
-
+        taskRunner.submit("Добавление записи", progress -> tableService.insertData(tableName, newData), success -> {
             if (success) {
                 showSuccessNotification("Запись успешно добавлена в базу данных");
                 statusLabel.setText("Запись успешно добавлена");
@@ -412,16 +648,20 @@ public class MainController {
             } else {
                 showAlert("Ошибка", "Не удалось добавить запись в базу данных");
             }
+        }, this::handleDatabaseError);
+    }
 
-        } catch (Exception e) {
-            handleDatabaseError(e);
-        }
+    private void insertRecordsToDatabase(String tableName, List<Map<String, Object>> records) {
+        taskRunner.submit("Добавление записей", progress -> tableService.insertBatch(tableName, records), inserted -> {
+            showSuccessNotification("Добавлено записей: " + inserted);
+            statusLabel.setText("Добавлено записей: " + inserted);
+
+            refreshTableData();
+        }, this::handleDatabaseError);
     }
 
     private void deleteRecordFromDatabase(String tableName, Map<String, Object> recordData) {
-        try {
-            boolean success = tableService.deleteData(tableName, recordData);
-
+        taskRunner.submit("Удаление записи", progress -> tableService.deleteData(tableName, recordData), success -> {
             if (success) {
                 showSuccessNotification("Запись успешно удалена из базы данных");
                 statusLabel.setText("Запись успешно удалена");
@@ -430,21 +670,38 @@ public class MainController {
             } else {
                 showAlert("Ошибка", "Не удалось удалить запись из базы данных");
             }
+        }, this::handleDatabaseError);
+    }
 
-        } catch (Exception e) {
-            handleDatabaseError(e);
-        }
+    private void deleteRecordsFromDatabase(String tableName, List<Map<String, Object>> records) {
+        taskRunner.submit("Удаление записей", progress -> tableService.deleteBatch(tableName, records), deleted -> {
+            showSuccessNotification("Удалено записей: " + deleted);
+            statusLabel.setText("Удалено записей: " + deleted);
+
+            refreshTableData();
+        }, this::handleDatabaseError);
+    }
+
+    private void updateRecordsInDatabase(String tableName, List<Map<String, Object>> records, Map<String, Object> changes) {
+        taskRunner.submit("Обновление записей", progress -> {
+            List<Map<String, Object>> newRows = new ArrayList<>(Collections.nCopies(records.size(), changes));
+            return tableService.updateBatch(tableName, records, newRows);
+        }, updated -> {
+            showSuccessNotification("Обновлено записей: " + updated);
+            statusLabel.setText("Обновлено записей: " + updated);
+
+            refreshTableData();
+        }, this::handleDatabaseError);
     }
 
     private void updateRecordInDatabase(String tableName, Map<String, Object> oldData, Map<String, Object> newData) {
-        try {
+        taskRunner.submit("Обновление записи", progress -> {
             String primaryKey = tableService.findPrimaryKeyColumn(tableName);
             if (primaryKey != null) {
                 newData.remove(primaryKey);
             }
-
-            boolean success = tableService.updateData(tableName, oldData, newData);
-
+            return tableService.updateData(tableName, oldData, newData);
+        }, success -> {
             if (success) {
                 showSuccessNotification("Запись успешно обновлена в базе данных");
                 statusLabel.setText("Запись успешно обновлена");
@@ -453,10 +710,7 @@ public class MainController {
             } else {
                 showAlert("Ошибка", "Не удалось обновить запись");
             }
-
-        } catch (Exception e) {
-            handleDatabaseError(e);
-        }
+        }, this::handleDatabaseError);
     }
 
     private void showSuccessNotification(String message) {
@@ -468,8 +722,8 @@ public class MainController {
     }
 
     // Обновляем обработчик ошибок
-    private void handleDatabaseError(Exception e) {
-        String errorMessage = e.getMessage();
+    private void handleDatabaseError(Throwable e) {
+        String errorMessage = String.valueOf(e.getMessage());
 
         if (errorMessage.contains("violates not-null constraint")) {
             showAlert("Ошибка валидации", "Нельзя установить NULL значение для обязательного поля");
@@ -531,6 +785,14 @@ public class MainController {
     private void setupQueryTab() {
         updateSavedQueriesCombo();
 
+        queryCacheCheckBox.setSelected(queryService.isCacheEnabled());
+        queryCacheCheckBox.selectedProperty().addListener((obs, oldValue, enabled) -> {
+            queryService.setCacheEnabled(enabled);
+            if (!enabled) {
+                queryService.clearResultCache();
+            }
+        });
+
         savedQueriesCombo.setOnAction(e -> {
             String selectedQuery = savedQueriesCombo.getValue();
             if (selectedQuery != null) {
@@ -564,9 +826,7 @@ public class MainController {
     }
 
     private void createTableInDatabase(String tableName, List<Column> columns) {
-        try {
-            boolean success = tableService.createTable(tableName, columns);
-
+        taskRunner.submit("Создание таблицы " + tableName, progress -> tableService.createTable(tableName, columns), success -> {
             if (success) {
                 showSuccessNotification("Таблица '" + tableName + "' успешно создана");
                 statusLabel.setText("Таблица '" + tableName + "' создана");
@@ -575,10 +835,7 @@ public class MainController {
             } else {
                 showAlert("Ошибка", "Не удалось создать таблицу '" + tableName + "'");
             }
-
-        } catch (Exception e) {
-            handleDatabaseError(e);
-        }
+        }, this::handleDatabaseError);
     }
 
     @FXML
@@ -596,17 +853,13 @@ public class MainController {
 
         confirmation.showAndWait().ifPresent(response -> {
             if (response == ButtonType.OK) {
-                try {
-                    boolean success = tableService.dropTable(selectedTable);
+                taskRunner.submit("Удаление таблицы " + selectedTable, progress -> tableService.dropTable(selectedTable), success -> {
                     if (success) {
                         showSuccessNotification("Таблица '" + selectedTable + "' успешно удалена");
                         statusLabel.setText("Таблица '" + selectedTable + "' удалена");
-//                        loadTablesForCurrentSchema();
                         refreshAfterTableOperation();
                     }
-                } catch (Exception e) {
-                    showAlert("Ошибка удаления таблицы", e.getMessage());
-                }
+                }, e -> showAlert("Ошибка удаления таблицы", e.getMessage()));
             }
         });
     }
@@ -619,43 +872,56 @@ public class MainController {
             currentTableLabel.setText("Выберите таблицу для просмотра данных");
         }
 
-        tableView.getItems().clear();
-        tableView.getColumns().clear();
+        clearTableView();
 
         updateButtonsState();
     }
 
     @FXML
     private void refreshTablesList() {
-        loadTablesForCurrentSchema();
-        statusLabel.setText("Список таблиц обновлен");
+        tableService.clearMetadataCache();
+        loadTablesForCurrentSchema(() -> statusLabel.setText("Список таблиц обновлен"));
     }
 
     @FXML private void refreshTableData() {
-        if (currentTable != null) {
+        if (currentTable == null) {
+            return;
+        }
+        if (lazyRows == null || !currentTable.equals(lazyRows.getTableName())) {
             loadTablePreview(currentTable);
+            return;
         }
+        lazyRows.refresh(this::updatePagerControls);
     }
 
     @FXML
     private void createBackup() {
-        try {
-            List<String> tables = databaseService.getTablesInCurrentSchema();
-
-            CreateBackupDialog dialog = new CreateBackupDialog(backupService, tables);
+        taskRunner.submit("Загрузка списка таблиц", progress -> databaseService.getTablesInCurrentSchema(), tables -> {
+            CreateBackupDialog dialog = new CreateBackupDialog(tables);
 
-            dialog.showAndWait().ifPresent(result -> {
-                if (result != null && result.isSuccess()) {
-                    showSuccessNotification(result.getMessage());
-                    statusLabel.setText("Бэкап создан: " + result.getBackupFile().getName());
-                } else if (result != null) {
-                    showAlert("Ошибка создания бэкапа", result.getMessage());
+            dialog.showAndWait().ifPresent(request -> {
+                if (request != null) {
+                    performBackup(request);
                 }
             });
+        }, e -> showAlert("Ошибка", "Не удалось создать бэкап: " + e.getMessage()));
+    }
 
-        } catch (Exception e) {
-            showAlert("Ошибка", "Не удалось создать бэкап: " + e.getMessage());
-        }
+    private void performBackup(CreateBackupDialog.BackupRequest request) {
+        String title = request.isIncremental() ? "Инкрементальный бэкап схемы"
+                : request.isFullSchema() ? "Бэкап схемы" : "Бэкап таблицы " + request.getTableName();
+        taskRunner.submit(title, progress -> request.isIncremental()
+                ? backupService.createIncrementalBackup(request.getFormat(), request.isCompress(), progress)
+                : request.isFullSchema()
+                ? backupService.createBackup(request.getFormat(), request.getJobs(), request.isCompress(), progress)
+                : backupService.createTableBackup(request.getTableName(), request.getFormat(), request.isCompress()), result -> {
+            if (result.isSuccess()) {
+                showSuccessNotification(result.getMessage());
+                statusLabel.setText("Бэкап создан: " + result.getBackupFile().getName());
+            } else {
+                showAlert("Ошибка создания бэкапа", result.getMessage());
+            }
+        }, e -> showAlert("Ошибка", "Не удалось создать бэкап: " + e.getMessage()));
     }
 
     @FXML
@@ -663,13 +929,13 @@ public class MainController {
         try {
             RestoreBackupDialog restoreDialog = new RestoreBackupDialog(backupService);
 
-            restoreDialog.showAndWait().ifPresent(selectedBackup -> {
-                if (selectedBackup != null) {
-                    BackupConfirmationDialog confirmDialog = new BackupConfirmationDialog(selectedBackup);
+            restoreDialog.showAndWait().ifPresent(request -> {
+                if (request != null) {
+                    BackupConfirmationDialog confirmDialog = new BackupConfirmationDialog(request.getBackupFile());
 
                     confirmDialog.showAndWait().ifPresent(confirmed -> {
                         if (confirmed) {
-                            performRestore(selectedBackup);
+                            performRestore(request);
                         }
                     });
                 }
@@ -680,25 +946,22 @@ public class MainController {
         }
     }
 
-    private void performRestore(File backupFile) {
-        try {
-            BackupService.BackupResult result = backupService.restoreBackup(backupFile);
-
+    private void performRestore(RestoreBackupDialog.RestoreRequest request) {
+        File backupFile = request.getBackupFile();
+        String tableName = request.getTableName();
+        taskRunner.submit("Восстановление " + (tableName != null ? tableName + " из " : "") + backupFile.getName(),
+                progress -> tableName != null
+                        ? backupService.restoreTable(backupFile, tableName, progress)
+                        : backupService.restoreBackup(backupFile, request.isAtomic(), request.getJobs(), progress), result -> {
             if (result.isSuccess()) {
                 showSuccessNotification(result.getMessage());
-                statusLabel.setText("Бэкап восстановлен");
+                statusLabel.setText(tableName != null ? "Таблица " + tableName + " восстановлена" : "Бэкап восстановлен");
 
                 refreshAfterBackupRestore();
-                if (currentTable != null) {
-                    refreshTableData();
-                }
             } else {
                 showAlert("Ошибка восстановления", result.getMessage());
             }
-
-        } catch (Exception e) {
-            showAlert("Ошибка", "Не удалось восстановить бэкап: " + e.getMessage());
-        }
+        }, e -> showAlert("Ошибка", "Не удалось восстановить бэкап: " + e.getMessage()));
     }
 
     private void refreshAfterBackupRestore() {
@@ -720,48 +983,107 @@ public class MainController {
             showAlert("Ошибка", "Введите SQL запрос");
             return;
         }
+        if (runningQuery != null) {
+            statusLabel.setText("Запрос уже выполняется");
+            return;
+        }
 
-        try {
-            QueryService.QueryResult result = queryService.executeQuery(sqlQuery);
+        Integer timeout = queryTimeoutSpinner.getValue();
+        QueryService.QueryExecution execution = new QueryService.QueryExecution(timeout == null ? 0 : timeout);
 
-            if (result.isSuccess()) {
-                queryResultTable.getItems().clear();
-                queryResultTable.getColumns().clear();
+        queryResultTable.getItems().clear();
+        queryResultTable.getColumns().clear();
+        queryResultChunks.clear();
+
+        // Строки появляются в таблице порциями по мере чтения курсора, не дожидаясь конца результата
+        QueryService.RowConsumer consumer = new QueryService.RowConsumer() {
+            @Override
+            public void onColumns(List<String> columns) {
+                List<String> names = new ArrayList<>(columns);
+                Platform.runLater(() -> showQueryColumns(names));
+            }
 
-                if (!result.getColumns().isEmpty()) {
-                    displayQueryResults(result);
-                    showSuccessNotification("Запрос выполнен успешно. Найдено строк: " + result.getData().size());
-                    statusLabel.setText("Запрос выполнен успешно. Найдено строк: " + result.getData().size());
-                } else {
-                    showSuccessNotification(result.getMessage());
-                    statusLabel.setText(result.getMessage());
-                }
+            @Override
+            public void onRows(ResultTable rows) {
+                Platform.runLater(() -> {
+                    if (runningQuery != null && !runningQuery.isCancelled()) {
+                        queryResultChunks.add(rows);
+                        queryResultTable.getItems().addAll(rows.rows());
+                    }
+                });
+            }
+        };
+
+        Task<QueryService.QueryResult> task = taskRunner.submit("Выполнение запроса",
+                progress -> queryService.executeQuery(sqlQuery, execution, consumer), result -> {
+            String elapsed = " (" + formatElapsed(result.getElapsedMillis()) + ")";
+            if (result.isSuccess()) {
+                showSuccessNotification(result.getMessage() + elapsed);
+                statusLabel.setText(result.getMessage() + elapsed);
             } else {
                 showAlert("Ошибка выполнения запроса", result.getMessage());
-                statusLabel.setText("Ошибка выполнения запроса");
+                statusLabel.setText("Ошибка выполнения запроса" + elapsed);
             }
-        } catch (Exception e) {
+        }, e -> {
             showAlert("Критическая ошибка", "Неожиданная ошибка при выполнении запроса: " + e.getMessage());
             statusLabel.setText("Критическая ошибка выполнения запроса");
             e.printStackTrace(); // Для отладки
+        });
+
+        // Отмена задачи (кнопкой "Стоп" или в строке состояния) прерывает запрос на сервере
+        task.stateProperty().addListener((obs, oldState, state) -> {
+            if (state == Worker.State.CANCELLED) {
+                execution.cancel();
+            }
+            if (task.isDone()) {
+                finishQuery();
+            }
+        });
+
+        runningQuery = task;
+        executeQueryButton.setDisable(true);
+        stopQueryButton.setDisable(false);
+        queryTimer = new Timeline(new KeyFrame(Duration.millis(100),
+                e -> statusLabel.setText("Выполняется запрос: " + formatElapsed(execution.getElapsedMillis()))));
+        queryTimer.setCycleCount(Animation.INDEFINITE);
+        queryTimer.play();
+    }
+
+    @FXML
+    private void stopQuery() {
+        if (runningQuery != null) {
+            runningQuery.cancel(true);
+            statusLabel.setText("Запрос отменен");
         }
     }
 
-    private void displayQueryResults(QueryService.QueryResult result) {
-        queryResultTable.getItems().clear();
+    private void finishQuery() {
+        if (queryTimer != null) {
+            queryTimer.stop();
+            queryTimer = null;
+        }
+        runningQuery = null;
+        executeQueryButton.setDisable(false);
+        stopQueryButton.setDisable(true);
+    }
+
+    private static String formatElapsed(long millis) {
+        return String.format("%.2f с", millis / 1000.0);
+    }
+
+    private void showQueryColumns(List<String> columns) {
         queryResultTable.getColumns().clear();
 
-        for (String columnName : result.getColumns()) {
-            TableColumn<Object, Object> column = new TableColumn<>(columnName);
+        for (int i = 0; i < columns.size(); i++) {
+            int columnIndex = i;
+            TableColumn<Object, Object> column = new TableColumn<>(columns.get(i));
+            // Значение берется из массива столбца по индексу, без поиска по имени
             column.setCellValueFactory(cellData -> {
-                Map<String, Object> row = (Map<String, Object>) cellData.getValue();
-                Object value = row.get(columnName);
-                return new SimpleObjectProperty<>(value);
+                ResultTable.RowView row = (ResultTable.RowView) cellData.getValue();
+                return new SimpleObjectProperty<>(row.getValue(columnIndex));
             });
             queryResultTable.getColumns().add(column);
         }
-
-        queryResultTable.getItems().addAll((List<Object>) (List<?>) result.getData());
     }
 
     @FXML
@@ -823,6 +1145,7 @@ public class MainController {
             queryResultTable.getItems().clear();
             queryResultTable.getColumns().clear();
         }
+        queryResultChunks.clear();
         if (savedQueriesCombo != null) {
             savedQueriesCombo.getSelectionModel().clearSelection();
         }
@@ -839,19 +1162,26 @@ public class MainController {
 
     @FXML
     private void exportCurrentSchema() {
-        try {
-            ExportService.ExportResult result = exportService.exportCurrentSchema();
+        exportSchema(ExportService.DEFAULT_BUNDLE);
+    }
+
+    @FXML
+    private void exportCurrentSchemaBundle() {
+        exportSchema(true);
+    }
 
+    private void exportSchema(boolean bundle) {
+        ExportFormat format = exportFormat;
+        taskRunner.submit("Экспорт схемы", progress -> exportService.exportCurrentSchema(format,
+                ExportService.DEFAULT_STREAMING, ExportService.DEFAULT_PARALLEL_JOBS, bundle,
+                ExportService.DEFAULT_COLUMN_WIDTHS, progress), result -> {
             if (result.isSuccess()) {
                 showSuccessNotification(result.getMessage());
                 statusLabel.setText("Схема экспортирована: " + result.getExportFile().getName());
             } else {
                 showAlert("Ошибка экспорта", result.getMessage());
             }
-
-        } catch (Exception e) {
-            showAlert("Ошибка", "Не удалось экспортировать схему: " + e.getMessage());
-        }
+        }, e -> showAlert("Ошибка", "Не удалось экспортировать схему: " + e.getMessage()));
     }
 
     @FXML
@@ -861,19 +1191,45 @@ public class MainController {
             return;
         }
 
-        try {
-            ExportService.ExportResult result = exportService.exportTable(currentTable);
-
+        String tableName = currentTable;
+        ExportFormat format = exportFormat;
+        taskRunner.submit("Экспорт таблицы " + tableName, progress -> exportService.exportTable(tableName, format, progress), result -> {
             if (result.isSuccess()) {
                 showSuccessNotification(result.getMessage());
                 statusLabel.setText("Таблица экспортирована: " + result.getExportFile().getName());
             } else {
                 showAlert("Ошибка экспорта", result.getMessage());
             }
+        }, e -> showAlert("Ошибка", "Не удалось экспортировать таблицу: " + e.getMessage()));
+    }
 
-        } catch (Exception e) {
-            showAlert("Ошибка", "Не удалось экспортировать таблицу: " + e.getMessage());
+    @FXML
+    private void importIntoCurrentTable() {
+        if (currentTable == null) {
+            showAlert("Ошибка", "Выберите таблицу для импорта");
+            return;
         }
+
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Импорт в таблицу " + currentTable);
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV и Excel", "*.csv", "*.txt", "*.xlsx"),
+                new FileChooser.ExtensionFilter("Все файлы", "*.*"));
+        File file = chooser.showOpenDialog(tableView.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+
+        String tableName = currentTable;
+        taskRunner.submit("Импорт в " + tableName, progress -> importService.importFile(tableName, file, progress), result -> {
+            if (result.isSuccess()) {
+                showSuccessNotification(result.getMessage());
+                statusLabel.setText("Импортировано строк: " + result.getRowsImported());
+                refreshTableData();
+            } else {
+                showAlert("Ошибка импорта", result.getMessage());
+            }
+        }, e -> showAlert("Ошибка", "Не удалось импортировать файл: " + e.getMessage()));
     }
 
     @FXML
@@ -889,12 +1245,7 @@ public class MainController {
                 columns.add(column.getText());
             }
 
-            List<Map<String, Object>> data = new ArrayList<>();
-            for (Object item : queryResultTable.getItems()) {
-                if (item instanceof Map) {
-                    data.add((Map<String, Object>) item);
-                }
-            }
+            List<ResultTable> data = new ArrayList<>(queryResultChunks);
 
             String queryName = "query_results";
             if (!queryTextArea.getText().trim().isEmpty()) {
@@ -902,14 +1253,17 @@ public class MainController {
                 queryName = queryText.substring(0, Math.min(20, queryText.length())).replaceAll("[^a-zA-Z0-9]", "_");
             }
 
-            ExportService.ExportResult result = exportService.exportQueryResults(queryName, columns, data);
-
-            if (result.isSuccess()) {
-                showSuccessNotification(result.getMessage());
-                statusLabel.setText("Результаты экспортированы: " + result.getExportFile().getName());
-            } else {
-                showAlert("Ошибка экспорта", result.getMessage());
-            }
+            String fileName = queryName;
+            ExportFormat format = exportFormat;
+            taskRunner.submit("Экспорт результатов запроса",
+                    progress -> exportService.exportQueryResults(fileName, columns, data, format), result -> {
+                if (result.isSuccess()) {
+                    showSuccessNotification(result.getMessage());
+                    statusLabel.setText("Результаты экспортированы: " + result.getExportFile().getName());
+                } else {
+                    showAlert("Ошибка экспорта", result.getMessage());
+                }
+            }, e -> showAlert("Ошибка", "Не удалось экспортировать результаты: " + e.getMessage()));
 
         } catch (Exception e) {
             showAlert("Ошибка", "Не удалось экспортировать результаты: " + e.getMessage());
@@ -47,9 +47,10 @@ public class WelcomeController {
             NavigationService navService = new NavigationService();
             BackupService backupService = new BackupService(databaseService);
             ExportService exportService = new ExportService(databaseService);
+            ImportService importService = new ImportService(databaseService);
 
             mainController.setServices(databaseService, schemaService, tableService, navService,
-                    queryService, backupService, exportService);
+                    queryService, backupService, exportService, importService);
 
             Stage stage = (Stage) continueButton.getScene().getWindow();
             stage.setScene(new Scene(root, 900, 600));
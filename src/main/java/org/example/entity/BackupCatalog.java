@@ -0,0 +1,25 @@
+package org.example.entity;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Индекс папки backup (catalog.json): оглавления всех бэкапов, чтобы не открывать каждый файл.
+// Запись действительна, пока у файла те же размер и время изменения
+@Getter
+@Setter
+public class BackupCatalog {
+    private int version = 1;
+    private List<Entry> backups = new ArrayList<>();
+
+    @Getter
+    @Setter
+    public static class Entry {
+        private String file;
+        private long size;
+        private long lastModified;
+        private BackupManifest manifest;
+    }
+}
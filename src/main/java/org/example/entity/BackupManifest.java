@@ -0,0 +1,64 @@
+package org.example.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Оглавление архива бэкапа (manifest.json): что лежит в архиве и как его восстанавливать
+@Getter
+@Setter
+public class BackupManifest {
+    public static final String TYPE_FULL = "full";
+    public static final String TYPE_INCREMENTAL = "incremental";
+
+    private int version = 1;
+    private String schema;
+    private String created;
+    private String format;
+    // full - полный бэкап; incremental - изменения относительно baseBackup
+    private String type = TYPE_FULL;
+    // Имя файла родительского бэкапа в той же папке
+    private String baseBackup;
+    // xmin снимка бэкапа (64-битный txid): следующий инкремент берет строки, записанные начиная с него
+    private Long watermark;
+    private long durationMillis;
+    // Сколько соединений выгружали данные из общего снимка
+    private int parallelJobs = 1;
+    private List<TableEntry> tables = new ArrayList<>();
+
+    @JsonIgnore
+    public boolean isIncremental() {
+        return TYPE_INCREMENTAL.equals(type);
+    }
+
+    @JsonIgnore
+    public long getTotalRows() {
+        return tables.stream().mapToLong(TableEntry::getRows).sum();
+    }
+
+    public TableEntry findTable(String name) {
+        return tables.stream().filter(table -> table.getName().equals(name)).findFirst().orElse(null);
+    }
+
+    @Getter
+    @Setter
+    public static class TableEntry {
+        private String name;
+        private List<String> columns = new ArrayList<>();
+        // Имя файла данных таблицы внутри архива
+        private String entry;
+        private List<String> primaryKey = new ArrayList<>();
+        // Инкремент: все значения первичного ключа на момент бэкапа, строки вне этого набора удаляются.
+        // null - в entry лежит таблица целиком
+        private String keysEntry;
+        private long rows;
+        // Сегмент данных: для скрипта - смещение и длина в (распакованном) файле, для архива - размер записи
+        private Long offset;
+        private long length;
+        // SHA-256 байтов сегмента в hex: в скрипте - распакованных, в архиве - записанных в запись архива
+        private String sha256;
+    }
+}
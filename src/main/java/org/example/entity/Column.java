@@ -8,6 +8,8 @@ import lombok.Setter;
 public class Column {
     private String name;
     private String type;
+    // Полное SQL-описание типа (format_type), например "character varying(100)"
+    private String sqlType;
     private boolean primaryKey;
     private boolean nullable;
     private String defaultValue;
@@ -17,6 +19,7 @@ public class Column {
     public Column(String name, String type) {
         this.name = name;
         this.type = type;
+        this.sqlType = type;
         this.primaryKey = false;
         this.nullable = true;
         this.defaultValue = null;
@@ -0,0 +1,514 @@
+package org.example.entity;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+// Результат запроса по столбцам: имена столбцов хранятся один раз, значения - в массивах
+// (для int/long/double/boolean - примитивных), NULL отмечается битовой маской столбца.
+// Строки наружу отдаются легкими представлениями Map без собственной хеш-таблицы
+public class ResultTable {
+    public enum ColumnKind { INT, LONG, DOUBLE, BOOLEAN, OBJECT }
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final List<String> columns;
+    private final List<ColumnKind> kinds;
+    private final Map<String, Integer> columnIndex;
+    private final ColumnVector[] vectors;
+    private int rowCount;
+
+    public ResultTable(List<String> columns, List<ColumnKind> kinds) {
+        if (columns.size() != kinds.size()) {
+            throw new IllegalArgumentException("Columns and kinds differ in size: " + columns.size() + " vs " + kinds.size());
+        }
+        this.columns = Collections.unmodifiableList(columns);
+        this.kinds = Collections.unmodifiableList(kinds);
+        this.columnIndex = new HashMap<>();
+        this.vectors = new ColumnVector[columns.size()];
+        for (int i = 0; i < vectors.length; i++) {
+            // При повторяющихся именах (SELECT a.id, b.id) по имени находится последний столбец, как раньше в LinkedHashMap
+            columnIndex.put(columns.get(i), i);
+            vectors[i] = createVector(kinds.get(i));
+        }
+    }
+
+    public static ResultTable forResultSet(ResultSetMetaData metaData) throws SQLException {
+        int count = metaData.getColumnCount();
+        String[] names = new String[count];
+        ColumnKind[] kinds = new ColumnKind[count];
+        for (int i = 1; i <= count; i++) {
+            names[i - 1] = metaData.getColumnLabel(i);
+            kinds[i - 1] = kindOf(metaData.getColumnType(i), metaData.getColumnTypeName(i));
+        }
+        return new ResultTable(Arrays.asList(names), Arrays.asList(kinds));
+    }
+
+    // Пустая таблица с той же структурой - для следующей порции потокового чтения
+    public ResultTable emptyCopy() {
+        return new ResultTable(columns, kinds);
+    }
+
+    // Сохраняем тип, который вернул бы getObject: REAL (Float), NUMERIC и прочие остаются объектами
+    private static ColumnKind kindOf(int sqlType, String typeName) {
+        switch (sqlType) {
+            case Types.INTEGER:
+                return ColumnKind.INT;
+            case Types.BIGINT:
+                return ColumnKind.LONG;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+                return ColumnKind.DOUBLE;
+            case Types.BOOLEAN:
+                return ColumnKind.BOOLEAN;
+            case Types.BIT:
+                // В PostgreSQL bool приходит как BIT; bit(n) оставляем объектом
+                return "bool".equals(typeName) ? ColumnKind.BOOLEAN : ColumnKind.OBJECT;
+            default:
+                return ColumnKind.OBJECT;
+        }
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public ColumnKind getKind(int column) {
+        return kinds.get(column);
+    }
+
+    public int getColumnCount() {
+        return vectors.length;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnIndex(String column) {
+        Integer index = columnIndex.get(column);
+        return index == null ? -1 : index;
+    }
+
+    public void appendRow(ResultSet rs) throws SQLException {
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i].ensureCapacity(rowCount + 1);
+            vectors[i].read(rs, i + 1, rowCount);
+        }
+        rowCount++;
+    }
+
+    public Object getValue(int row, int column) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", rows: " + rowCount);
+        }
+        return vectors[column].get(row);
+    }
+
+    public Object getValue(int row, String column) {
+        int index = getColumnIndex(column);
+        return index < 0 ? null : getValue(row, index);
+    }
+
+    // Числовые столбцы INT/LONG/DOUBLE читаются без упаковки; NULL проверять через isNull
+    public double getDouble(int row, int column) {
+        return vectors[column].getDouble(row);
+    }
+
+    // Столбцы INT/LONG без потери точности, которую дал бы double
+    public long getLong(int row, int column) {
+        return vectors[column].getLong(row);
+    }
+
+    public boolean isNumeric(int column) {
+        ColumnKind kind = kinds.get(column);
+        return kind == ColumnKind.INT || kind == ColumnKind.LONG || kind == ColumnKind.DOUBLE;
+    }
+
+    public boolean isNull(int row, int column) {
+        return vectors[column].nulls.get(row);
+    }
+
+    public Map<String, Object> row(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", rows: " + rowCount);
+        }
+        return new RowView(row);
+    }
+
+    // Представления строк создаются при обращении, данные не копируются
+    public List<Map<String, Object>> rows() {
+        return new AbstractList<>() {
+            @Override
+            public Map<String, Object> get(int index) {
+                return row(index);
+            }
+
+            @Override
+            public int size() {
+                return rowCount;
+            }
+        };
+    }
+
+    public void reverseRows() {
+        for (int i = 0, j = rowCount - 1; i < j; i++, j--) {
+            for (ColumnVector vector : vectors) {
+                vector.swap(i, j);
+            }
+        }
+    }
+
+    // Приблизительный объем в памяти: массивы столбцов, маски NULL и грубая оценка объектов-значений
+    public long estimateBytes() {
+        long bytes = 0;
+        for (ColumnVector vector : vectors) {
+            bytes += vector.arrayBytes() + vector.nulls.size() / 8;
+        }
+        return bytes;
+    }
+
+    private static ColumnVector createVector(ColumnKind kind) {
+        switch (kind) {
+            case INT:
+                return new IntVector();
+            case LONG:
+                return new LongVector();
+            case DOUBLE:
+                return new DoubleVector();
+            case BOOLEAN:
+                return new BooleanVector();
+            default:
+                return new ObjectVector();
+        }
+    }
+
+    public final class RowView extends AbstractMap<String, Object> {
+        private final int row;
+
+        private RowView(int row) {
+            this.row = row;
+        }
+
+        public Object getValue(int column) {
+            return ResultTable.this.getValue(row, column);
+        }
+
+        @Override
+        public Object get(Object key) {
+            Integer index = columnIndex.get(key);
+            return index == null ? null : getValue(index);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return columnIndex.containsKey(key);
+        }
+
+        // При повторяющихся заголовках видна последняя колонка с этим именем - как в get/containsKey
+        @Override
+        public int size() {
+            return columnIndex.size();
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<>() {
+                        private int column = skipShadowed(0);
+
+                        @Override
+                        public boolean hasNext() {
+                            return column < columns.size();
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (!hasNext()) throw new NoSuchElementException();
+                            Entry<String, Object> entry = new SimpleImmutableEntry<>(columns.get(column), getValue(column));
+                            column = skipShadowed(column + 1);
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return columnIndex.size();
+                }
+            };
+        }
+
+        // Первая колонка начиная с column, которую не перекрывает более поздняя колонка с тем же именем
+        private int skipShadowed(int column) {
+            while (column < columns.size() && columnIndex.get(columns.get(column)) != column) {
+                column++;
+            }
+            return column;
+        }
+
+        // Равенство по содержимому, как у любой Map; одна и та же строка таблицы равна без сравнения значений
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof RowView && ((RowView) o).owner() == ResultTable.this && ((RowView) o).row == row) {
+                return true;
+            }
+            return super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return super.hashCode();
+        }
+
+        private ResultTable owner() {
+            return ResultTable.this;
+        }
+    }
+
+    private abstract static class ColumnVector {
+        final BitSet nulls = new BitSet();
+
+        abstract void read(ResultSet rs, int column, int row) throws SQLException;
+
+        abstract Object get(int row);
+
+        double getDouble(int row) {
+            Object value = get(row);
+            return value instanceof Number ? ((Number) value).doubleValue() : 0;
+        }
+
+        long getLong(int row) {
+            return (long) getDouble(row);
+        }
+
+        abstract void ensureCapacity(int size);
+
+        abstract void swapValues(int a, int b);
+
+        abstract long arrayBytes();
+
+        void swap(int a, int b) {
+            boolean nullA = nulls.get(a);
+            nulls.set(a, nulls.get(b));
+            nulls.set(b, nullA);
+            swapValues(a, b);
+        }
+
+        static int grow(int length, int size) {
+            return Math.max(size, Math.max(INITIAL_CAPACITY, length + (length >> 1)));
+        }
+    }
+
+    private static final class IntVector extends ColumnVector {
+        private int[] values = new int[0];
+
+        @Override
+        void read(ResultSet rs, int column, int row) throws SQLException {
+            values[row] = rs.getInt(column);
+            if (rs.wasNull()) nulls.set(row);
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        void ensureCapacity(int size) {
+            if (size > values.length) values = Arrays.copyOf(values, grow(values.length, size));
+        }
+
+        @Override
+        void swapValues(int a, int b) {
+            int t = values[a];
+            values[a] = values[b];
+            values[b] = t;
+        }
+
+        @Override
+        long arrayBytes() {
+            return 4L * values.length;
+        }
+    }
+
+    private static final class LongVector extends ColumnVector {
+        private long[] values = new long[0];
+
+        @Override
+        void read(ResultSet rs, int column, int row) throws SQLException {
+            values[row] = rs.getLong(column);
+            if (rs.wasNull()) nulls.set(row);
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        void ensureCapacity(int size) {
+            if (size > values.length) values = Arrays.copyOf(values, grow(values.length, size));
+        }
+
+        @Override
+        void swapValues(int a, int b) {
+            long t = values[a];
+            values[a] = values[b];
+            values[b] = t;
+        }
+
+        @Override
+        long arrayBytes() {
+            return 8L * values.length;
+        }
+    }
+
+    private static final class DoubleVector extends ColumnVector {
+        private double[] values = new double[0];
+
+        @Override
+        void read(ResultSet rs, int column, int row) throws SQLException {
+            values[row] = rs.getDouble(column);
+            if (rs.wasNull()) nulls.set(row);
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        void ensureCapacity(int size) {
+            if (size > values.length) values = Arrays.copyOf(values, grow(values.length, size));
+        }
+
+        @Override
+        void swapValues(int a, int b) {
+            double t = values[a];
+            values[a] = values[b];
+            values[b] = t;
+        }
+
+        @Override
+        long arrayBytes() {
+            return 8L * values.length;
+        }
+    }
+
+    private static final class BooleanVector extends ColumnVector {
+        private final BitSet values = new BitSet();
+
+        @Override
+        void read(ResultSet rs, int column, int row) throws SQLException {
+            boolean value = rs.getBoolean(column);
+            if (rs.wasNull()) {
+                nulls.set(row);
+            } else {
+                values.set(row, value);
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : values.get(row);
+        }
+
+        @Override
+        void ensureCapacity(int size) {
+        }
+
+        @Override
+        void swapValues(int a, int b) {
+            boolean t = values.get(a);
+            values.set(a, values.get(b));
+            values.set(b, t);
+        }
+
+        @Override
+        long arrayBytes() {
+            return values.size() / 8;
+        }
+    }
+
+    private static final class ObjectVector extends ColumnVector {
+        private Object[] values = new Object[0];
+
+        @Override
+        void read(ResultSet rs, int column, int row) throws SQLException {
+            values[row] = rs.getObject(column);
+            if (values[row] == null) nulls.set(row);
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void ensureCapacity(int size) {
+            if (size > values.length) values = Arrays.copyOf(values, grow(values.length, size));
+        }
+
+        @Override
+        void swapValues(int a, int b) {
+            Object t = values[a];
+            values[a] = values[b];
+            values[b] = t;
+        }
+
+        @Override
+        long arrayBytes() {
+            // Сжатые ссылки плюс сами объекты: строка ~40 байт заголовков и по байту на символ, прочее ~24 байта
+            long bytes = 4L * values.length;
+            for (Object value : values) {
+                if (value instanceof String) {
+                    bytes += 40 + ((String) value).length();
+                } else if (value != null) {
+                    bytes += 24;
+                }
+            }
+            return bytes;
+        }
+    }
+}
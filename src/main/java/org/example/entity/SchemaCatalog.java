@@ -0,0 +1,60 @@
+package org.example.entity;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Снимок структуры схемы; после построения не изменяется и может разделяться между сервисами
+@Getter
+public class SchemaCatalog {
+    private final String schema;
+    private final long loadedAt;
+    private final List<String> tableNames;
+    private final Map<String, Table> tables;
+    private final Map<String, List<String>> sequences;
+    private final Map<String, List<String>> primaryKeys;
+
+    public SchemaCatalog(String schema, Map<String, Table> tables, Map<String, List<String>> sequences,
+                         Map<String, List<String>> primaryKeys) {
+        this.schema = schema;
+        this.loadedAt = System.currentTimeMillis();
+
+        Map<String, Table> tablesCopy = new LinkedHashMap<>();
+        for (Table table : tables.values()) {
+            table.setColumns(List.copyOf(table.getColumns()));
+            table.setData(Collections.emptyList());
+            tablesCopy.put(table.getName(), table);
+        }
+        this.tables = Collections.unmodifiableMap(tablesCopy);
+        this.tableNames = List.copyOf(new ArrayList<>(tablesCopy.keySet()));
+
+        Map<String, List<String>> sequencesCopy = new LinkedHashMap<>();
+        sequences.forEach((table, names) -> sequencesCopy.put(table, List.copyOf(names)));
+        this.sequences = Collections.unmodifiableMap(sequencesCopy);
+
+        Map<String, List<String>> primaryKeysCopy = new LinkedHashMap<>();
+        primaryKeys.forEach((table, columns) -> primaryKeysCopy.put(table, List.copyOf(columns)));
+        this.primaryKeys = Collections.unmodifiableMap(primaryKeysCopy);
+    }
+
+    public Table getTable(String tableName) {
+        return tables.get(tableName);
+    }
+
+    public boolean containsTable(String tableName) {
+        return tables.containsKey(tableName);
+    }
+
+    public List<String> getSequences(String tableName) {
+        return sequences.getOrDefault(tableName, Collections.emptyList());
+    }
+
+    // Столбцы первичного ключа в порядке объявления ограничения (совпадает с порядком в индексе)
+    public List<String> getPrimaryKey(String tableName) {
+        return primaryKeys.getOrDefault(tableName, Collections.emptyList());
+    }
+}
@@ -0,0 +1,37 @@
+package org.example.service;
+
+import lombok.Getter;
+
+// Как в бэкапе хранятся данные таблиц
+@Getter
+public enum BackupFormat {
+    // INSERT на каждую строку - читается любым клиентом, самый медленный
+    SQL("SQL (INSERT)"),
+    // Блоки COPY ... FROM stdin внутри .sql - как у pg_dump, восстанавливается и через psql
+    COPY_TEXT("COPY, текст"),
+    // COPY в двоичном формате; хранится в архиве .zip по файлу на таблицу
+    COPY_BINARY("COPY, двоичный (архив .zip)");
+
+    private final String displayName;
+
+    BackupFormat(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public static BackupFormat fromConfig(String value, BackupFormat fallback) {
+        if (value == null || value.isBlank()) {
+            return fallback;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown backup format: " + value + ", using " + fallback);
+            return fallback;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
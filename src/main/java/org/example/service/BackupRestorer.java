@@ -0,0 +1,956 @@
+package org.example.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.entity.BackupManifest;
+import org.example.entity.Column;
+import org.example.entity.SchemaCatalog;
+import org.example.util.ChecksumOutputStream;
+import org.example.util.CountingInputStream;
+import org.example.util.EnvConfig;
+import org.example.util.SqlScriptTokenizer;
+import org.postgresql.PGConnection;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Восстановление бэкапа в три этапа: pre-data (структура), данные по таблицам, post-data (ключи,
+// внешние ключи, значения последовательностей). Данные таблиц - независимые блоки: их можно грузить
+// параллельно на нескольких соединениях, ограничения создаются уже после загрузки
+class BackupRestorer {
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+    private static final int BATCH_SIZE = Math.max(1, EnvConfig.getInt("DB_BATCH_SIZE", 500));
+    private static final long PROGRESS_STEP_BYTES = 4L << 20;
+    private static final int STATEMENT_HEAD_BYTES = 256;
+
+    private static final Pattern COPY_FROM_STDIN_PATTERN =
+            Pattern.compile("^COPY\\s+(\\S+)\\s.*\\bFROM\\s+stdin\\b.*$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern INSERT_PATTERN =
+            Pattern.compile("^INSERT\\s+INTO\\s+([^\\s(]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern POST_DATA_PATTERN =
+            Pattern.compile("^(ALTER\\s+TABLE\\b.*\\bADD\\b|CREATE\\s+(UNIQUE\\s+)?INDEX\\b|SELECT\\s+setval\\b)",
+                    Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern FOREIGN_KEY_PATTERN =
+            Pattern.compile("^ALTER\\s+TABLE\\s+(\\S+)\\s+ADD\\s+CONSTRAINT\\s+\\S+\\s+FOREIGN\\s+KEY\\b.*?\\bREFERENCES\\s+([^\\s(]+)",
+                    Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final DatabaseService databaseService;
+    private final ObjectMapper manifestMapper;
+
+    BackupRestorer(DatabaseService databaseService, ObjectMapper manifestMapper) {
+        this.databaseService = databaseService;
+        this.manifestMapper = manifestMapper;
+    }
+
+    // atomic - все в одной транзакции (как раньше); иначе данные грузятся jobs соединениями,
+    // каждая таблица в своей транзакции. Для инкремента сначала восстанавливается полный бэкап в начале
+    // цепочки, затем по порядку применяются инкременты. Все соединения берутся для schema
+    RestoreStats restore(String schema, File backupFile, boolean atomic, int jobs, ProgressListener progress)
+            throws SQLException, IOException {
+        RestoreStats stats = new RestoreStats();
+        List<File> increments = new ArrayList<>();
+        File base = resolveChain(backupFile, increments);
+        try (RestorePlan plan = isArchive(base) ? planArchive(base) : planScript(base)) {
+            orderByForeignKeys(schema, plan);
+            if (plan.compressed) {
+                // Сжатый скрипт читается только вперед: блоки идут по порядку в файле на одном соединении.
+                // Внешние ключи создаются в post-data, так что порядок таблиц здесь не важен
+                plan.units.sort(Comparator.comparingLong(unit -> unit.offset));
+            }
+            stats.totalBytes = plan.units.stream().mapToLong(unit -> unit.size).sum()
+                    + increments.stream().mapToLong(File::length).sum();
+
+            int workers = atomic || plan.compressed ? 1 : Math.min(Math.min(jobs, plan.units.size()),
+                    Math.max(1, databaseService.getPoolStats().getMaxSize() - 1));
+            if (atomic || workers <= 1) {
+                try (Connection conn = databaseService.getConnection(schema)) {
+                    conn.setAutoCommit(false);
+                    try {
+                        restoreOnConnection(conn, plan, atomic, progress, stats);
+                        for (File increment : increments) {
+                            applyIncrement(schema, conn, increment, progress, stats);
+                            if (!atomic) conn.commit();
+                        }
+                        conn.commit();
+                    } catch (SQLException | IOException | RuntimeException e) {
+                        rollbackQuietly(conn);
+                        throw e;
+                    }
+                }
+            } else {
+                restoreInParallel(schema, plan, workers, progress, stats);
+                applyIncrements(schema, increments, progress, stats);
+            }
+        }
+        stats.elapsedMillis = System.currentTimeMillis() - stats.startedAt;
+        return stats;
+    }
+
+    // Фиксирует промежуточные шаги, только если !atomic; последнюю фиксацию делает вызывающий код
+    private void restoreOnConnection(Connection conn, RestorePlan plan, boolean atomic, ProgressListener progress,
+                                     RestoreStats stats) throws SQLException, IOException {
+        progress.progress(0, stats.totalBytes, "Создание структуры");
+        executeStatements(conn, plan.preData, stats);
+        if (!atomic) conn.commit();
+
+        for (DataUnit unit : plan.units) {
+            checkCancelled(progress);
+            loadUnit(conn, plan, unit, progress, stats);
+            if (!atomic) conn.commit();
+        }
+
+        progress.progress(stats.loadedBytes.get(), stats.totalBytes, "Создание ключей и ограничений");
+        executeStatements(conn, plan.postData, stats);
+    }
+
+    // Одна таблица из бэкапа: ее блок данных читается по смещению или записи архива из оглавления,
+    // остальной файл не просматривается. Таблица должна существовать - структура не пересоздается.
+    // Блок грузится во временную таблицу и применяется как инкремент: удаляются строки, ключей которых
+    // нет в бэкапе, обновляются существующие и добавляются новые - DELETE всей таблицы не задел бы
+    // каскадом строки других таблиц. Без первичного ключа (primaryKey пуст) таблица заменяется целиком
+    RestoreStats restoreTable(String schema, File backupFile, BackupManifest manifest, String tableName,
+                              List<String> primaryKey, List<String> sequenceResets, ProgressListener progress)
+            throws SQLException, IOException {
+        BackupManifest.TableEntry table = manifest.findTable(tableName);
+        if (table == null) {
+            throw new IOException("Table " + tableName + " is not in " + backupFile.getName());
+        }
+        RestoreStats stats = new RestoreStats();
+        boolean archive = isArchive(backupFile);
+        try (RestorePlan plan = new RestorePlan(backupFile, archive ? new ZipFile(backupFile, StandardCharsets.UTF_8) : null)) {
+            DataUnit unit;
+            if (archive) {
+                unit = archiveUnit(plan.zip, backupFile, table);
+            } else if (table.getOffset() != null) {
+                unit = DataUnit.range(tableName, BackupFormat.SQL.name().equals(manifest.getFormat()) ? null
+                        : copySql(table, false), table.getOffset(), table.getLength());
+            } else {
+                throw new IOException("Backup " + backupFile.getName() + " has no segment offsets, restore the whole file");
+            }
+            unit.sha256 = table.getSha256();
+            stats.totalBytes = unit.size;
+
+            try (Connection conn = databaseService.getConnection(schema)) {
+                conn.setAutoCommit(false);
+                try {
+                    try (Statement st = conn.createStatement()) {
+                        st.execute("SET CONSTRAINTS ALL DEFERRED");
+                    }
+                    // Временная таблица с тем же именем: pg_temp просматривается раньше search_path, поэтому
+                    // COPY и INSERT блока без схемы попадают в нее, а сама таблица адресуется через схему
+                    String target = schema + "." + tableName;
+                    String rows = "pg_temp." + tableName;
+                    executeStatements(conn, List.of("CREATE TEMP TABLE " + tableName + " (LIKE " + target + ")"), stats);
+                    loadUnit(conn, plan, unit, progress, stats);
+                    executeStatements(conn, mergeStatements(target, rows, table.getColumns(), primaryKey), stats);
+                    executeStatements(conn, List.of("DROP TABLE " + rows), stats);
+                    executeStatements(conn, sequenceResets, stats);
+                    conn.commit();
+                } catch (SQLException | IOException | RuntimeException e) {
+                    rollbackQuietly(conn);
+                    throw e;
+                }
+            }
+        }
+        stats.elapsedMillis = System.currentTimeMillis() - stats.startedAt;
+        return stats;
+    }
+
+    private void applyIncrements(String schema, List<File> increments, ProgressListener progress, RestoreStats stats)
+            throws SQLException, IOException {
+        if (increments.isEmpty()) {
+            return;
+        }
+        try (Connection conn = databaseService.getConnection(schema)) {
+            conn.setAutoCommit(false);
+            for (File increment : increments) {
+                try {
+                    applyIncrement(schema, conn, increment, progress, stats);
+                    conn.commit();
+                } catch (SQLException | IOException | RuntimeException e) {
+                    rollbackQuietly(conn);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // ========== ИНКРЕМЕНТЫ ==========
+
+    // Идет по ссылкам baseBackup до полного бэкапа; increments заполняется от старого к новому
+    private File resolveChain(File backupFile, List<File> increments) throws IOException {
+        File current = backupFile;
+        Set<String> visited = new HashSet<>();
+        while (isArchive(current)) {
+            BackupManifest manifest = readManifest(current);
+            if (!manifest.isIncremental()) {
+                break;
+            }
+            if (!visited.add(current.getName())) {
+                throw new IOException("Backup chain has a cycle at " + current.getName());
+            }
+            increments.add(0, current);
+            File parent = new File(current.getParentFile(), manifest.getBaseBackup());
+            if (!parent.exists()) {
+                throw new IOException("Base backup " + manifest.getBaseBackup() + " for " + current.getName() + " not found");
+            }
+            current = parent;
+        }
+        return current;
+    }
+
+    BackupManifest readManifest(File archive) throws IOException {
+        try (ZipFile zip = new ZipFile(archive, StandardCharsets.UTF_8)) {
+            return readManifest(zip, archive);
+        }
+    }
+
+    private BackupManifest readManifest(ZipFile zip, File archive) throws IOException {
+        ZipEntry manifestEntry = zip.getEntry(BackupService.ARCHIVE_MANIFEST);
+        if (manifestEntry == null) {
+            throw new IOException("Not a backup archive: " + archive.getName());
+        }
+        try (InputStream in = zip.getInputStream(manifestEntry)) {
+            return manifestMapper.readValue(in, BackupManifest.class);
+        }
+    }
+
+    // Строки инкремента грузятся во временные таблицы, затем: удаляются строки, ключей которых больше нет,
+    // обновляются существующие и добавляются новые. Таблицы без ключа заменяются целиком.
+    // Внешние ключи из post-data отложенные; для баз со старыми, неотложенными ключами удаление идет
+    // от дочерних таблиц к родительским, а вставка - наоборот
+    private void applyIncrement(String schema, Connection conn, File incrementFile, ProgressListener progress,
+                                RestoreStats stats) throws SQLException, IOException {
+        try (ZipFile zip = new ZipFile(incrementFile, StandardCharsets.UTF_8)) {
+            BackupManifest manifest = readManifest(zip, incrementFile);
+            Map<String, BackupManifest.TableEntry> byName = new LinkedHashMap<>();
+            for (BackupManifest.TableEntry table : manifest.getTables()) {
+                byName.put(table.getName(), table);
+            }
+            Map<String, Set<String>> parents = new HashMap<>();
+            addCatalogDependencies(schema, parents, byName.keySet());
+            List<BackupManifest.TableEntry> tables = new ArrayList<>();
+            for (String name : topologicalOrder(byName.keySet(), parents)) {
+                tables.add(byName.get(name));
+            }
+            progress.progress(stats.loadedBytes.get(), stats.totalBytes, "Применение инкремента " + incrementFile.getName());
+
+            try (Statement st = conn.createStatement()) {
+                st.execute("SET CONSTRAINTS ALL DEFERRED");
+            }
+            List<String> deletes = new ArrayList<>();
+            List<String> updates = new ArrayList<>();
+            List<String> inserts = new ArrayList<>();
+            List<String> drops = new ArrayList<>();
+            for (int i = 0; i < tables.size(); i++) {
+                checkCancelled(progress);
+                BackupManifest.TableEntry table = tables.get(i);
+                String columns = String.join(", ", table.getColumns());
+                String rows = "restore_rows_" + i;
+                String keys = "restore_keys_" + i;
+
+                executeStatements(conn, List.of("CREATE TEMP TABLE " + rows + " AS SELECT " + columns + " FROM " +
+                        table.getName() + " WITH NO DATA"), stats);
+                copyEntry(conn, zip, table.getEntry(), "COPY " + rows + " (" + columns + ") FROM STDIN" +
+                        (stripGzipExtension(table.getEntry()).endsWith(".bin") ? " (FORMAT binary)" : ""), progress, stats);
+
+                if (table.getKeysEntry() == null || table.getPrimaryKey().isEmpty()) {
+                    deletes.add(0, "DELETE FROM " + table.getName());
+                    inserts.add("INSERT INTO " + table.getName() + " (" + columns + ") SELECT " + columns + " FROM " + rows);
+                    drops.add("DROP TABLE " + rows);
+                    continue;
+                }
+
+                String primaryKey = String.join(", ", table.getPrimaryKey());
+                executeStatements(conn, List.of("CREATE TEMP TABLE " + keys + " AS SELECT " + primaryKey + " FROM " +
+                        table.getName() + " WITH NO DATA"), stats);
+                copyEntry(conn, zip, table.getKeysEntry(), "COPY " + keys + " (" + primaryKey + ") FROM STDIN", progress, stats);
+
+                String target = table.getName();
+                deletes.add(0, "DELETE FROM " + target + " t WHERE NOT EXISTS (SELECT 1 FROM " + keys + " k WHERE " +
+                        keyMatch(table.getPrimaryKey(), "k", "t") + ")");
+                List<String> assignments = new ArrayList<>();
+                for (String column : table.getColumns()) {
+                    if (!table.getPrimaryKey().contains(column)) {
+                        assignments.add(column + " = r." + column);
+                    }
+                }
+                if (!assignments.isEmpty()) {
+                    updates.add("UPDATE " + target + " t SET " + String.join(", ", assignments) + " FROM " + rows +
+                            " r WHERE " + keyMatch(table.getPrimaryKey(), "r", "t"));
+                }
+                inserts.add("INSERT INTO " + target + " (" + columns + ") SELECT " + columns + " FROM " + rows +
+                        " r WHERE NOT EXISTS (SELECT 1 FROM " + target + " t WHERE " +
+                        keyMatch(table.getPrimaryKey(), "r", "t") + ")");
+                drops.add("DROP TABLE " + rows);
+                drops.add("DROP TABLE " + keys);
+            }
+            executeStatements(conn, deletes, stats);
+            executeStatements(conn, updates, stats);
+            executeStatements(conn, inserts, stats);
+            executeStatements(conn, drops, stats);
+
+            ZipEntry postDataEntry = zip.getEntry(BackupService.ARCHIVE_POST_DATA);
+            if (postDataEntry != null) {
+                executeStatements(conn, readStatements(zip, postDataEntry), stats);
+            }
+            try (Statement st = conn.createStatement()) {
+                st.execute("SET CONSTRAINTS ALL IMMEDIATE");
+            }
+        }
+    }
+
+    private void copyEntry(Connection conn, ZipFile zip, String entryName, String copySql, ProgressListener progress,
+                           RestoreStats stats) throws SQLException, IOException {
+        ZipEntry entry = zip.getEntry(entryName);
+        if (entry == null) {
+            throw new IOException("Missing entry " + entryName + " in " + zip.getName());
+        }
+        InputStream in = new ProgressInputStream(zip.getInputStream(entry), progress, stats);
+        if (isGzip(entryName)) {
+            in = new GZIPInputStream(in, IO_BUFFER_SIZE);
+        }
+        try (InputStream data = in) {
+            stats.rows.addAndGet(conn.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql, data, IO_BUFFER_SIZE));
+        }
+    }
+
+    private static List<String> mergeStatements(String target, String rows, List<String> columnList,
+                                                List<String> primaryKey) {
+        String columns = String.join(", ", columnList);
+        if (primaryKey.isEmpty()) {
+            return List.of("DELETE FROM " + target,
+                    "INSERT INTO " + target + " (" + columns + ") SELECT " + columns + " FROM " + rows);
+        }
+        List<String> statements = new ArrayList<>();
+        statements.add("DELETE FROM " + target + " t WHERE NOT EXISTS (SELECT 1 FROM " + rows + " r WHERE " +
+                keyMatch(primaryKey, "r", "t") + ")");
+        List<String> assignments = new ArrayList<>();
+        for (String column : columnList) {
+            if (!primaryKey.contains(column)) {
+                assignments.add(column + " = r." + column);
+            }
+        }
+        if (!assignments.isEmpty()) {
+            statements.add("UPDATE " + target + " t SET " + String.join(", ", assignments) + " FROM " + rows +
+                    " r WHERE " + keyMatch(primaryKey, "r", "t"));
+        }
+        statements.add("INSERT INTO " + target + " (" + columns + ") SELECT " + columns + " FROM " + rows +
+                " r WHERE NOT EXISTS (SELECT 1 FROM " + target + " t WHERE " + keyMatch(primaryKey, "r", "t") + ")");
+        return statements;
+    }
+
+    private static String keyMatch(List<String> primaryKey, String left, String right) {
+        List<String> conditions = new ArrayList<>();
+        for (String column : primaryKey) {
+            conditions.add(left + "." + column + " = " + right + "." + column);
+        }
+        return String.join(" AND ", conditions);
+    }
+
+    private void restoreInParallel(String schema, RestorePlan plan, int workers, ProgressListener progress,
+                                   RestoreStats stats) throws SQLException, IOException {
+        try (Connection conn = databaseService.getConnection(schema)) {
+            conn.setAutoCommit(false);
+            progress.progress(0, stats.totalBytes, "Создание структуры");
+            try {
+                executeStatements(conn, plan.preData, stats);
+                conn.commit();
+            } catch (SQLException e) {
+                rollbackQuietly(conn);
+                throw e;
+            }
+
+            // Внешние ключи создаются в post-data, поэтому потоки не ждут родительские таблицы:
+            // топологический порядок лишь определяет, кто начнет первым
+            BlockingQueue<DataUnit> queue = new LinkedBlockingQueue<>(plan.units);
+            AtomicBoolean aborted = new AtomicBoolean();
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            AtomicInteger counter = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(workers, r -> {
+                Thread thread = new Thread(r, "restore-worker-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                for (int w = 0; w < workers; w++) {
+                    executor.execute(() -> {
+                        try (Connection workerConn = databaseService.getConnection(schema)) {
+                            workerConn.setAutoCommit(false);
+                            DataUnit unit;
+                            while (!aborted.get() && (unit = queue.poll()) != null) {
+                                try {
+                                    loadUnit(workerConn, plan, unit, progress, stats);
+                                    workerConn.commit();
+                                } catch (Exception e) {
+                                    rollbackQuietly(workerConn);
+                                    throw e;
+                                }
+                            }
+                        } catch (Exception e) {
+                            failure.compareAndSet(null, e);
+                            aborted.set(true);
+                        }
+                    });
+                }
+                executor.shutdown();
+                while (!executor.awaitTermination(200, TimeUnit.MILLISECONDS)) {
+                    if (progress.isCancelled()) {
+                        aborted.set(true);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                aborted.set(true);
+                throw new SQLException("Restore cancelled");
+            } finally {
+                executor.shutdownNow();
+            }
+
+            Exception error = failure.get();
+            if (error != null) {
+                if (error instanceof SQLException) throw (SQLException) error;
+                if (error instanceof IOException) throw (IOException) error;
+                throw new SQLException(error.getMessage(), error);
+            }
+            checkCancelled(progress);
+
+            progress.progress(stats.loadedBytes.get(), stats.totalBytes, "Создание ключей и ограничений");
+            try {
+                executeStatements(conn, plan.postData, stats);
+                conn.commit();
+            } catch (SQLException e) {
+                rollbackQuietly(conn);
+                throw e;
+            }
+        }
+    }
+
+    // ========== ЗАГРУЗКА ДАННЫХ ==========
+
+    // Контрольная сумма считается по тем же байтам, что записал бэкап (до распаковки сегмента);
+    // при несовпадении транзакция блока откатывается вызывающим кодом
+    private void loadUnit(Connection conn, RestorePlan plan, DataUnit unit, ProgressListener progress,
+                          RestoreStats stats) throws SQLException, IOException {
+        MessageDigest digest = unit.sha256 != null ? ChecksumOutputStream.sha256() : null;
+        AtomicReference<InputStream> checked = new AtomicReference<>();
+        try (InputStream in = plan.open(unit, source -> {
+            InputStream counted = new ProgressInputStream(source, progress, stats);
+            if (digest != null) {
+                checked.set(new DigestInputStream(counted, digest));
+                return checked.get();
+            }
+            return counted;
+        })) {
+            if (unit.copySql != null) {
+                long rows = conn.unwrap(PGConnection.class).getCopyAPI().copyIn(unit.copySql, in, IO_BUFFER_SIZE);
+                stats.rows.addAndGet(rows);
+            } else {
+                executeInserts(conn, in, stats);
+            }
+            if (digest != null) {
+                // Распаковщик может не дочитать хвост сегмента
+                checked.get().transferTo(OutputStream.nullOutputStream());
+                String actual = HexFormat.of().formatHex(digest.digest());
+                if (!actual.equalsIgnoreCase(unit.sha256)) {
+                    throw new IOException("Checksum mismatch for table " + unit.table + " in " + plan.file.getName());
+                }
+            }
+        }
+        stats.executedStatements.incrementAndGet();
+    }
+
+    // Операторы INSERT блока отправляются пакетами через addBatch. Поток закрывает вызывающий код:
+    // после загрузки он еще дочитывается для контрольной суммы
+    private void executeInserts(Connection conn, InputStream in, RestoreStats stats) throws SQLException, IOException {
+        SqlScriptTokenizer tokens = SqlScriptTokenizer.stream(in);
+        try (Statement statement = conn.createStatement()) {
+            int pending = 0;
+            while (tokens.next()) {
+                statement.addBatch(tokens.text());
+                if (++pending >= BATCH_SIZE) {
+                    statement.executeBatch();
+                    stats.rows.addAndGet(pending);
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                statement.executeBatch();
+                stats.rows.addAndGet(pending);
+            }
+        } catch (BatchUpdateException e) {
+            // Причина ошибки пакета - в следующем исключении цепочки
+            SQLException cause = e.getNextException();
+            throw cause != null ? new SQLException(cause.getMessage(), cause.getSQLState(), cause) : e;
+        }
+    }
+
+    private void executeStatements(Connection conn, List<String> statements, RestoreStats stats) throws SQLException {
+        for (String sql : statements) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(sql);
+                stats.executedStatements.incrementAndGet();
+            } catch (SQLException e) {
+                stats.failedStatements.incrementAndGet();
+                System.err.println("ERROR executing SQL (" + stats.failedStatements.get() + "): " + e.getMessage());
+                System.err.println("Failed SQL: " + (sql.length() > 200 ? sql.substring(0, 200) + "..." : sql));
+
+                if (sql.toUpperCase().startsWith("DROP TABLE") &&
+                        e.getMessage().contains("does not exist")) {
+                    System.out.println("Ignoring DROP TABLE error for non-existent table");
+                    stats.executedStatements.incrementAndGet();
+                } else {
+                    throw new SQLException("Failed to execute SQL statement " + stats.executedStatements.get() +
+                            ": " + e.getMessage() + " | SQL: " + sql, e);
+                }
+            }
+        }
+    }
+
+    // ========== РАЗБОР БЭКАПА ==========
+
+    // Скрипт .sql читается один раз: операторы структуры запоминаются, для данных сохраняются только
+    // смещения в файле - потоки потом читают свои диапазоны независимо. Для .sql.gz смещения считаются
+    // в распакованном потоке
+    private RestorePlan planScript(File file) throws IOException {
+        RestorePlan plan = new RestorePlan(file, null);
+        try (SqlScriptTokenizer tokens = plan.compressed
+                ? SqlScriptTokenizer.stream(new GZIPInputStream(new FileInputStream(file), IO_BUFFER_SIZE))
+                : SqlScriptTokenizer.map(file.toPath())) {
+            DataUnit inserts = null;
+            byte[] insertPrefix = null;
+
+            while (tokens.next()) {
+                // Подряд идущие INSERT одной таблицы - один блок. Обычно начало совпадает с предыдущим
+                // байт в байт, и оператор вообще не раскодируется
+                if (inserts != null && tokens.startsWith(insertPrefix)) {
+                    inserts.length = tokens.getPosition() - inserts.offset;
+                    inserts.size = inserts.length;
+                    continue;
+                }
+                Matcher insert = INSERT_PATTERN.matcher(tokens.head(STATEMENT_HEAD_BYTES));
+                if (insert.lookingAt()) {
+                    String table = insert.group(1);
+                    if (inserts != null && inserts.table.equals(table)) {
+                        inserts.length = tokens.getPosition() - inserts.offset;
+                        inserts.size = inserts.length;
+                    } else {
+                        inserts = DataUnit.range(table, null, tokens.getStart(), tokens.getPosition() - tokens.getStart());
+                        insertPrefix = (insert.group() + " ").getBytes(StandardCharsets.UTF_8);
+                        plan.units.add(inserts);
+                    }
+                    continue;
+                }
+                inserts = null;
+
+                String sql = tokens.text();
+                Matcher copy = COPY_FROM_STDIN_PATTERN.matcher(sql);
+                if (copy.matches()) {
+                    long start = tokens.getPosition();
+                    long end = tokens.skipCopyData();
+                    plan.units.add(DataUnit.range(copy.group(1), sql.replaceAll("(?i)\\bstdin\\b", "STDIN"), start, end - start));
+                    continue;
+                }
+
+                if (POST_DATA_PATTERN.matcher(sql).lookingAt()) {
+                    plan.postData.add(sql);
+                } else {
+                    plan.preData.add(sql);
+                }
+            }
+        }
+        attachChecksums(plan, file);
+        return plan;
+    }
+
+    // Суммы из файла-спутника берутся только для блоков, совпавших с оглавлением по смещению и длине
+    private void attachChecksums(RestorePlan plan, File file) throws IOException {
+        File sidecar = BackupService.sidecarFile(file);
+        if (!sidecar.exists()) {
+            return;
+        }
+        Map<Long, BackupManifest.TableEntry> byOffset = new HashMap<>();
+        for (BackupManifest.TableEntry table : manifestMapper.readValue(sidecar, BackupManifest.class).getTables()) {
+            if (table.getOffset() != null) {
+                byOffset.put(table.getOffset(), table);
+            }
+        }
+        for (DataUnit unit : plan.units) {
+            BackupManifest.TableEntry table = byOffset.get(unit.offset);
+            if (table != null && table.getName().equals(unit.table) && table.getLength() == unit.length) {
+                unit.sha256 = table.getSha256();
+            }
+        }
+    }
+
+    private RestorePlan planArchive(File file) throws IOException {
+        ZipFile zip = new ZipFile(file, StandardCharsets.UTF_8);
+        RestorePlan plan = new RestorePlan(file, zip);
+        try {
+            BackupManifest manifest = readManifest(zip, file);
+            ZipEntry preDataEntry = zip.getEntry(BackupService.ARCHIVE_PRE_DATA);
+            if (preDataEntry == null) {
+                throw new IOException("Not a backup archive: " + file.getName());
+            }
+
+            plan.preData.addAll(readStatements(zip, preDataEntry));
+            ZipEntry postDataEntry = zip.getEntry(BackupService.ARCHIVE_POST_DATA);
+            if (postDataEntry != null) {
+                plan.postData.addAll(readStatements(zip, postDataEntry));
+            }
+
+            for (BackupManifest.TableEntry table : manifest.getTables()) {
+                plan.units.add(archiveUnit(zip, file, table));
+            }
+            return plan;
+        } catch (IOException | RuntimeException e) {
+            plan.close();
+            throw e;
+        }
+    }
+
+    private static DataUnit archiveUnit(ZipFile zip, File file, BackupManifest.TableEntry table) throws IOException {
+        ZipEntry dataEntry = zip.getEntry(table.getEntry());
+        if (dataEntry == null) {
+            throw new IOException("Missing data for table " + table.getName() + " in " + file.getName());
+        }
+        String entryName = stripGzipExtension(table.getEntry());
+        DataUnit unit = DataUnit.entry(table.getName(),
+                entryName.endsWith(".sql") ? null : copySql(table, entryName.endsWith(".bin")), dataEntry);
+        unit.sha256 = table.getSha256();
+        return unit;
+    }
+
+    private static String copySql(BackupManifest.TableEntry table, boolean binary) {
+        return "COPY " + table.getName() + " (" + String.join(", ", table.getColumns()) + ") FROM STDIN" +
+                (binary ? " (FORMAT binary)" : "");
+    }
+
+    private static boolean isArchive(File file) {
+        return file.getName().toLowerCase().endsWith(".zip");
+    }
+
+    private static boolean isGzip(String name) {
+        return name.toLowerCase().endsWith(BackupService.GZIP_EXTENSION);
+    }
+
+    private static String stripGzipExtension(String name) {
+        return isGzip(name) ? name.substring(0, name.length() - BackupService.GZIP_EXTENSION.length()) : name;
+    }
+
+    private static List<String> readStatements(ZipFile zip, ZipEntry entry) throws IOException {
+        List<String> statements = new ArrayList<>();
+        try (SqlScriptTokenizer tokens = SqlScriptTokenizer.stream(zip.getInputStream(entry))) {
+            while (tokens.next()) {
+                statements.add(tokens.text());
+            }
+        }
+        return statements;
+    }
+
+    // Родительские таблицы раньше дочерних (алгоритм Кана). Связи берутся из внешних ключей в post-data
+    // бэкапа и из текущего каталога схемы; таблицы из циклов идут в конце в исходном порядке
+    private void orderByForeignKeys(String schema, RestorePlan plan) {
+        Set<String> tables = new LinkedHashSet<>();
+        for (DataUnit unit : plan.units) {
+            tables.add(unit.table);
+        }
+
+        Map<String, Set<String>> parents = new HashMap<>();
+        for (String sql : plan.postData) {
+            Matcher fk = FOREIGN_KEY_PATTERN.matcher(sql);
+            if (fk.lookingAt()) {
+                addDependency(parents, tables, fk.group(1), fk.group(2));
+            }
+        }
+        addCatalogDependencies(schema, parents, tables);
+
+        Map<String, Integer> rank = new HashMap<>();
+        List<String> ordered = topologicalOrder(tables, parents);
+        for (int i = 0; i < ordered.size(); i++) {
+            rank.put(ordered.get(i), i);
+        }
+        plan.units.sort(Comparator.comparingInt(unit -> rank.get(unit.table)));
+    }
+
+    private void addCatalogDependencies(String schema, Map<String, Set<String>> parents, Set<String> tables) {
+        try {
+            SchemaCatalog catalog = databaseService.getCatalog(schema);
+            for (String table : tables) {
+                if (!catalog.containsTable(table)) continue;
+                for (Column column : catalog.getTable(table).getColumns()) {
+                    if (column.getForeignKeyTable() != null) {
+                        addDependency(parents, tables, table, column.getForeignKeyTable());
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Restore: catalog unavailable, using foreign keys from backup only: " + e.getMessage());
+        }
+    }
+
+    private static List<String> topologicalOrder(Set<String> tables, Map<String, Set<String>> parents) {
+        List<String> ordered = new ArrayList<>();
+        Set<String> placed = new HashSet<>();
+        boolean progressMade = true;
+        while (progressMade) {
+            progressMade = false;
+            for (String table : tables) {
+                if (!placed.contains(table) && placed.containsAll(parents.getOrDefault(table, Collections.emptySet()))) {
+                    ordered.add(table);
+                    placed.add(table);
+                    progressMade = true;
+                }
+            }
+        }
+        for (String table : tables) {
+            if (placed.add(table)) {
+                ordered.add(table);
+            }
+        }
+        return ordered;
+    }
+
+    private static void addDependency(Map<String, Set<String>> parents, Set<String> tables, String child, String parent) {
+        if (!child.equals(parent) && tables.contains(child) && tables.contains(parent)) {
+            parents.computeIfAbsent(child, k -> new HashSet<>()).add(parent);
+        }
+    }
+
+    private static void checkCancelled(ProgressListener progress) throws SQLException {
+        if (progress.isCancelled()) {
+            throw new SQLException("Restore cancelled");
+        }
+    }
+
+    private static void rollbackQuietly(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            System.err.println("Error during rollback: " + e.getMessage());
+        }
+    }
+
+    // ========== ВСПОМОГАТЕЛЬНЫЕ КЛАССЫ ==========
+
+    private static class RestorePlan implements Closeable {
+        private final File file;
+        private final ZipFile zip;
+        // .sql.gz: данные читаются одним распаковывающим потоком, без произвольного доступа
+        private final boolean compressed;
+        private CountingInputStream cursor;
+        private final List<String> preData = new ArrayList<>();
+        private final List<DataUnit> units = new ArrayList<>();
+        private final List<String> postData = new ArrayList<>();
+
+        RestorePlan(File file, ZipFile zip) {
+            this.file = file;
+            this.zip = zip;
+            this.compressed = zip == null && isGzip(file.getName());
+        }
+
+        // Каждый блок открывается отдельно - потоки читают файл независимо друг от друга.
+        // counter оборачивает поток до распаковки: прогресс идет по байтам файла
+        InputStream open(DataUnit unit, UnaryOperator<InputStream> counter) throws IOException {
+            if (unit.zipEntry != null) {
+                InputStream in = counter.apply(zip.getInputStream(unit.zipEntry));
+                return isGzip(unit.zipEntry.getName()) ? new GZIPInputStream(in, IO_BUFFER_SIZE) : in;
+            }
+            if (compressed) {
+                return counter.apply(new RangeInputStream(seek(unit.offset), unit.length, false));
+            }
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            channel.position(unit.offset);
+            return new BufferedInputStream(
+                    counter.apply(new RangeInputStream(Channels.newInputStream(channel), unit.length, true)), IO_BUFFER_SIZE);
+        }
+
+        // Перемотка распакованного потока вперед; назад - только открыв файл заново
+        private InputStream seek(long offset) throws IOException {
+            if (cursor == null || cursor.getCount() > offset) {
+                if (cursor != null) {
+                    cursor.close();
+                }
+                cursor = new CountingInputStream(new GZIPInputStream(new FileInputStream(file), IO_BUFFER_SIZE));
+            }
+            byte[] skipBuffer = new byte[IO_BUFFER_SIZE];
+            while (cursor.getCount() < offset) {
+                int n = cursor.read(skipBuffer, 0, (int) Math.min(skipBuffer.length, offset - cursor.getCount()));
+                if (n < 0) {
+                    throw new EOFException("Unexpected end of " + file.getName());
+                }
+            }
+            return cursor;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (zip != null) {
+                zip.close();
+            }
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    private static class DataUnit {
+        private final String table;
+        // null - блок INSERT-операторов
+        private final String copySql;
+        private ZipEntry zipEntry;
+        private long offset;
+        private long length;
+        private long size;
+        // null - бэкап без контрольных сумм, блок не проверяется
+        private String sha256;
+
+        private DataUnit(String table, String copySql) {
+            this.table = table;
+            this.copySql = copySql;
+        }
+
+        static DataUnit range(String table, String copySql, long offset, long length) {
+            DataUnit unit = new DataUnit(table, copySql);
+            unit.offset = offset;
+            unit.length = length;
+            unit.size = length;
+            return unit;
+        }
+
+        static DataUnit entry(String table, String copySql, ZipEntry entry) {
+            DataUnit unit = new DataUnit(table, copySql);
+            unit.zipEntry = entry;
+            unit.size = entry.getSize() >= 0 ? entry.getSize() : Math.max(0, entry.getCompressedSize());
+            return unit;
+        }
+    }
+
+    // Не больше length байт из потока; closeSource == false - общий поток остается открытым для следующих блоков
+    private static class RangeInputStream extends FilterInputStream {
+        private final boolean closeSource;
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length, boolean closeSource) {
+            super(in);
+            this.remaining = length;
+            this.closeSource = closeSource;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closeSource) {
+                super.close();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = super.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+    }
+
+    // Считает загруженные байты для прогресса и скорости; отмена прерывает чтение, а с ним и COPY
+    private static class ProgressInputStream extends FilterInputStream {
+        private final ProgressListener progress;
+        private final RestoreStats stats;
+        private long sinceReport;
+
+        ProgressInputStream(InputStream in, ProgressListener progress, RestoreStats stats) {
+            super(in);
+            this.progress = progress;
+            this.stats = stats;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n > 0 ? one[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (progress.isCancelled()) {
+                throw new IOException("Restore cancelled");
+            }
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                long loaded = stats.loadedBytes.addAndGet(n);
+                sinceReport += n;
+                if (sinceReport >= PROGRESS_STEP_BYTES) {
+                    sinceReport = 0;
+                    progress.progress(loaded, stats.totalBytes, stats.describeThroughput());
+                }
+            }
+            return n;
+        }
+    }
+
+    static class RestoreStats {
+        private final long startedAt = System.currentTimeMillis();
+        private final AtomicInteger executedStatements = new AtomicInteger();
+        private final AtomicInteger failedStatements = new AtomicInteger();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong loadedBytes = new AtomicLong();
+        private volatile long totalBytes;
+        private long elapsedMillis;
+
+        int getExecutedStatements() {
+            return executedStatements.get();
+        }
+
+        int getFailedStatements() {
+            return failedStatements.get();
+        }
+
+        long getRows() {
+            return rows.get();
+        }
+
+        long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        String describeThroughput() {
+            double seconds = Math.max(0.001, (System.currentTimeMillis() - startedAt) / 1000.0);
+            return String.format("Загружено строк: %d, %.1f МБ/с, %.0f строк/с",
+                    rows.get(), loadedBytes.get() / seconds / (1024 * 1024), rows.get() / seconds);
+        }
+    }
+}
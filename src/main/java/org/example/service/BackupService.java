@@ -2,22 +2,83 @@ package org.example.service;
 
 import lombok.Getter;
 import lombok.Setter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.example.entity.BackupManifest;
+import org.example.entity.Column;
+import org.example.entity.SchemaCatalog;
+import org.example.entity.Table;
+import org.example.entity.BackupCatalog;
+import org.example.util.ChecksumOutputStream;
+import org.example.util.EnvConfig;
+import org.example.util.ParallelGzipOutputStream;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.sql.*;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 public class BackupService {
     private final DatabaseService databaseService;
+    private final BackupRestorer restorer;
+    private BackupCatalog backupCatalog;
     private static final String BACKUP_DIR = "backup";
     private static final String DATE_FORMAT = "yyyyMMdd_HHmmss";
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+    private static final String ARCHIVE_EXTENSION = ".zip";
+    static final String ARCHIVE_MANIFEST = "manifest.json";
+    static final String ARCHIVE_PRE_DATA = "pre-data.sql";
+    static final String ARCHIVE_POST_DATA = "post-data.sql";
+    static final String GZIP_EXTENSION = ".gz";
+    // Оглавление скрипта лежит рядом с ним: backup_....sql.gz.manifest.json
+    static final String SIDECAR_SUFFIX = ".manifest.json";
+    private static final String CATALOG_FILE = "catalog.json";
+    private static final ObjectMapper MANIFEST_MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    public static final BackupFormat DEFAULT_FORMAT =
+            BackupFormat.fromConfig(EnvConfig.get("BACKUP_FORMAT", null), BackupFormat.COPY_TEXT);
+    // Сколько соединений параллельно выгружают таблицы при полном бэкапе (1 - последовательно)
+    public static final int DEFAULT_PARALLEL_JOBS = Math.max(1, EnvConfig.getInt("BACKUP_PARALLEL_JOBS", 1));
+    // Скрипт пишется в .sql.gz, сжатие блоками на всех ядрах; в архиве .zip сжимаются записи
+    public static final boolean DEFAULT_COMPRESS = EnvConfig.getBoolean("BACKUP_COMPRESS", true);
+    private static final int COMPRESSION_LEVEL =
+            Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, EnvConfig.getInt("BACKUP_COMPRESSION_LEVEL", 6)));
+    // Восстановление по умолчанию: одной транзакцией или параллельно по таблицам
+    public static final boolean RESTORE_ATOMIC = EnvConfig.getBoolean("RESTORE_ATOMIC", true);
+    public static final int DEFAULT_RESTORE_JOBS = Math.max(1, EnvConfig.getInt("RESTORE_PARALLEL_JOBS", 4));
+
+    // Таблицы по размеру на диске: крупные раздаются потокам первыми, чтобы не остаться в хвосте
+    private static final String TABLE_SIZES_SQL =
+            "SELECT c.relname AS table_name, pg_total_relation_size(c.oid) AS size " +
+                    "FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                    "WHERE n.nspname = ? AND c.relkind IN ('r', 'p')";
 
     public BackupService(DatabaseService databaseService) {
         this.databaseService = databaseService;
+        this.restorer = new BackupRestorer(databaseService, MANIFEST_MAPPER);
         createBackupDirectory();
     }
 
@@ -34,41 +95,42 @@ public class BackupService {
     }
 
     public BackupResult createBackup() {
-        BackupResult result = new BackupResult();
+        return createBackup(DEFAULT_FORMAT, ProgressListener.NONE);
+    }
 
-        try (Connection conn = databaseService.getConnection()) {
-            String schema = databaseService.getCurrentSchema();
-            String timestamp = new SimpleDateFormat(DATE_FORMAT).format(new Date());
-            String backupFileName = String.format("backup_%s_%s.sql", schema, timestamp);
-            Path backupPath = Paths.get(BACKUP_DIR, backupFileName);
+    public BackupResult createBackup(ProgressListener progress) {
+        return createBackup(DEFAULT_FORMAT, progress);
+    }
 
-            try (PrintWriter writer = new PrintWriter(new FileWriter(backupPath.toFile()))) {
-                writer.println("-- PostgreSQL Backup");
-                writer.println("-- Schema: " + schema);
-                writer.println("-- Date: " + new Date());
-                writer.println("-- Generated by Database Manager");
-                writer.println();
+    public BackupResult createBackup(BackupFormat format, ProgressListener progress) {
+        return createBackup(format, DEFAULT_PARALLEL_JOBS, progress);
+    }
 
-                List<String> tables = databaseService.getTablesInCurrentSchema();
+    // jobs > 1 - таблицы выгружаются параллельно на нескольких соединениях в архив .zip
+    public BackupResult createBackup(BackupFormat format, int jobs, ProgressListener progress) {
+        return createBackup(format, jobs, DEFAULT_COMPRESS, progress);
+    }
 
-                if (tables.isEmpty()) {
-                    result.setSuccess(false);
-                    result.setMessage("No tables found in schema: " + schema);
-                    return result;
-                }
+    public BackupResult createBackup(BackupFormat format, int jobs, boolean compress, ProgressListener progress) {
+        BackupResult result = new BackupResult();
 
-                for (String table : tables) {
-                    backupTable(conn, table, writer);
-                }
+        try {
+            String schema = databaseService.getCurrentSchema();
+            List<String> tables = databaseService.getCatalog(schema).getTableNames();
+            if (tables.isEmpty()) {
+                result.setSuccess(false);
+                result.setMessage("No tables found in schema: " + schema);
+                return result;
+            }
 
-                result.setSuccess(true);
+            String timestamp = new SimpleDateFormat(DATE_FORMAT).format(new Date());
+            String backupFileName = String.format("backup_%s_%s%s", schema, timestamp, extension(format, jobs, compress));
+            Path backupPath = Paths.get(BACKUP_DIR, backupFileName);
+            writeBackup(schema, backupPath, tables, progress, result, (conn, catalog) -> usesArchive(format, jobs)
+                    ? writeArchive(conn, catalog, tables, format, jobs, compress, null, backupPath, progress)
+                    : writeScript(conn, catalog, tables, format, "PostgreSQL Backup", null, compress, backupPath, progress));
+            if (result.isSuccess()) {
                 result.setMessage("Backup created successfully: " + backupFileName);
-                result.setBackupFile(backupPath.toFile());
-                result.setTablesCount(tables.size());
-
-            } catch (IOException e) {
-                result.setSuccess(false);
-                result.setMessage("Error writing backup file: " + e.getMessage());
             }
 
         } catch (SQLException e) {
@@ -80,93 +142,824 @@ public class BackupService {
     }
 
     public BackupResult createTableBackup(String tableName) {
+        return createTableBackup(tableName, DEFAULT_FORMAT);
+    }
+
+    public BackupResult createTableBackup(String tableName, BackupFormat format) {
+        return createTableBackup(tableName, format, DEFAULT_COMPRESS);
+    }
+
+    public BackupResult createTableBackup(String tableName, BackupFormat format, boolean compress) {
         BackupResult result = new BackupResult();
 
-        try (Connection conn = databaseService.getConnection()) {
+        try {
             String schema = databaseService.getCurrentSchema();
+            if (!databaseService.getCatalog(schema).containsTable(tableName)) {
+                result.setSuccess(false);
+                result.setMessage("Table '" + tableName + "' not found in schema: " + schema);
+                return result;
+            }
+
             String timestamp = new SimpleDateFormat(DATE_FORMAT).format(new Date());
-            String backupFileName = String.format("backup_%s_%s_%s.sql", schema, tableName, timestamp);
+            String backupFileName = String.format("backup_%s_%s_%s%s", schema, tableName, timestamp, extension(format, 1, compress));
             Path backupPath = Paths.get(BACKUP_DIR, backupFileName);
+            List<String> tables = List.of(tableName);
+            writeBackup(schema, backupPath, tables, ProgressListener.NONE, result, (conn, catalog) -> usesArchive(format, 1)
+                    ? writeArchive(conn, catalog, tables, format, 1, compress, null, backupPath, ProgressListener.NONE)
+                    : writeScript(conn, catalog, tables, format, "PostgreSQL Table Backup", tableName, compress,
+                    backupPath, ProgressListener.NONE));
+            if (result.isSuccess()) {
+                result.setMessage("Table backup created successfully: " + backupFileName);
+            }
 
-            try (PrintWriter writer = new PrintWriter(new FileWriter(backupPath.toFile()))) {
-                writer.println("-- PostgreSQL Table Backup");
-                writer.println("-- Schema: " + schema);
-                writer.println("-- Table: " + tableName);
-                writer.println("-- Date: " + new Date());
-                writer.println();
+        } catch (SQLException e) {
+            result.setSuccess(false);
+            result.setMessage("Database error during backup: " + e.getMessage());
+        }
 
-                backupTable(conn, tableName, writer);
+        return result;
+    }
 
-                result.setSuccess(true);
-                result.setMessage("Table backup created successfully: " + backupFileName);
-                result.setBackupFile(backupPath.toFile());
-                result.setTablesCount(1);
+    // Инкремент: только строки, измененные после родительского бэкапа, и текущий набор ключей каждой таблицы
+    // (по нему при восстановлении удаляются исчезнувшие строки). Родитель - последний архив этой схемы.
+    // Если архива еще нет или с тех пор изменился состав таблиц или столбцов, создается полный архив -
+    // он станет базой для следующих инкрементов
+    public BackupResult createIncrementalBackup(BackupFormat format, boolean compress, ProgressListener progress) {
+        BackupResult result = new BackupResult();
 
-            } catch (IOException e) {
+        try {
+            String schema = databaseService.getCurrentSchema();
+            SchemaCatalog current = databaseService.getCatalog(schema);
+            List<String> tables = current.getTableNames();
+            if (tables.isEmpty()) {
                 result.setSuccess(false);
-                result.setMessage("Error writing backup file: " + e.getMessage());
+                result.setMessage("No tables found in schema: " + schema);
+                return result;
+            }
+
+            // Инкремент всегда пишется через COPY: INSERT-скрипт нельзя применить поверх существующих строк
+            BackupFormat dataFormat = format == BackupFormat.COPY_BINARY ? BackupFormat.COPY_BINARY : BackupFormat.COPY_TEXT;
+            File parent = findIncrementBase(schema);
+            BackupManifest parentManifest = parent == null ? null : restorer.readManifest(parent);
+            IncrementBase base = parentManifest != null && sameStructure(parentManifest, current, tables)
+                    ? new IncrementBase(parent.getName(), parentManifest.getWatermark()) : null;
+
+            String timestamp = new SimpleDateFormat(DATE_FORMAT).format(new Date());
+            String backupFileName = String.format(base != null ? "backup_%s_%s_incr%s" : "backup_%s_%s%s",
+                    schema, timestamp, ARCHIVE_EXTENSION);
+            Path backupPath = Paths.get(BACKUP_DIR, backupFileName);
+            writeBackup(schema, backupPath, tables, progress, result, (conn, catalog) ->
+                    writeArchive(conn, catalog, tables, dataFormat, 1, compress, base, backupPath, progress));
+            if (result.isSuccess()) {
+                result.setMessage(base != null
+                        ? "Incremental backup created successfully: " + backupFileName + " (base: " + base.fileName + ")"
+                        : "No matching base backup, full backup created: " + backupFileName);
             }
 
         } catch (SQLException e) {
             result.setSuccess(false);
             result.setMessage("Database error during backup: " + e.getMessage());
+        } catch (IOException e) {
+            result.setSuccess(false);
+            result.setMessage("Error reading base backup: " + e.getMessage());
         }
 
         return result;
     }
 
-    private void backupTable(Connection conn, String tableName, PrintWriter writer) throws SQLException {
-        writer.println("-- Table: " + tableName);
-        writer.println("-- Structure");
+    // Самый свежий архив схемы с водяным знаком; скрипты .sql и старые архивы без него базой быть не могут
+    private File findIncrementBase(String schema) {
+        for (File file : getAvailableBackups()) {
+            if (!file.getName().toLowerCase().endsWith(ARCHIVE_EXTENSION)) {
+                continue;
+            }
+            BackupManifest manifest = getBackupInfo(file);
+            if (manifest != null && schema.equals(manifest.getSchema()) && manifest.getWatermark() != null) {
+                return file;
+            }
+        }
+        return null;
+    }
 
-        writer.println("DROP TABLE IF EXISTS " + tableName + " CASCADE;");
+    private static boolean sameStructure(BackupManifest manifest, SchemaCatalog catalog, List<String> tables) {
+        if (manifest.getTables().size() != tables.size()) {
+            return false;
+        }
+        for (BackupManifest.TableEntry entry : manifest.getTables()) {
+            if (!catalog.containsTable(entry.getName())
+                    || !entry.getColumns().equals(columnNames(catalog.getTable(entry.getName())))) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        backupSequences(conn, tableName, writer);
-        try (Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(
-                     "SELECT column_name, data_type, character_maximum_length, " +
-                             "is_nullable, column_default " +
-                             "FROM information_schema.columns " +
-                             "WHERE table_schema = '" + databaseService.getCurrentSchema() + "' " +
-                             "AND table_name = '" + tableName + "' " +
-                             "ORDER BY ordinal_position")) {
-
-            writer.println("CREATE TABLE " + tableName + " (");
-            List<String> columns = new ArrayList<>();
-            while (rs.next()) {
-                String columnName = rs.getString("column_name");
-                String dataType = rs.getString("data_type");
-                String maxLength = rs.getString("character_maximum_length");
-                String isNullable = rs.getString("is_nullable");
-                String defaultValue = rs.getString("column_default");
+    // Имя файла бэкапа (null - если это не инкремент), от которого отсчитан инкрементальный архив
+    public String getBaseBackupName(File backupFile) {
+        BackupManifest manifest = getBackupInfo(backupFile);
+        return manifest != null && manifest.isIncremental() ? manifest.getBaseBackup() : null;
+    }
+
+    // ========== КАТАЛОГ БЭКАПОВ ==========
+
+    // Оглавление бэкапа (null - старый файл без оглавления или файл не читается). Берется из catalog.json,
+    // пока у файла те же размер и время изменения; иначе читается из архива или файла-спутника
+    public synchronized BackupManifest getBackupInfo(File backupFile) {
+        BackupCatalog.Entry cached = findCatalogEntry(loadCatalog(), backupFile.getName());
+        if (cached != null && cached.getSize() == backupFile.length()
+                && cached.getLastModified() == backupFile.lastModified()) {
+            return cached.getManifest();
+        }
+        try {
+            BackupManifest manifest;
+            if (backupFile.getName().toLowerCase().endsWith(ARCHIVE_EXTENSION)) {
+                manifest = restorer.readManifest(backupFile);
+            } else if (sidecarFile(backupFile).exists()) {
+                manifest = MANIFEST_MAPPER.readValue(sidecarFile(backupFile), BackupManifest.class);
+            } else {
+                return null;
+            }
+            updateCatalog(backupFile, manifest);
+            return manifest;
+        } catch (IOException e) {
+            System.err.println("Cannot read contents of backup " + backupFile.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
 
-                StringBuilder columnDef = new StringBuilder("  " + columnName + " " + dataType);
+    // Записи удаленных файлов выбрасываются при каждом обновлении
+    private synchronized void updateCatalog(File backupFile, BackupManifest manifest) {
+        BackupCatalog catalog = loadCatalog();
+        catalog.getBackups().removeIf(entry -> entry.getFile().equals(backupFile.getName())
+                || !new File(backupFile.getParentFile(), entry.getFile()).exists());
+        BackupCatalog.Entry entry = new BackupCatalog.Entry();
+        entry.setFile(backupFile.getName());
+        entry.setSize(backupFile.length());
+        entry.setLastModified(backupFile.lastModified());
+        entry.setManifest(manifest);
+        catalog.getBackups().add(entry);
+        try {
+            MANIFEST_MAPPER.writeValue(Paths.get(BACKUP_DIR, CATALOG_FILE).toFile(), catalog);
+        } catch (IOException e) {
+            System.err.println("Error writing backup catalog: " + e.getMessage());
+        }
+    }
 
-                if (maxLength != null && !maxLength.isEmpty()) {
-                    columnDef.append("(").append(maxLength).append(")");
+    private BackupCatalog loadCatalog() {
+        if (backupCatalog == null) {
+            File file = Paths.get(BACKUP_DIR, CATALOG_FILE).toFile();
+            backupCatalog = new BackupCatalog();
+            if (file.exists()) {
+                try {
+                    backupCatalog = MANIFEST_MAPPER.readValue(file, BackupCatalog.class);
+                } catch (IOException e) {
+                    // Каталог - только кэш: испорченный файл перестраивается по мере чтения бэкапов
+                    System.err.println("Ignoring unreadable backup catalog: " + e.getMessage());
                 }
+            }
+        }
+        return backupCatalog;
+    }
+
+    private static BackupCatalog.Entry findCatalogEntry(BackupCatalog catalog, String fileName) {
+        return catalog.getBackups().stream().filter(entry -> entry.getFile().equals(fileName)).findFirst().orElse(null);
+    }
+
+    private static String extension(BackupFormat format, int jobs, boolean compress) {
+        if (usesArchive(format, jobs)) {
+            return ARCHIVE_EXTENSION;
+        }
+        return compress ? ".sql" + GZIP_EXTENSION : ".sql";
+    }
+
+    // Параллельные потоки пишут каждый свою таблицу, поэтому результат собирается в архив
+    private static boolean usesArchive(BackupFormat format, int jobs) {
+        return format == BackupFormat.COPY_BINARY || jobs > 1;
+    }
+
+    private interface BackupWriter {
+        BackupManifest write(Connection conn, SchemaCatalog catalog) throws SQLException, IOException;
+    }
+
+    // Недописанный файл (ошибка или отмена) удаляется, чтобы не попасть в список бэкапов
+    private void writeBackup(String schema, Path backupPath, List<String> tables, ProgressListener progress,
+                             BackupResult result, BackupWriter backupWriter) throws SQLException {
+        try (Connection conn = databaseService.getConnection(schema)) {
+            SchemaCatalog catalog = databaseService.getCatalog(schema);
+            // Все таблицы читаются из одного снимка: без этого бэкап может поймать половину чужой транзакции
+            beginSnapshotTransaction(conn);
+            BackupManifest manifest = backupWriter.write(conn, catalog);
+            conn.commit();
+            updateCatalog(backupPath.toFile(), manifest);
+            progress.progress(tables.size(), tables.size(), null);
+
+            result.setSuccess(true);
+            result.setBackupFile(backupPath.toFile());
+            result.setTablesCount(tables.size());
+
+        } catch (CancellationException e) {
+            deletePartialBackup(backupPath);
+            result.setSuccess(false);
+            result.setMessage("Backup cancelled");
+        } catch (IOException e) {
+            deletePartialBackup(backupPath);
+            result.setSuccess(false);
+            result.setMessage("Error writing backup file: " + e.getMessage());
+        } catch (SQLException e) {
+            deletePartialBackup(backupPath);
+            throw e;
+        }
+    }
+
+    private void deletePartialBackup(Path backupPath) {
+        try {
+            Files.deleteIfExists(backupPath);
+            Files.deleteIfExists(sidecarFile(backupPath.toFile()).toPath());
+        } catch (IOException e) {
+            System.err.println("Failed to delete partial backup " + backupPath + ": " + e.getMessage());
+        }
+    }
+
+    // Скрипт .sql: структура и данные таблиц подряд; данные COPY пишутся драйвером прямо в поток файла.
+    // Смещения и контрольные суммы сегментов данных сохраняются в файл-спутник .manifest.json
+    private BackupManifest writeScript(Connection conn, SchemaCatalog catalog, List<String> tables, BackupFormat format,
+                                       String title, String singleTable, boolean compress, Path backupPath,
+                                       ProgressListener progress) throws SQLException, IOException {
+        long started = System.currentTimeMillis();
+        BackupManifest manifest = newManifest(conn, catalog, format);
+        try (ChecksumOutputStream out = new ChecksumOutputStream(openScriptOutput(backupPath, compress), true);
+             PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            writer.println("-- " + title);
+            writer.println("-- Schema: " + catalog.getSchema());
+            if (singleTable != null) {
+                writer.println("-- Table: " + singleTable);
+            }
+            writer.println("-- Date: " + new Date());
+            writer.println("-- Format: " + format.name());
+            writer.println("-- Generated by Database Manager");
+            writer.println();
+
+            for (int i = 0; i < tables.size(); i++) {
+                checkCancelled(progress);
+                progress.progress(i, tables.size(), "Бэкап таблицы " + tables.get(i));
+                manifest.getTables().add(backupTable(conn, catalog, tables.get(i), format, writer, out));
+            }
+            writePostData(catalog, tables, true, writer);
+
+            writer.flush();
+            if (writer.checkError()) {
+                throw new IOException("Failed to write " + backupPath);
+            }
+        }
+        manifest.setDurationMillis(System.currentTimeMillis() - started);
+        MANIFEST_MAPPER.writeValue(sidecarFile(backupPath.toFile()), manifest);
+        return manifest;
+    }
+
+    private static BackupManifest newManifest(Connection conn, SchemaCatalog catalog, BackupFormat format)
+            throws SQLException {
+        BackupManifest manifest = new BackupManifest();
+        manifest.setSchema(catalog.getSchema());
+        manifest.setCreated(new Date().toString());
+        manifest.setFormat(format.name());
+        manifest.setWatermark(currentWatermark(conn));
+        return manifest;
+    }
+
+    static File sidecarFile(File backupFile) {
+        return new File(backupFile.getParentFile(), backupFile.getName() + SIDECAR_SUFFIX);
+    }
+
+    // Блоки gzip сжимаются на всех ядрах, пока текущий поток читает данные из базы
+    private static OutputStream openScriptOutput(Path backupPath, boolean compress) throws IOException {
+        OutputStream file = new BufferedOutputStream(Files.newOutputStream(backupPath), IO_BUFFER_SIZE);
+        if (!compress) {
+            return file;
+        }
+        try {
+            return new ParallelGzipOutputStream(file, COMPRESSION_LEVEL, Runtime.getRuntime().availableProcessors());
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
 
-                if ("NO".equals(isNullable)) {
-                    columnDef.append(" NOT NULL");
+    // Архив .zip: pre-data.sql со структурой, по файлу данных на таблицу и manifest.json.
+    // base != null - инкремент: без структуры, с измененными строками и файлами ключей
+    private BackupManifest writeArchive(Connection conn, SchemaCatalog catalog, List<String> tables, BackupFormat format,
+                                        int jobs, boolean compress, IncrementBase base, Path backupPath,
+                                        ProgressListener progress) throws SQLException, IOException {
+        long started = System.currentTimeMillis();
+        try (ZipOutputStream zip = new ZipOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(backupPath), IO_BUFFER_SIZE))) {
+            zip.setLevel(compress ? COMPRESSION_LEVEL : Deflater.NO_COMPRESSION);
+            BackupManifest manifest = newManifest(conn, catalog, format);
+
+            if (base != null) {
+                manifest.setType(BackupManifest.TYPE_INCREMENTAL);
+                manifest.setBaseBackup(base.fileName);
+                writeIncrementData(conn, catalog, tables, format, base.watermark, zip, manifest, progress);
+                writePostDataEntry(catalog, tables, false, zip);
+                writeManifestEntry(manifest, started, zip);
+                return manifest;
+            }
+
+            StringWriter preData = new StringWriter();
+            try (PrintWriter writer = new PrintWriter(preData)) {
+                writer.println("-- PostgreSQL Backup (structure)");
+                writer.println("-- Schema: " + catalog.getSchema());
+                writer.println();
+                for (String tableName : tables) {
+                    writeTableStructure(catalog, tableName, writer);
                 }
+            }
+            zip.putNextEntry(new ZipEntry(ARCHIVE_PRE_DATA));
+            zip.write(preData.toString().getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+
+            int workers = Math.min(Math.min(jobs, tables.size()), maxParallelJobs());
+            manifest.setParallelJobs(Math.max(1, workers));
+            if (workers <= 1) {
+                for (int i = 0; i < tables.size(); i++) {
+                    String tableName = tables.get(i);
+                    checkCancelled(progress);
+                    progress.progress(i, tables.size(), "Бэкап таблицы " + tableName);
+
+                    BackupManifest.TableEntry entry = tableEntry(catalog, tableName, format);
+                    zip.putNextEntry(new ZipEntry(entry.getEntry()));
+                    ChecksumOutputStream out = new ChecksumOutputStream(zip, false);
+                    entry.setRows(dumpTableData(conn, catalog, tableName, format, out));
+                    out.flush();
+                    setSegment(entry, null, out);
+                    zip.closeEntry();
+                    manifest.getTables().add(entry);
+                }
+            } else {
+                writeSegmentsInParallel(conn, catalog, tables, format, workers, compress, backupPath.getParent(), zip,
+                        manifest, progress);
+            }
 
-                if (defaultValue != null && !defaultValue.isEmpty()) {
-                    if (defaultValue.contains("nextval") && dataType.equals("integer")) {
-                        columnDef = new StringBuilder("  " + columnName + " SERIAL");
-                    } else {
-                        String cleanDefault = cleanupDefaultValue(defaultValue);
-                        columnDef.append(" DEFAULT ").append(cleanDefault);
+            writePostDataEntry(catalog, tables, true, zip);
+            writeManifestEntry(manifest, started, zip);
+            return manifest;
+        }
+    }
+
+    private static void writeManifestEntry(BackupManifest manifest, long started, ZipOutputStream zip) throws IOException {
+        manifest.setDurationMillis(System.currentTimeMillis() - started);
+        zip.putNextEntry(new ZipEntry(ARCHIVE_MANIFEST));
+        zip.write(MANIFEST_MAPPER.writeValueAsBytes(manifest));
+        zip.closeEntry();
+    }
+
+    // offset == null - запись архива, иначе сегмент скрипта, начавшийся с этого смещения
+    private static void setSegment(BackupManifest.TableEntry entry, Long offset, ChecksumOutputStream out) {
+        entry.setOffset(offset);
+        entry.setLength(offset == null ? out.getCount() : out.getCount() - offset);
+        entry.setSha256(out.finishDigest());
+    }
+
+    private void writePostDataEntry(SchemaCatalog catalog, List<String> tables, boolean constraints, ZipOutputStream zip)
+            throws IOException {
+        StringWriter postData = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(postData)) {
+            writePostData(catalog, tables, constraints, writer);
+        }
+        zip.putNextEntry(new ZipEntry(ARCHIVE_POST_DATA));
+        zip.write(postData.toString().getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    // Для таблиц с первичным ключом - строки, измененные начиная с watermark, и все значения ключа;
+    // таблицы без ключа выгружаются целиком
+    private void writeIncrementData(Connection conn, SchemaCatalog catalog, List<String> tables, BackupFormat format,
+                                    long watermark, ZipOutputStream zip, BackupManifest manifest,
+                                    ProgressListener progress) throws SQLException, IOException {
+        CopyManager copyManager = copyManager(conn);
+        String binary = format == BackupFormat.COPY_BINARY ? " (FORMAT binary)" : "";
+        for (int i = 0; i < tables.size(); i++) {
+            String tableName = tables.get(i);
+            checkCancelled(progress);
+            progress.progress(i, tables.size(), "Инкремент таблицы " + tableName);
+
+            BackupManifest.TableEntry entry = tableEntry(catalog, tableName, format);
+            List<String> primaryKey = catalog.getPrimaryKey(tableName);
+            entry.setPrimaryKey(primaryKey);
+            String columns = String.join(", ", entry.getColumns());
+
+            zip.putNextEntry(new ZipEntry(entry.getEntry()));
+            ChecksumOutputStream out = new ChecksumOutputStream(zip, false);
+            if (primaryKey.isEmpty()) {
+                entry.setRows(copyManager.copyOut("COPY " + tableName + " (" + columns + ") TO STDOUT" + binary, out));
+            } else {
+                entry.setRows(copyManager.copyOut("COPY (SELECT " + columns + " FROM " + tableName + " WHERE " +
+                        changedSince(watermark) + ") TO STDOUT" + binary, out));
+            }
+            setSegment(entry, null, out);
+            zip.closeEntry();
+
+            if (!primaryKey.isEmpty()) {
+                entry.setKeysEntry("data/" + tableName + ".keys.copy");
+                zip.putNextEntry(new ZipEntry(entry.getKeysEntry()));
+                copyManager.copyOut("COPY (SELECT " + String.join(", ", primaryKey) + " FROM " + tableName +
+                        ") TO STDOUT", zip);
+                zip.closeEntry();
+            }
+            manifest.getTables().add(entry);
+        }
+    }
+
+    // Условие "строка записана транзакцией с xid >= watermark". xmin хранится 32-битным, поэтому сравнение
+    // идет по модулю 2^32 - так же PostgreSQL сравнивает xid. Служебные xid (< 3) считаются старыми.
+    // Строки, старше текущего xid больше чем на 2^31 транзакций, попадут в инкремент лишний раз - это безопасно
+    private static String changedSince(long watermark) {
+        long low = watermark & 0xFFFFFFFFL;
+        return "xmin::text::bigint >= 3 AND (xmin::text::bigint - " + low + " + 4294967296) % 4294967296 < 2147483648";
+    }
+
+    // xmin снимка транзакции бэкапа: все транзакции младше него уже видны в бэкапе, а начиная с него -
+    // могли быть еще не завершены, поэтому следующий инкремент отсчитывается от этого значения
+    private static long currentWatermark(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT txid_snapshot_xmin(txid_current_snapshot())")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static class IncrementBase {
+        private final String fileName;
+        private final long watermark;
+
+        IncrementBase(String fileName, long watermark) {
+            this.fileName = fileName;
+            this.watermark = watermark;
+        }
+    }
+
+    // Координатор экспортирует снимок своей транзакции (pg_export_snapshot), каждый поток открывает
+    // свое соединение с SET TRANSACTION SNAPSHOT и выгружает таблицы во временные файлы.
+    // Готовые сегменты дописываются в архив в текущем потоке по мере завершения. При сжатии каждый поток
+    // сам сжимает свой сегмент в gzip, а в архив он ложится без повторного сжатия (STORED)
+    private void writeSegmentsInParallel(Connection conn, SchemaCatalog catalog, List<String> tables,
+                                         BackupFormat format, int workers, boolean compress, Path tempDir,
+                                         ZipOutputStream zip,
+                                         BackupManifest manifest, ProgressListener progress)
+            throws SQLException, IOException {
+        String snapshot = exportSnapshot(conn);
+
+        BlockingQueue<String> pending = new LinkedBlockingQueue<>(orderBySize(conn, catalog.getSchema(), tables));
+        BlockingQueue<Segment> done = new LinkedBlockingQueue<>();
+        AtomicBoolean aborted = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "backup-worker-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        List<Path> tempFiles = Collections.synchronizedList(new ArrayList<>());
+
+        try {
+            for (int w = 0; w < workers; w++) {
+                executor.execute(() -> {
+                    try (Connection workerConn = databaseService.getConnection(catalog.getSchema())) {
+                        joinSnapshot(workerConn, snapshot);
+                        String tableName;
+                        while (!aborted.get() && (tableName = pending.poll()) != null) {
+                            Path temp = Files.createTempFile(tempDir, ".segment-", ".tmp");
+                            tempFiles.add(temp);
+                            long rows;
+                            try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(temp), IO_BUFFER_SIZE);
+                                 OutputStream out = compress ? new GZIPOutputStream(file, IO_BUFFER_SIZE) : file) {
+                                rows = dumpTableData(workerConn, catalog, tableName, format, out);
+                            }
+                            done.add(new Segment(tableName, temp, rows, null));
+                        }
+                        workerConn.commit();
+                    } catch (Exception e) {
+                        aborted.set(true);
+                        done.add(new Segment(null, null, 0, e));
                     }
+                });
+            }
+
+            Map<String, BackupManifest.TableEntry> entries = new HashMap<>();
+            for (int completed = 0; completed < tables.size(); ) {
+                if (progress.isCancelled()) {
+                    aborted.set(true);
+                    throw new CancellationException();
+                }
+                Segment segment;
+                try {
+                    segment = done.poll(200, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    aborted.set(true);
+                    throw new CancellationException();
+                }
+                if (segment == null) {
+                    continue;
+                }
+                if (segment.error != null) {
+                    aborted.set(true);
+                    if (segment.error instanceof SQLException) throw (SQLException) segment.error;
+                    if (segment.error instanceof IOException) throw (IOException) segment.error;
+                    throw new SQLException("Backup worker failed: " + segment.error.getMessage(), segment.error);
                 }
 
-                columns.add(columnDef.toString());
+                BackupManifest.TableEntry entry = tableEntry(catalog, segment.tableName, format);
+                if (compress) {
+                    entry.setEntry(entry.getEntry() + GZIP_EXTENSION);
+                    zip.putNextEntry(storedEntry(entry.getEntry(), segment.file));
+                } else {
+                    zip.putNextEntry(new ZipEntry(entry.getEntry()));
+                }
+                ChecksumOutputStream out = new ChecksumOutputStream(zip, false);
+                Files.copy(segment.file, out);
+                entry.setRows(segment.rows);
+                setSegment(entry, null, out);
+                zip.closeEntry();
+                Files.deleteIfExists(segment.file);
+                entries.put(segment.tableName, entry);
+
+                completed++;
+                progress.progress(completed, tables.size(), "Бэкап: готово таблиц " + completed + " из " + tables.size() +
+                        " (" + workers + " потоков)");
             }
-            writer.println(String.join(",\n", columns));
-            writer.println(");");
-            writer.println();
+
+            // В оглавлении сохраняем исходный порядок таблиц, а не порядок завершения
+            for (String tableName : tables) {
+                manifest.getTables().add(entries.get(tableName));
+            }
+        } finally {
+            aborted.set(true);
+            executor.shutdown();
+            try {
+                executor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (Path temp : tempFiles) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    // Для записи без сжатия zip требует заранее знать размер и CRC
+    private static ZipEntry storedEntry(String name, Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[IO_BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(Files.size(file));
+        entry.setCompressedSize(Files.size(file));
+        entry.setCrc(crc.getValue());
+        return entry;
+    }
+
+    // Крупные таблицы первыми: параллельная выгрузка не упирается в одну большую таблицу в конце
+    static List<String> orderBySize(Connection conn, String schema, List<String> tables) throws SQLException {
+        Map<String, Long> sizes = new HashMap<>();
+        try (PreparedStatement st = conn.prepareStatement(TABLE_SIZES_SQL)) {
+            st.setString(1, schema);
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    sizes.put(rs.getString("table_name"), rs.getLong("size"));
+                }
+            }
+        }
+        List<String> ordered = new ArrayList<>(tables);
+        ordered.sort((a, b) -> Long.compare(sizes.getOrDefault(b, 0L), sizes.getOrDefault(a, 0L)));
+        return ordered;
+    }
+
+    // Одно соединение пула остается у координатора, его снимок должен жить до конца выгрузки
+    private int maxParallelJobs() {
+        return Math.max(1, databaseService.getPoolStats().getMaxSize() - 1);
+    }
+
+    static void beginSnapshotTransaction(Connection conn) throws SQLException {
+        conn.setAutoCommit(false);
+        conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        conn.setReadOnly(true);
+    }
+
+    // Снимок транзакции координатора; живет, пока она открыта
+    static String exportSnapshot(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT pg_export_snapshot()")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    static void joinSnapshot(Connection conn, String snapshot) throws SQLException {
+        beginSnapshotTransaction(conn);
+        try (Statement st = conn.createStatement()) {
+            st.execute("SET TRANSACTION SNAPSHOT '" + snapshot + "'");
         }
+    }
+
+    private static BackupManifest.TableEntry tableEntry(SchemaCatalog catalog, String tableName, BackupFormat format) {
+        BackupManifest.TableEntry entry = new BackupManifest.TableEntry();
+        entry.setName(tableName);
+        entry.setColumns(columnNames(catalog.getTable(tableName)));
+        entry.setEntry("data/" + tableName + dataExtension(format));
+        return entry;
+    }
+
+    private static String dataExtension(BackupFormat format) {
+        switch (format) {
+            case SQL:
+                return ".sql";
+            case COPY_TEXT:
+                return ".copy";
+            default:
+                return ".bin";
+        }
+    }
+
+    // Только данные таблицы: INSERT-операторы, текст COPY или двоичный COPY. Возвращает число строк
+    private long dumpTableData(Connection conn, SchemaCatalog catalog, String tableName, BackupFormat format,
+                               OutputStream out) throws SQLException, IOException {
+        if (format == BackupFormat.SQL) {
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            long rows = writeInserts(conn, tableName, writer);
+            writer.flush();
+            if (writer.checkError()) {
+                throw new IOException("Failed to write data for table " + tableName);
+            }
+            return rows;
+        }
+        String columns = String.join(", ", columnNames(catalog.getTable(tableName)));
+        return copyManager(conn).copyOut("COPY " + tableName + " (" + columns + ") TO STDOUT" +
+                (format == BackupFormat.COPY_BINARY ? " (FORMAT binary)" : ""), out);
+    }
+
+    private static class Segment {
+        private final String tableName;
+        private final Path file;
+        private final long rows;
+        private final Exception error;
+
+        Segment(String tableName, Path file, long rows, Exception error) {
+            this.tableName = tableName;
+            this.file = file;
+            this.rows = rows;
+            this.error = error;
+        }
+    }
+
+    // Сегмент данных - ровно те байты, которые восстановление читает как блок таблицы:
+    // строки INSERT или строки между "COPY ... FROM stdin;" и "\\."
+    private BackupManifest.TableEntry backupTable(Connection conn, SchemaCatalog catalog, String tableName,
+                                                  BackupFormat format, PrintWriter writer, ChecksumOutputStream out)
+            throws SQLException, IOException {
+        writeTableStructure(catalog, tableName, writer);
+        BackupManifest.TableEntry entry = new BackupManifest.TableEntry();
+        entry.setName(tableName);
+        entry.setColumns(columnNames(catalog.getTable(tableName)));
+        entry.setPrimaryKey(catalog.getPrimaryKey(tableName));
 
         writer.println("-- Data for table: " + tableName);
+        if (format == BackupFormat.SQL) {
+            writer.flush();
+            long offset = out.getCount();
+            out.resetDigest();
+            entry.setRows(writeInserts(conn, tableName, writer));
+            writer.flush();
+            setSegment(entry, offset, out);
+        } else {
+            String columns = String.join(", ", entry.getColumns());
+            writer.println("COPY " + tableName + " (" + columns + ") FROM stdin;");
+            // Все, что накопил writer, должно уйти в поток раньше данных COPY
+            writer.flush();
+            long offset = out.getCount();
+            out.resetDigest();
+            entry.setRows(copyManager(conn).copyOut("COPY " + tableName + " (" + columns + ") TO STDOUT", out));
+            setSegment(entry, offset, out);
+            writer.println("\\.");
+        }
+        writer.println();
+        return entry;
+    }
+
+    private void writeTableStructure(SchemaCatalog catalog, String tableName, PrintWriter writer) {
+        writer.println("-- Table: " + tableName);
+        writer.println("-- Structure");
+
+        writer.println("DROP TABLE IF EXISTS " + tableName + " CASCADE;");
+
+        backupSequences(catalog, tableName, writer);
+
+        Table table = catalog.getTable(tableName);
+        writer.println("CREATE TABLE " + tableName + " (");
+        List<String> columns = new ArrayList<>();
+        for (Column column : table.getColumns()) {
+            String dataType = column.getSqlType();
+            String defaultValue = column.getDefaultValue();
+
+            StringBuilder columnDef = new StringBuilder("  " + column.getName() + " " + dataType);
+
+            if (!column.isNullable()) {
+                columnDef.append(" NOT NULL");
+            }
+
+            if (defaultValue != null && !defaultValue.isEmpty()) {
+                if (defaultValue.contains("nextval") && dataType.equals("integer")) {
+                    columnDef = new StringBuilder("  " + column.getName() + " SERIAL");
+                } else {
+                    String cleanDefault = cleanupDefaultValue(defaultValue);
+                    columnDef.append(" DEFAULT ").append(cleanDefault);
+                }
+            }
+
+            columns.add(columnDef.toString());
+        }
+        writer.println(String.join(",\n", columns));
+        writer.println(");");
+        writer.println();
+    }
+
+    // Ключи, внешние ключи и счетчики SERIAL создаются после загрузки данных: вставка в таблицу без индексов
+    // быстрее, а порядок загрузки таблиц не упирается в ссылочную целостность.
+    // Внешний ключ пишется, только если таблица, на которую он ссылается, тоже есть в бэкапе; DEFERRABLE -
+    // чтобы инкремент мог удалять и добавлять строки связанных таблиц в любом порядке.
+    // constraints == false (инкремент) - только счетчики
+    private void writePostData(SchemaCatalog catalog, List<String> tables, boolean constraints, PrintWriter writer) {
+        writer.println(constraints ? "-- Post-data: primary keys, foreign keys, sequence values" : "-- Post-data: sequence values");
+        if (constraints) {
+            writeConstraints(catalog, tables, writer);
+        }
+        for (String tableName : tables) {
+            for (String sql : sequenceResets(catalog, tableName)) {
+                writer.println(sql + ";");
+            }
+        }
+        writer.println();
+    }
+
+    private static List<String> sequenceResets(SchemaCatalog catalog, String tableName) {
+        List<String> statements = new ArrayList<>();
+        for (Column column : catalog.getTable(tableName).getColumns()) {
+            String defaultValue = column.getDefaultValue();
+            if (defaultValue != null && defaultValue.contains("nextval")) {
+                statements.add("SELECT setval(pg_get_serial_sequence('" + tableName + "', '" + column.getName() + "'), " +
+                        "COALESCE((SELECT MAX(" + column.getName() + ") FROM " + tableName + "), 0) + 1, false)");
+            }
+        }
+        return statements;
+    }
+
+    // Таблицы схемы с внешним ключом на tableName (кроме ссылок таблицы на саму себя)
+    private static List<String> referencingTables(SchemaCatalog catalog, String tableName) {
+        List<String> referencing = new ArrayList<>();
+        for (String other : catalog.getTableNames()) {
+            if (other.equals(tableName)) continue;
+            for (Column column : catalog.getTable(other).getColumns()) {
+                if (tableName.equals(column.getForeignKeyTable())) {
+                    referencing.add(other);
+                    break;
+                }
+            }
+        }
+        return referencing;
+    }
+
+    private static void writeConstraints(SchemaCatalog catalog, List<String> tables, PrintWriter writer) {
+        for (String tableName : tables) {
+            List<String> primaryKey = catalog.getPrimaryKey(tableName);
+            if (!primaryKey.isEmpty()) {
+                writer.println("ALTER TABLE " + tableName + " ADD PRIMARY KEY (" + String.join(", ", primaryKey) + ");");
+            }
+        }
+        for (String tableName : tables) {
+            for (Column column : catalog.getTable(tableName).getColumns()) {
+                String referenced = column.getForeignKeyTable();
+                if (referenced != null && tables.contains(referenced) && column.getForeignKeyColumn() != null) {
+                    writer.println("ALTER TABLE " + tableName + " ADD CONSTRAINT fk_" + tableName + "_" + column.getName() +
+                            " FOREIGN KEY (" + column.getName() + ") REFERENCES " + referenced +
+                            " (" + column.getForeignKeyColumn() + ") DEFERRABLE;");
+                }
+            }
+        }
+    }
+
+    private long writeInserts(Connection conn, String tableName, PrintWriter writer) throws SQLException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        StringBuilder insertSQL = new StringBuilder();
+        long rows = 0;
+
         try (Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery("SELECT * FROM " + tableName)) {
 
@@ -174,7 +967,8 @@ public class BackupService {
             int columnCount = metaData.getColumnCount();
 
             while (rs.next()) {
-                StringBuilder insertSQL = new StringBuilder("INSERT INTO " + tableName + " VALUES (");
+                insertSQL.setLength(0);
+                insertSQL.append("INSERT INTO ").append(tableName).append(" VALUES (");
 
                 for (int i = 1; i <= columnCount; i++) {
                     Object value = rs.getObject(i);
@@ -187,12 +981,11 @@ public class BackupService {
                             stringValue = stringValue.replace("\\", "\\\\");
                             insertSQL.append("'").append(stringValue).append("'");
                         } else if (value instanceof java.util.Date) {
-                            java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-                            insertSQL.append("'").append(sdf.format(value)).append("'");
+                            insertSQL.append("'").append(dateFormat.format(value)).append("'");
                         } else if (value instanceof Boolean) {
                             insertSQL.append((Boolean) value ? "TRUE" : "FALSE");
                         } else {
-                            insertSQL.append(value.toString());
+                            insertSQL.append(value);
                         }
                     }
 
@@ -203,34 +996,36 @@ public class BackupService {
 
                 insertSQL.append(");");
                 writer.println(insertSQL);
+                rows++;
             }
         }
-        writer.println();
+        return rows;
     }
 
-    private void backupSequences(Connection conn, String tableName, PrintWriter writer) throws SQLException {
-        try (Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(
-                     "SELECT column_name, column_default " +
-                             "FROM information_schema.columns " +
-                             "WHERE table_schema = '" + databaseService.getCurrentSchema() + "' " +
-                             "AND table_name = '" + tableName + "' " +
-                             "AND column_default LIKE 'nextval%'")) {
+    private static List<String> columnNames(Table table) {
+        List<String> names = new ArrayList<>();
+        for (Column column : table.getColumns()) {
+            names.add(column.getName());
+        }
+        return names;
+    }
 
-            while (rs.next()) {
-                String columnDefault = rs.getString("column_default");
-                if (columnDefault != null && columnDefault.contains("nextval")) {
-                    int start = columnDefault.indexOf("'") + 1;
-                    int end = columnDefault.indexOf("'", start);
-                    if (start > 0 && end > start) {
-                        String sequenceName = columnDefault.substring(start, end);
-                        writer.println("-- Sequence for SERIAL column");
-                        writer.println("DROP SEQUENCE IF EXISTS " + sequenceName + " CASCADE;");
-                        writer.println("CREATE SEQUENCE " + sequenceName + ";");
-                        writer.println();
-                    }
-                }
-            }
+    private static CopyManager copyManager(Connection conn) throws SQLException {
+        return conn.unwrap(PGConnection.class).getCopyAPI();
+    }
+
+    private static void checkCancelled(ProgressListener progress) {
+        if (progress.isCancelled()) {
+            throw new CancellationException();
+        }
+    }
+
+    private void backupSequences(SchemaCatalog catalog, String tableName, PrintWriter writer) {
+        for (String sequenceName : catalog.getSequences(tableName)) {
+            writer.println("-- Sequence for SERIAL column");
+            writer.println("DROP SEQUENCE IF EXISTS " + sequenceName + " CASCADE;");
+            writer.println("CREATE SEQUENCE " + sequenceName + ";");
+            writer.println();
         }
     }
 
@@ -246,6 +1041,16 @@ public class BackupService {
     }
 
     public BackupResult restoreBackup(File backupFile) {
+        return restoreBackup(backupFile, ProgressListener.NONE);
+    }
+
+    public BackupResult restoreBackup(File backupFile, ProgressListener progress) {
+        return restoreBackup(backupFile, RESTORE_ATOMIC, DEFAULT_RESTORE_JOBS, progress);
+    }
+
+    // atomic - весь бэкап в одной транзакции: при ошибке база остается как была.
+    // Иначе данные таблиц грузятся jobs потоками, каждая таблица фиксируется отдельно
+    public BackupResult restoreBackup(File backupFile, boolean atomic, int jobs, ProgressListener progress) {
         BackupResult result = new BackupResult();
 
         if (backupFile == null || !backupFile.exists()) {
@@ -254,97 +1059,93 @@ public class BackupService {
             return result;
         }
 
-        System.out.println("Starting restore from: " + backupFile.getAbsolutePath());
-
-        try (Connection conn = databaseService.getConnection()) {
-            conn.setAutoCommit(false);
+        System.out.println("Starting restore from: " + backupFile.getAbsolutePath() +
+                (atomic ? " (single transaction)" : " (" + jobs + " jobs)"));
 
-            try (BufferedReader reader = new BufferedReader(new FileReader(backupFile))) {
-
-                StringBuilder sqlScript = new StringBuilder();
-                String line;
-                int executedStatements = 0;
-                int failedStatements = 0;
+        try {
+            BackupRestorer.RestoreStats stats = restorer.restore(databaseService.getCurrentSchema(), backupFile,
+                    atomic, jobs, progress);
 
-                while ((line = reader.readLine()) != null) {
-                    if (line.trim().startsWith("--")) {
-                        continue;
-                    }
+            result.setSuccess(true);
+            result.setMessage(String.format(
+                    "Backup restored successfully. Executed: %d statements, Failed: %d statements, Rows loaded: %d in %.1f s. %s",
+                    stats.getExecutedStatements(), stats.getFailedStatements(), stats.getRows(),
+                    stats.getElapsedMillis() / 1000.0, stats.describeThroughput()
+            ));
+            result.setTablesCount(stats.getExecutedStatements());
 
-                    if (sqlScript.length() > 0) {
-                        sqlScript.append(" ");
-                    }
-                    sqlScript.append(line.trim());
-
-                    String currentScript = sqlScript.toString().trim();
-                    if (currentScript.endsWith(";")) {
-                        String sql = currentScript.substring(0, currentScript.length() - 1).trim();
-
-                        if (!sql.isEmpty()) {
-                            System.out.println("Executing SQL: " + (sql.length() > 100 ? sql.substring(0, 100) + "..." : sql));
-
-                            try (Statement stmt = conn.createStatement()) {
-                                stmt.execute(sql);
-                                executedStatements++;
-                                System.out.println("Successfully executed statement " + executedStatements);
-                            } catch (SQLException e) {
-                                failedStatements++;
-                                System.err.println("ERROR executing SQL (" + failedStatements + "): " + e.getMessage());
-                                System.err.println("Failed SQL: " + (sql.length() > 200 ? sql.substring(0, 200) + "..." : sql));
-
-                                if (sql.toUpperCase().startsWith("DROP TABLE") &&
-                                        e.getMessage().contains("does not exist")) {
-                                    System.out.println("Ignoring DROP TABLE error for non-existent table");
-                                    executedStatements++;
-                                } else {
-                                    throw new SQLException("Failed to execute SQL statement " + executedStatements +
-                                            ": " + e.getMessage() + " | SQL: " + sql, e);
-                                }
-                            }
-                        }
+            System.out.println("Restore completed: " + result.getMessage());
 
-                        sqlScript = new StringBuilder();
-                    }
-                }
+        } catch (SQLException e) {
+            result.setSuccess(false);
+            result.setMessage("Restore failed: " + e.getMessage());
 
-                conn.commit();
+        } catch (IOException e) {
+            result.setSuccess(false);
+            result.setMessage("Error reading backup file: " + e.getMessage());
 
-                result.setSuccess(true);
-                result.setMessage(String.format(
-                        "Backup restored successfully. Executed: %d statements, Failed: %d statements",
-                        executedStatements, failedStatements
-                ));
-                result.setTablesCount(executedStatements);
+        } finally {
+            // Даже неудачный параллельный вариант мог успеть изменить часть таблиц
+            if (!atomic || result.isSuccess()) {
+                databaseService.getMetadataCache().invalidateAll();
+                databaseService.fireTableChanged(null);
+            }
+        }
 
-                System.out.println("Restore completed: " + result.getMessage());
+        return result;
+    }
 
-            } catch (SQLException e) {
-                try {
-                    conn.rollback();
-                    System.err.println("Transaction rolled back due to error");
-                } catch (SQLException rollbackEx) {
-                    System.err.println("Error during rollback: " + rollbackEx.getMessage());
-                }
+    // Одна таблица из полного бэкапа: блок читается по оглавлению и сливается с таблицей в одной транзакции.
+    // Таблицу без первичного ключа можно только очистить целиком - если на нее ссылаются другие таблицы,
+    // это удалило бы (ON DELETE CASCADE) или заблокировало их строки, поэтому такое восстановление не выполняется
+    public BackupResult restoreTable(File backupFile, String tableName, ProgressListener progress) {
+        BackupResult result = new BackupResult();
+        BackupManifest manifest = backupFile != null && backupFile.exists() ? getBackupInfo(backupFile) : null;
+        if (manifest == null || manifest.isIncremental()) {
+            result.setSuccess(false);
+            result.setMessage(manifest == null
+                    ? "Backup has no table of contents, restore the whole file: " + (backupFile != null ? backupFile.getName() : "null")
+                    : "A single table cannot be restored from an incremental backup");
+            return result;
+        }
 
+        try {
+            String schema = databaseService.getCurrentSchema();
+            SchemaCatalog catalog = databaseService.getCatalog(schema);
+            if (!catalog.containsTable(tableName)) {
                 result.setSuccess(false);
-                result.setMessage("Restore failed: " + e.getMessage());
-
-            } catch (IOException e) {
-                try {
-                    conn.rollback();
-                } catch (SQLException rollbackEx) {
-                    System.err.println("Error during rollback: " + rollbackEx.getMessage());
-                }
-
+                result.setMessage("Table " + tableName + " does not exist, restore the whole backup");
+                return result;
+            }
+            List<String> primaryKey = catalog.getPrimaryKey(tableName);
+            List<String> referencing = referencingTables(catalog, tableName);
+            if (primaryKey.isEmpty() && !referencing.isEmpty()) {
                 result.setSuccess(false);
-                result.setMessage("Error reading backup file: " + e.getMessage());
+                result.setMessage("Table " + tableName + " has no primary key and is referenced by " +
+                        String.join(", ", referencing) + ", restore the whole backup");
+                return result;
             }
+            BackupRestorer.RestoreStats stats = restorer.restoreTable(schema, backupFile, manifest, tableName,
+                    primaryKey, sequenceResets(catalog, tableName), progress);
 
-            conn.setAutoCommit(true);
+            result.setSuccess(true);
+            result.setMessage(String.format("Table %s restored successfully. Rows loaded: %d in %.1f s. %s",
+                    tableName, stats.getRows(), stats.getElapsedMillis() / 1000.0, stats.describeThroughput()));
+            result.setTablesCount(1);
 
         } catch (SQLException e) {
             result.setSuccess(false);
-            result.setMessage("Database connection error: " + e.getMessage());
+            result.setMessage("Restore failed: " + e.getMessage());
+
+        } catch (IOException e) {
+            result.setSuccess(false);
+            result.setMessage("Error reading backup file: " + e.getMessage());
+
+        } finally {
+            if (result.isSuccess()) {
+                databaseService.getMetadataCache().invalidateAll();
+                databaseService.fireTableChanged(tableName);
+            }
         }
 
         return result;
@@ -356,7 +1157,7 @@ public class BackupService {
         try {
             Path backupPath = Paths.get(BACKUP_DIR);
             if (Files.exists(backupPath)) {
-                try (DirectoryStream<Path> stream = Files.newDirectoryStream(backupPath, "*.sql")) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(backupPath, "*.{sql,gz,zip}")) {
                     for (Path entry : stream) {
                         backups.add(entry.toFile());
                     }
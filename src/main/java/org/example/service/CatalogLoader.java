@@ -0,0 +1,201 @@
+package org.example.service;
+
+import org.example.entity.Column;
+import org.example.entity.SchemaCatalog;
+import org.example.entity.Table;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Загружает структуру всей схемы из pg_catalog несколькими запросами вместо обхода DatabaseMetaData по таблицам
+public class CatalogLoader {
+
+    private static final String TABLES_SQL =
+            "SELECT c.relname AS table_name " +
+                    "FROM pg_class c " +
+                    "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                    "WHERE n.nspname = ? AND c.relkind IN ('r', 'p') " +
+                    "ORDER BY c.relname";
+
+    private static final String COLUMNS_SQL =
+            "SELECT c.relname AS table_name, a.attname AS column_name, t.typname AS type_name, " +
+                    "format_type(a.atttypid, a.atttypmod) AS sql_type, a.attnotnull AS not_null, " +
+                    "pg_get_expr(d.adbin, d.adrelid) AS column_default " +
+                    "FROM pg_attribute a " +
+                    "JOIN pg_class c ON c.oid = a.attrelid " +
+                    "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                    "JOIN pg_type t ON t.oid = a.atttypid " +
+                    "LEFT JOIN pg_attrdef d ON d.adrelid = a.attrelid AND d.adnum = a.attnum " +
+                    "WHERE n.nspname = ? AND c.relkind IN ('r', 'p') AND a.attnum > 0 AND NOT a.attisdropped " +
+                    "ORDER BY c.relname, a.attnum";
+
+    private static final String PRIMARY_KEYS_SQL =
+            "SELECT c.relname AS table_name, a.attname AS column_name " +
+                    "FROM pg_constraint k " +
+                    "JOIN pg_class c ON c.oid = k.conrelid " +
+                    "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                    "CROSS JOIN LATERAL unnest(k.conkey) WITH ORDINALITY AS u(attnum, ord) " +
+                    "JOIN pg_attribute a ON a.attrelid = k.conrelid AND a.attnum = u.attnum " +
+                    "WHERE n.nspname = ? AND k.contype = 'p' " +
+                    "ORDER BY c.relname, u.ord";
+
+    private static final String FOREIGN_KEYS_SQL =
+            "SELECT c.relname AS table_name, a.attname AS column_name, " +
+                    "rc.relname AS ref_table, ra.attname AS ref_column " +
+                    "FROM pg_constraint k " +
+                    "JOIN pg_class c ON c.oid = k.conrelid " +
+                    "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                    "JOIN pg_class rc ON rc.oid = k.confrelid " +
+                    "CROSS JOIN LATERAL unnest(k.conkey, k.confkey) AS u(attnum, ref_attnum) " +
+                    "JOIN pg_attribute a ON a.attrelid = k.conrelid AND a.attnum = u.attnum " +
+                    "JOIN pg_attribute ra ON ra.attrelid = k.confrelid AND ra.attnum = u.ref_attnum " +
+                    "WHERE n.nspname = ? AND k.contype = 'f'";
+
+    // Последовательности, принадлежащие столбцам SERIAL (deptype 'a')
+    private static final String SEQUENCES_SQL =
+            "SELECT t.relname AS table_name, s.relname AS sequence_name " +
+                    "FROM pg_class s " +
+                    "JOIN pg_namespace n ON n.oid = s.relnamespace " +
+                    "JOIN pg_depend d ON d.objid = s.oid AND d.classid = 'pg_class'::regclass " +
+                    "AND d.refclassid = 'pg_class'::regclass AND d.deptype = 'a' " +
+                    "JOIN pg_class t ON t.oid = d.refobjid " +
+                    "WHERE n.nspname = ? AND s.relkind = 'S' " +
+                    "ORDER BY t.relname, s.relname";
+
+    public SchemaCatalog load(Connection conn, String schema) throws SQLException {
+        long start = System.currentTimeMillis();
+
+        Map<String, Table> tables = new LinkedHashMap<>();
+        try (PreparedStatement st = conn.prepareStatement(TABLES_SQL)) {
+            st.setString(1, schema);
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    String tableName = rs.getString("table_name");
+                    tables.put(tableName, new Table(tableName));
+                }
+            }
+        }
+
+        Map<String, List<String>> sequences = new LinkedHashMap<>();
+
+        try (PreparedStatement st = conn.prepareStatement(COLUMNS_SQL)) {
+            st.setString(1, schema);
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    Table table = tables.get(rs.getString("table_name"));
+                    if (table == null) continue;
+
+                    String defaultValue = rs.getString("column_default");
+                    Column column = new Column(rs.getString("column_name"),
+                            jdbcTypeName(rs.getString("type_name"), defaultValue));
+                    column.setSqlType(rs.getString("sql_type"));
+                    column.setNullable(!rs.getBoolean("not_null"));
+                    column.setDefaultValue(defaultValue);
+                    table.addColumn(column);
+
+                    String sequenceName = sequenceFromDefault(defaultValue);
+                    if (sequenceName != null) {
+                        addUnique(sequences, table.getName(), sequenceName);
+                    }
+                }
+            }
+        }
+
+        Map<String, List<String>> primaryKeys = new LinkedHashMap<>();
+        try (PreparedStatement st = conn.prepareStatement(PRIMARY_KEYS_SQL)) {
+            st.setString(1, schema);
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    Column column = findColumn(tables, rs.getString("table_name"), rs.getString("column_name"));
+                    if (column != null) {
+                        column.setPrimaryKey(true);
+                        addUnique(primaryKeys, rs.getString("table_name"), column.getName());
+                    }
+                }
+            }
+        }
+
+        try (PreparedStatement st = conn.prepareStatement(FOREIGN_KEYS_SQL)) {
+            st.setString(1, schema);
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    Column column = findColumn(tables, rs.getString("table_name"), rs.getString("column_name"));
+                    if (column != null) {
+                        column.setForeignKeyTable(rs.getString("ref_table"));
+                        column.setForeignKeyColumn(rs.getString("ref_column"));
+                    }
+                }
+            }
+        }
+
+        try (PreparedStatement st = conn.prepareStatement(SEQUENCES_SQL)) {
+            st.setString(1, schema);
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    String tableName = rs.getString("table_name");
+                    if (tables.containsKey(tableName)) {
+                        addUnique(sequences, tableName, rs.getString("sequence_name"));
+                    }
+                }
+            }
+        }
+
+        SchemaCatalog catalog = new SchemaCatalog(schema, tables, sequences, primaryKeys);
+        System.out.println("Loaded catalog for schema '" + schema + "': " + tables.size() +
+                " tables in " + (System.currentTimeMillis() - start) + " ms");
+        return catalog;
+    }
+
+    // Повторяет имена типов драйвера (DatabaseMetaData.getColumns), чтобы диалоги распознавали SERIAL
+    private static String jdbcTypeName(String typeName, String defaultValue) {
+        if (defaultValue != null && defaultValue.contains("nextval(")) {
+            switch (typeName) {
+                case "int4":
+                    return "serial";
+                case "int8":
+                    return "bigserial";
+                case "int2":
+                    return "smallserial";
+                default:
+                    break;
+            }
+        }
+        return typeName;
+    }
+
+    private static String sequenceFromDefault(String defaultValue) {
+        if (defaultValue == null || !defaultValue.contains("nextval")) {
+            return null;
+        }
+        int start = defaultValue.indexOf("'") + 1;
+        int end = defaultValue.indexOf("'", start);
+        if (start > 0 && end > start) {
+            return defaultValue.substring(start, end);
+        }
+        return null;
+    }
+
+    private static Column findColumn(Map<String, Table> tables, String tableName, String columnName) {
+        Table table = tables.get(tableName);
+        if (table == null) return null;
+        for (Column column : table.getColumns()) {
+            if (column.getName().equals(columnName)) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    private static void addUnique(Map<String, List<String>> map, String key, String value) {
+        List<String> values = map.computeIfAbsent(key, k -> new ArrayList<>());
+        if (!values.contains(value)) {
+            values.add(value);
+        }
+    }
+}
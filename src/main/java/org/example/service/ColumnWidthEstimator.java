@@ -0,0 +1,118 @@
+package org.example.service;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.example.util.EnvConfig;
+
+import java.util.Arrays;
+import java.util.Date;
+
+// Ширина столбцов одного листа. В режиме ESTIMATE значения учитываются по мере записи строк: первые
+// SAMPLE_ROWS строк измеряются точно (самая длинная строка многострочного текста, широкие символы),
+// дальше в бегущий максимум идет только длина значения. Ширина выставляется один раз в apply().
+// AUTO_SIZE - прежний Sheet.autoSizeColumn: потоковый лист должен отслеживать столбцы с момента создания
+class ColumnWidthEstimator {
+    private static final int SAMPLE_ROWS = Math.max(0, EnvConfig.getInt("EXPORT_WIDTH_SAMPLE_ROWS", 1000));
+    // Предел ширины столбца в Excel - 255 символов
+    private static final int MAX_CHARS = 255;
+    private static final int PADDING_CHARS = 2;
+    // "yyyy-mm-dd hh:mm:ss" из стиля дат экспорта
+    private static final int DATE_CHARS = 19;
+    // Формат General показывает не больше 11 знаков дробного числа
+    private static final int MAX_GENERAL_NUMBER_CHARS = 11;
+
+    private final ColumnWidthMode mode;
+    private int[] chars = new int[16];
+    private long rows;
+
+    ColumnWidthEstimator(ColumnWidthMode mode) {
+        this.mode = mode;
+    }
+
+    ColumnWidthMode getMode() {
+        return mode;
+    }
+
+    // Заголовок полужирный - чуть шире обычного текста
+    void header(int column, String name) {
+        if (mode == ColumnWidthMode.ESTIMATE && name != null) {
+            update(column, (int) Math.ceil(measure(name) * 1.1));
+        }
+    }
+
+    void value(int column, Object value) {
+        if (mode != ColumnWidthMode.ESTIMATE || value == null) {
+            return;
+        }
+        int length;
+        if (value instanceof Number) {
+            length = numberChars(((Number) value).doubleValue());
+        } else if (value instanceof Date) {
+            length = DATE_CHARS;
+        } else if (value instanceof Boolean) {
+            length = (Boolean) value ? 4 : 5;
+        } else {
+            String text = value.toString();
+            length = rows < SAMPLE_ROWS ? measure(text) : text.length();
+        }
+        update(column, length);
+    }
+
+    void number(int column, double value) {
+        if (mode == ColumnWidthMode.ESTIMATE) {
+            update(column, numberChars(value));
+        }
+    }
+
+    void rowWritten() {
+        rows++;
+    }
+
+    void apply(Sheet sheet, int columnCount) {
+        for (int i = 0; i < columnCount; i++) {
+            if (mode == ColumnWidthMode.AUTO_SIZE) {
+                sheet.autoSizeColumn(i);
+            } else if (mode == ColumnWidthMode.ESTIMATE && i < chars.length && chars[i] > 0) {
+                sheet.setColumnWidth(i, Math.min(MAX_CHARS, chars[i] + PADDING_CHARS) * 256);
+            }
+        }
+    }
+
+    private void update(int column, int length) {
+        if (column >= chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(column + 1, chars.length * 2));
+        }
+        if (length > chars[column]) {
+            chars[column] = length;
+        }
+    }
+
+    // Целые - по числу цифр без форматирования в строку
+    private static int numberChars(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            long whole = Math.abs((long) value);
+            int digits = 1;
+            while (whole >= 10) {
+                whole /= 10;
+                digits++;
+            }
+            return value < 0 ? digits + 1 : digits;
+        }
+        return Math.min(MAX_GENERAL_NUMBER_CHARS, Double.toString(value).length());
+    }
+
+    // Самая длинная строка текста; символы CJK и прочие полноширинные занимают два знакоместа
+    private static int measure(String text) {
+        int longest = 0;
+        int line = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                longest = Math.max(longest, line);
+                line = 0;
+            } else if (c != '\r') {
+                line += c >= 0x1100 && Character.isIdeographic(c) ? 2 : 1;
+            }
+        }
+        return Math.max(longest, line);
+    }
+}
@@ -0,0 +1,37 @@
+package org.example.service;
+
+import lombok.Getter;
+
+// Как экспорт подбирает ширину столбцов
+@Getter
+public enum ColumnWidthMode {
+    // Sheet.autoSizeColumn: каждая ячейка измеряется шрифтом, точно, но медленно на больших листах
+    AUTO_SIZE("По шрифту (медленно)"),
+    // Оценка по длине значений во время записи строк
+    ESTIMATE("По длине значений"),
+    // Ширина по умолчанию
+    NONE("Не подбирать");
+
+    private final String displayName;
+
+    ColumnWidthMode(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public static ColumnWidthMode fromConfig(String value, ColumnWidthMode fallback) {
+        if (value == null || value.isBlank()) {
+            return fallback;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown column width mode: " + value + ", using " + fallback);
+            return fallback;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
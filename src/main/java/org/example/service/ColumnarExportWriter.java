@@ -0,0 +1,230 @@
+package org.example.service;
+
+import org.example.entity.ResultTable;
+import org.example.util.EnvConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+// Двоичный колоночный формат .tcol по образцу Parquet: строки идут группами по GROUP_ROWS, внутри группы
+// каждый столбец хранится отдельным блоком, сжатым zlib (Deflater). Однотипные значения подряд сжимаются
+// намного лучше строк CSV, а читатель может распаковать только нужные столбцы.
+//
+// Файл: "TCOL", байт версии 1, блоки столбцов групп подряд, оглавление, int длина оглавления, "TCOL".
+// Оглавление (DataOutputStream, big-endian): int число столбцов, по столбцу - UTF имя и байт ColumnKind.ordinal();
+// int число групп, по группе - int строк и по столбцу long смещение блока, int сжатый и int исходный размер;
+// в конце long всего строк.
+// Блок до сжатия: битовая маска NULL (бит i & 7 байта i >> 3 = 1 - NULL), затем только не-NULL значения:
+// INT и LONG - zigzag varint разности с предыдущим значением, DOUBLE - 8 байт IEEE 754,
+// BOOLEAN - байт 0/1, остальное - varint длины и текст в UTF-8 (numeric - текстом сервера)
+class ColumnarExportWriter implements ExportWriter {
+    private static final byte[] MAGIC = {'T', 'C', 'O', 'L'};
+    private static final byte VERSION = 1;
+    private static final int GROUP_ROWS = Math.max(1, EnvConfig.getInt("EXPORT_COLUMNAR_GROUP_ROWS", 65536));
+
+    private final OutputStream out;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final byte[] compressed = new byte[1 << 16];
+    // Записи оглавления о группах - пишутся по мере сброса групп
+    private final ByteArrayOutputStream groupIndex = new ByteArrayOutputStream();
+    private final DataOutputStream groups = new DataOutputStream(groupIndex);
+    private List<String> columns;
+    private ResultTable.ColumnKind[] kinds;
+    private Chunk[] chunks;
+    private int groupCount;
+    private int groupRows;
+    private long totalRows;
+    private long offset;
+
+    ColumnarExportWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void begin(List<String> columns, List<ResultTable.ColumnKind> kinds) throws IOException {
+        this.columns = columns;
+        this.kinds = kinds.toArray(new ResultTable.ColumnKind[0]);
+        chunks = new Chunk[columns.size()];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new Chunk();
+        }
+        out.write(MAGIC);
+        out.write(VERSION);
+        offset = MAGIC.length + 1;
+    }
+
+    @Override
+    public void writeNull(int column) {
+        chunks[column].setNull(groupRows);
+    }
+
+    @Override
+    public void writeLong(int column, long value) {
+        Chunk chunk = chunks[column];
+        long delta = value - chunk.previous;
+        chunk.previous = value;
+        chunk.writeVarLong((delta << 1) ^ (delta >> 63));
+    }
+
+    @Override
+    public void writeDouble(int column, double value) {
+        chunks[column].writeFixedLong(Double.doubleToRawLongBits(value));
+    }
+
+    @Override
+    public void writeBoolean(int column, boolean value) {
+        chunks[column].writeByte(value ? 1 : 0);
+    }
+
+    @Override
+    public void writeNumber(int column, String value) {
+        writeText(column, value);
+    }
+
+    @Override
+    public void writeText(int column, CharSequence value) {
+        chunks[column].writeText(value);
+    }
+
+    @Override
+    public void endRow() throws IOException {
+        totalRows++;
+        if (++groupRows == GROUP_ROWS) {
+            writeGroup();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (groupRows > 0 || groupCount == 0) {
+            writeGroup();
+        }
+        deflater.end();
+
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(index);
+        data.writeInt(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            data.writeUTF(columns.get(i));
+            data.writeByte(kinds[i].ordinal());
+        }
+        data.writeInt(groupCount);
+        groups.flush();
+        groupIndex.writeTo(data);
+        data.writeLong(totalRows);
+        data.writeInt(index.size() + 4);
+        data.write(MAGIC);
+        data.flush();
+        index.writeTo(out);
+        out.flush();
+    }
+
+    private void writeGroup() throws IOException {
+        groups.writeInt(groupRows);
+        int maskBytes = (groupRows + 7) >> 3;
+        for (Chunk chunk : chunks) {
+            long blockStart = offset;
+            // Маска и значения - один поток zlib: второй setInput после того, как первый вход израсходован
+            deflater.reset();
+            deflater.setInput(chunk.nulls, 0, maskBytes);
+            drain(false);
+            deflater.setInput(chunk.data, 0, chunk.size);
+            deflater.finish();
+            drain(true);
+            groups.writeLong(blockStart);
+            groups.writeInt((int) (offset - blockStart));
+            groups.writeInt(maskBytes + chunk.size);
+            chunk.reset(maskBytes);
+        }
+        groupCount++;
+        groupRows = 0;
+    }
+
+    private void drain(boolean finishing) throws IOException {
+        while (finishing ? !deflater.finished() : !deflater.needsInput()) {
+            int n = deflater.deflate(compressed);
+            out.write(compressed, 0, n);
+            offset += n;
+        }
+    }
+
+    // Значения одного столбца текущей группы
+    private static final class Chunk {
+        private final byte[] nulls = new byte[(GROUP_ROWS + 7) >> 3];
+        private byte[] data = new byte[1 << 12];
+        private int size;
+        private long previous;
+
+        void setNull(int row) {
+            nulls[row >> 3] |= (byte) (1 << (row & 7));
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            data[size++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        void writeFixedLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                data[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeText(CharSequence value) {
+            int length = value.length();
+            int bytes = 0;
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    bytes++;
+                } else if (c < 0x800) {
+                    bytes += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    bytes += 4;
+                    i++;
+                } else {
+                    bytes += Character.isSurrogate(c) ? 1 : 3;
+                }
+            }
+            writeVarLong(bytes);
+            ensure(bytes);
+            if (bytes == length) {
+                for (int i = 0; i < length; i++) {
+                    data[size++] = (byte) value.charAt(i);
+                }
+                return;
+            }
+            byte[] encoded = value.toString().getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(encoded, 0, data, size, encoded.length);
+            size += encoded.length;
+        }
+
+        void reset(int maskBytes) {
+            Arrays.fill(nulls, 0, maskBytes, (byte) 0);
+            size = 0;
+            previous = 0;
+        }
+
+        private void ensure(int bytes) {
+            if (size + bytes > data.length) {
+                data = Arrays.copyOf(data, Math.max(size + bytes, data.length * 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,521 @@
+package org.example.service;
+
+import lombok.Getter;
+import org.example.util.EnvConfig;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ConnectionPool {
+    private final String url;
+    private final Properties connectionProperties;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long validationIntervalMs;
+    private final int validationTimeoutSec;
+    private final long leakThresholdMs;
+    private final boolean schemaAffinity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    // LIFO: недавно использованные соединения выдаются первыми, старые успевают простаивать и вытесняться
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final Set<PooledConnection> borrowed = new HashSet<>();
+    private final ScheduledExecutorService housekeeper;
+
+    private int totalConnections;
+    private int waitingThreads;
+    private boolean closed;
+
+    private long createdCount;
+    private long destroyedCount;
+    private long borrowCount;
+    private long timeoutCount;
+    private long validationFailures;
+    private long leakCount;
+    private long totalWaitNanos;
+    private long schemaSwitches;
+    private long affinityHits;
+
+    public ConnectionPool(String url, String user, String password) {
+        this.url = url;
+        this.connectionProperties = new Properties();
+        if (user != null) connectionProperties.setProperty("user", user);
+        if (password != null) connectionProperties.setProperty("password", password);
+        // Пакетные INSERT драйвер склеивает в многострочные INSERT ... VALUES (...), (...)
+        connectionProperties.setProperty("reWriteBatchedInserts",
+                String.valueOf(EnvConfig.getBoolean("DB_REWRITE_BATCHED_INSERTS", true)));
+
+        this.maxSize = Math.max(1, EnvConfig.getInt("DB_POOL_MAX_SIZE", 8));
+        this.minSize = Math.max(0, Math.min(maxSize, EnvConfig.getInt("DB_POOL_MIN_SIZE", 1)));
+        this.borrowTimeoutMs = EnvConfig.getLong("DB_POOL_BORROW_TIMEOUT_MS", 30_000);
+        this.idleTimeoutMs = EnvConfig.getLong("DB_POOL_IDLE_TIMEOUT_MS", 300_000);
+        this.validationIntervalMs = EnvConfig.getLong("DB_POOL_VALIDATION_INTERVAL_MS", 5_000);
+        this.validationTimeoutSec = EnvConfig.getInt("DB_POOL_VALIDATION_TIMEOUT_SEC", 5);
+        this.leakThresholdMs = EnvConfig.getLong("DB_POOL_LEAK_THRESHOLD_MS", 60_000);
+        this.schemaAffinity = EnvConfig.getBoolean("DB_POOL_SCHEMA_AFFINITY", true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "db-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() throws SQLException {
+        // Заполняем пул до минимального размера; первое соединение заодно проверяет настройки подключения
+        List<PooledConnection> initial = new ArrayList<>();
+        try {
+            for (int i = 0; i < Math.max(1, minSize); i++) {
+                initial.add(new PooledConnection(openPhysicalConnection()));
+            }
+        } catch (SQLException e) {
+            initial.forEach(pc -> closeQuietly(pc.raw));
+            throw e;
+        }
+
+        lock.lock();
+        try {
+            for (PooledConnection pc : initial) {
+                idle.addFirst(pc);
+                totalConnections++;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        long period = Math.max(1_000, Math.min(30_000, Math.min(
+                idleTimeoutMs > 0 ? idleTimeoutMs / 2 : Long.MAX_VALUE,
+                leakThresholdMs > 0 ? leakThresholdMs / 2 : Long.MAX_VALUE)));
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+
+        System.out.println("Connection pool started: min=" + minSize + ", max=" + maxSize);
+    }
+
+    public Connection getConnection() throws SQLException {
+        return getConnection(null);
+    }
+
+    // schema == null: вызывающему коду search_path не важен, соединение выдается как есть
+    public Connection getConnection(String schema) throws SQLException {
+        long startNanos = System.nanoTime();
+        PooledConnection pooled = acquire(startNanos, schema);
+
+        try {
+            bindSchema(pooled, schema);
+        } catch (SQLException e) {
+            destroy(pooled);
+            throw e;
+        }
+
+        lock.lock();
+        try {
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowSite = leakThresholdMs > 0 ? new Throwable("Connection borrowed here") : null;
+            pooled.leakReported = false;
+            borrowed.add(pooled);
+            borrowCount++;
+            totalWaitNanos += System.nanoTime() - startNanos;
+        } finally {
+            lock.unlock();
+        }
+
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new LeaseHandler(pooled));
+    }
+
+    private void bindSchema(PooledConnection pooled, String schema) throws SQLException {
+        if (schema == null || schema.equals(pooled.boundSchema)) {
+            return;
+        }
+        try (Statement st = pooled.raw.createStatement()) {
+            st.execute("SET search_path TO " + schema);
+        }
+        pooled.boundSchema = schema;
+
+        lock.lock();
+        try {
+            schemaSwitches++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Вызывается, когда произвольный SQL мог изменить настройки сессии (search_path и т.п.)
+    public void invalidateSessionState(Connection connection) {
+        if (connection != null && Proxy.isProxyClass(connection.getClass())
+                && Proxy.getInvocationHandler(connection) instanceof LeaseHandler handler) {
+            handler.pooled.boundSchema = null;
+        }
+    }
+
+    private PooledConnection pollIdle(String schema) {
+        if (schemaAffinity && schema != null) {
+            Iterator<PooledConnection> it = idle.iterator();
+            while (it.hasNext()) {
+                PooledConnection pc = it.next();
+                if (schema.equals(pc.boundSchema)) {
+                    it.remove();
+                    affinityHits++;
+                    return pc;
+                }
+            }
+        }
+        return idle.pollFirst();
+    }
+
+    private PooledConnection acquire(long startNanos, String schema) throws SQLException {
+        long deadline = startNanos + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMs);
+
+        while (true) {
+            PooledConnection candidate = null;
+
+            lock.lock();
+            try {
+                while (candidate == null) {
+                    if (closed) {
+                        throw new SQLException("Connection pool is closed");
+                    }
+
+                    candidate = pollIdle(schema);
+                    if (candidate != null) break;
+
+                    if (totalConnections < maxSize) {
+                        totalConnections++;
+                        break;
+                    }
+
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        timeoutCount++;
+                        throw new SQLException("Timed out after " + borrowTimeoutMs +
+                                " ms waiting for a database connection (pool size " + maxSize + ")");
+                    }
+
+                    waitingThreads++;
+                    try {
+                        available.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection", e);
+                    } finally {
+                        waitingThreads--;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (candidate == null) {
+                // Слот зарезервирован, физическое соединение открываем вне блокировки
+                try {
+                    return new PooledConnection(openPhysicalConnection());
+                } catch (SQLException e) {
+                    lock.lock();
+                    try {
+                        totalConnections--;
+                        available.signal();
+                    } finally {
+                        lock.unlock();
+                    }
+                    throw e;
+                }
+            }
+
+            if (isUsable(candidate)) {
+                return candidate;
+            }
+            destroy(candidate);
+        }
+    }
+
+    private boolean isUsable(PooledConnection pc) {
+        if (System.currentTimeMillis() - pc.lastUsedAt < validationIntervalMs) {
+            return true;
+        }
+        try {
+            if (pc.raw.isValid(validationTimeoutSec)) {
+                return true;
+            }
+        } catch (SQLException e) {
+            System.err.println("Connection validation failed: " + e.getMessage());
+        }
+
+        lock.lock();
+        try {
+            validationFailures++;
+        } finally {
+            lock.unlock();
+        }
+        return false;
+    }
+
+    private void release(PooledConnection pc) {
+        boolean healthy = resetState(pc);
+
+        lock.lock();
+        try {
+            borrowed.remove(pc);
+            if (healthy && !closed) {
+                pc.lastUsedAt = System.currentTimeMillis();
+                idle.addFirst(pc);
+                available.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        destroy(pc);
+    }
+
+    private boolean resetState(PooledConnection pc) {
+        try {
+            if (pc.raw.isClosed()) {
+                return false;
+            }
+            if (pc.dirty) {
+                if (!pc.raw.getAutoCommit()) {
+                    pc.raw.rollback();
+                    pc.raw.setAutoCommit(true);
+                }
+                pc.raw.setTransactionIsolation(pc.defaultIsolation);
+                pc.raw.setReadOnly(false);
+                pc.dirty = false;
+            }
+            pc.raw.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Discarding connection that could not be reset: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void destroy(PooledConnection pc) {
+        closeQuietly(pc.raw);
+        lock.lock();
+        try {
+            totalConnections--;
+            destroyedCount++;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void housekeep() {
+        List<PooledConnection> evicted = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        lock.lock();
+        try {
+            if (closed) return;
+
+            if (idleTimeoutMs > 0) {
+                // Самые давно простаивающие соединения находятся в хвосте очереди
+                Iterator<PooledConnection> it = idle.descendingIterator();
+                while (it.hasNext() && totalConnections - evicted.size() > minSize) {
+                    PooledConnection pc = it.next();
+                    if (now - pc.lastUsedAt < idleTimeoutMs) break;
+                    it.remove();
+                    evicted.add(pc);
+                }
+            }
+
+            if (leakThresholdMs > 0) {
+                for (PooledConnection pc : borrowed) {
+                    if (!pc.leakReported && now - pc.borrowedAt > leakThresholdMs) {
+                        pc.leakReported = true;
+                        leakCount++;
+                        System.err.println("Possible connection leak: connection held for " +
+                                (now - pc.borrowedAt) + " ms");
+                        if (pc.borrowSite != null) {
+                            pc.borrowSite.printStackTrace();
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        evicted.forEach(this::destroy);
+    }
+
+    public PoolStats getStats() {
+        lock.lock();
+        try {
+            PoolStats stats = new PoolStats();
+            stats.total = totalConnections;
+            stats.active = borrowed.size();
+            stats.idle = idle.size();
+            stats.waiting = waitingThreads;
+            stats.maxSize = maxSize;
+            stats.created = createdCount;
+            stats.destroyed = destroyedCount;
+            stats.borrowed = borrowCount;
+            stats.timeouts = timeoutCount;
+            stats.validationFailures = validationFailures;
+            stats.leaks = leakCount;
+            stats.averageWaitMs = borrowCount == 0 ? 0 : totalWaitNanos / 1_000_000.0 / borrowCount;
+            stats.schemaSwitches = schemaSwitches;
+            stats.affinityHits = affinityHits;
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        housekeeper.shutdownNow();
+        toClose.forEach(this::destroy);
+        System.out.println("Connection pool closed: " + getStats());
+    }
+
+    private Connection openPhysicalConnection() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, connectionProperties);
+        lock.lock();
+        try {
+            createdCount++;
+        } finally {
+            lock.unlock();
+        }
+        return connection;
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing connection: " + e.getMessage());
+        }
+    }
+
+    private static class PooledConnection {
+        private final Connection raw;
+        private final int defaultIsolation;
+        private volatile long lastUsedAt;
+        private volatile long borrowedAt;
+        private volatile Throwable borrowSite;
+        private volatile boolean leakReported;
+        private volatile boolean dirty;
+        // search_path, установленный на этом соединении; null - неизвестен
+        private volatile String boundSchema;
+
+        PooledConnection(Connection raw) throws SQLException {
+            this.raw = raw;
+            this.defaultIsolation = raw.getTransactionIsolation();
+            this.lastUsedAt = System.currentTimeMillis();
+        }
+    }
+
+    // Прокси выдается на каждое заимствование: close() возвращает соединение в пул, а повторное использование закрытого прокси невозможно
+    private class LeaseHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean returned;
+
+        LeaseHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || pooled.raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pooled.raw;
+                case "setAutoCommit":
+                case "setTransactionIsolation":
+                case "setReadOnly":
+                    pooled.dirty = true;
+                    break;
+                default:
+                    break;
+            }
+
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+
+            try {
+                return method.invoke(pooled.raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    @Getter
+    public static class PoolStats {
+        private int total;
+        private int active;
+        private int idle;
+        private int waiting;
+        private int maxSize;
+        private long created;
+        private long destroyed;
+        private long borrowed;
+        private long timeouts;
+        private long validationFailures;
+        private long leaks;
+        private double averageWaitMs;
+        private long schemaSwitches;
+        private long affinityHits;
+
+        @Override
+        public String toString() {
+            return String.format("total=%d/%d, active=%d, idle=%d, waiting=%d, created=%d, destroyed=%d, " +
+                            "borrowed=%d, timeouts=%d, validationFailures=%d, leaks=%d, avgWait=%.2f ms, " +
+                            "schemaSwitches=%d, affinityHits=%d",
+                    total, maxSize, active, idle, waiting, created, destroyed,
+                    borrowed, timeouts, validationFailures, leaks, averageWaitMs,
+                    schemaSwitches, affinityHits);
+        }
+    }
+}
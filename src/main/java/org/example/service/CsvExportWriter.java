@@ -0,0 +1,188 @@
+package org.example.service;
+
+import org.example.entity.ResultTable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// CSV по RFC 4180 без промежуточных объектов на значение: текст кодируется в UTF-8 прямо в собственный
+// буфер, целые числа раскладываются на цифры там же. NULL - пустое поле, пустая строка - "".
+// Строка создается только для double с дробной частью (Double.toString)
+class CsvExportWriter implements ExportWriter {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+    // Целые double до 2^53 представимы точно - печатаются как long, без ".0"
+    private static final double MAX_EXACT_DOUBLE = 9007199254740992.0;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+
+    CsvExportWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    // BOM нужен Excel, чтобы открыть файл как UTF-8; импорт его пропускает
+    @Override
+    public void begin(List<String> columns, List<ResultTable.ColumnKind> kinds) throws IOException {
+        writeBytes(BOM);
+        for (int i = 0; i < columns.size(); i++) {
+            writeText(i, columns.get(i));
+        }
+        endRow();
+    }
+
+    @Override
+    public void writeNull(int column) throws IOException {
+        separator(column);
+    }
+
+    @Override
+    public void writeLong(int column, long value) throws IOException {
+        separator(column);
+        writeDigits(value);
+    }
+
+    @Override
+    public void writeDouble(int column, double value) throws IOException {
+        separator(column);
+        if (value == Math.rint(value) && Math.abs(value) < MAX_EXACT_DOUBLE) {
+            writeDigits((long) value);
+        } else {
+            writeAscii(Double.toString(value));
+        }
+    }
+
+    @Override
+    public void writeBoolean(int column, boolean value) throws IOException {
+        separator(column);
+        writeBytes(value ? TRUE : FALSE);
+    }
+
+    @Override
+    public void writeNumber(int column, String value) throws IOException {
+        separator(column);
+        writeAscii(value);
+    }
+
+    @Override
+    public void writeText(int column, CharSequence value) throws IOException {
+        separator(column);
+        int length = value.length();
+        boolean quoted = length == 0;
+        for (int i = 0; i < length && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+
+        if (quoted) {
+            ensure(1);
+            buffer[position++] = '"';
+        }
+        for (int i = 0; i < length; i++) {
+            // Худший случай на символ - 4 байта суррогатной пары или удвоенная кавычка
+            if (position > BUFFER_SIZE - 4) {
+                flushBuffer();
+            }
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"') {
+                    buffer[position++] = '"';
+                }
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[position++] = '?';
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        if (quoted) {
+            ensure(1);
+            buffer[position++] = '"';
+        }
+    }
+
+    @Override
+    public void endRow() throws IOException {
+        ensure(2);
+        buffer[position++] = '\r';
+        buffer[position++] = '\n';
+    }
+
+    @Override
+    public void finish() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    private void separator(int column) throws IOException {
+        if (column > 0) {
+            ensure(1);
+            buffer[position++] = ',';
+        }
+    }
+
+    private void writeDigits(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeBytes(MIN_LONG);
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position = end;
+    }
+
+    private void writeAscii(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            if (position == BUFFER_SIZE) {
+                flushBuffer();
+            }
+            buffer[position++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (position + bytes > BUFFER_SIZE) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+}
@@ -1,20 +1,27 @@
 package org.example.service;
 
 import lombok.Getter;
+import org.example.entity.ResultTable;
+import org.example.entity.SchemaCatalog;
 import org.example.util.EnvConfig;
 
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 public class DatabaseService {
     private String url;
     private String user;
     private String password;
     @Getter
-    private String currentSchema;
+    private volatile String currentSchema;
+    private ConnectionPool connectionPool;
+    @Getter
+    private final MetadataCache metadataCache = new MetadataCache();
+    private final CatalogLoader catalogLoader = new CatalogLoader();
+    private final List<Consumer<String>> tableChangeListeners = new CopyOnWriteArrayList<>();
 
     public DatabaseService() {
         try {
@@ -24,8 +31,8 @@ public class DatabaseService {
 
             if (url == null) throw new RuntimeException("JDBC_URL not configured");
 
-            try (Connection testConn = createNewConnection()) {
-            }
+            this.connectionPool = new ConnectionPool(url, user, password);
+            connectionPool.start();
 
             String envSchema = EnvConfig.get("DB_SCHEMA", "public");
             this.currentSchema = envSchema;
@@ -35,18 +42,34 @@ public class DatabaseService {
         }
     }
 
+    // search_path выполняется только если соединение еще не привязано к текущей схеме
     public Connection getConnection() throws SQLException {
-        Connection conn = createNewConnection();
-        if (currentSchema != null) {
-            try (Statement st = conn.createStatement()) {
-                st.execute("SET search_path TO " + currentSchema);
-            }
+        return getConnection(currentSchema);
+    }
+
+    // Долгие операции (бэкап, восстановление, экспорт, импорт) запоминают схему в начале и берут соединения
+    // только для нее: переключение схемы в интерфейсе посреди операции их не затрагивает
+    public Connection getConnection(String schema) throws SQLException {
+        return connectionPool.getConnection(schema);
+    }
+
+    public void invalidateSessionState(Connection connection) {
+        connectionPool.invalidateSessionState(connection);
+    }
+
+    // Слушатели изменения данных таблиц (кэши результатов); null вместо имени - изменилось неизвестно что
+    public void addTableChangeListener(Consumer<String> listener) {
+        tableChangeListeners.add(listener);
+    }
+
+    public void fireTableChanged(String tableName) {
+        for (Consumer<String> listener : tableChangeListeners) {
+            listener.accept(tableName);
         }
-        return conn;
     }
 
-    private Connection createNewConnection() throws SQLException {
-        return DriverManager.getConnection(url, user, password);
+    public ConnectionPool.PoolStats getPoolStats() {
+        return connectionPool.getStats();
     }
 
     public String getDatabaseName() {
@@ -76,23 +99,33 @@ public class DatabaseService {
         if (!schema.matches("^[a-zA-Z_][a-zA-Z0-9_]*$")) {
             throw new IllegalArgumentException("Invalid schema name: " + schema);
         }
+        if (!schema.equals(currentSchema)) {
+            // При возврате в схему метаданные перечитываются: структура могла измениться извне
+            metadataCache.invalidateSchema(schema);
+        }
         this.currentSchema = schema;
     }
 
-    public List<String> getTablesInCurrentSchema() throws SQLException {
-        List<String> tables = new ArrayList<>();
-        String sql = "SELECT table_name FROM information_schema.tables WHERE table_schema = ? AND table_type='BASE TABLE' ORDER BY table_name";
-        try (Connection conn = getConnection();
-             PreparedStatement st = conn.prepareStatement(sql)) {
-            st.setString(1, currentSchema == null ? "public" : currentSchema);
-            try (ResultSet rs = st.executeQuery()) {
-                while (rs.next()) tables.add(rs.getString(1));
+    public SchemaCatalog getCatalog() throws SQLException {
+        return getCatalog(currentSchema == null ? "public" : currentSchema);
+    }
+
+    public SchemaCatalog getCatalog(String schema) throws SQLException {
+        SchemaCatalog catalog = metadataCache.get(schema);
+        if (catalog == null) {
+            try (Connection conn = getConnection(schema)) {
+                catalog = catalogLoader.load(conn, schema);
             }
+            metadataCache.put(catalog);
         }
-        return tables;
+        return catalog;
     }
 
-    public QueryResult fetchPreview(String tableName, int limit) throws SQLException {
+    public List<String> getTablesInCurrentSchema() throws SQLException {
+        return new ArrayList<>(getCatalog().getTableNames());
+    }
+
+    public ResultTable fetchPreview(String tableName, int limit) throws SQLException {
         if (tableName == null || tableName.isBlank()) {
             throw new IllegalArgumentException("Table name is required");
         }
@@ -106,43 +139,118 @@ public class DatabaseService {
         try (Connection conn = getConnection();
              Statement st = conn.createStatement();
              ResultSet rs = st.executeQuery(sql)) {
+            return readResult(rs);
+        }
+    }
+
+    // Keyset-пагинация: строки строго после (forward) или строго до (!forward) граничного ключа,
+    // упорядоченные по первичному ключу. Для !forward строки возвращаются уже в порядке возрастания ключа.
+    public ResultTable fetchPage(String tableName, List<String> keyColumns, Object[] boundaryKey,
+                                 boolean forward, int limit) throws SQLException {
+        if (!isSafeIdentifier(tableName)) {
+            throw new IllegalArgumentException("Invalid table name");
+        }
+        if (keyColumns == null || keyColumns.isEmpty()) {
+            throw new IllegalArgumentException("Key columns are required for keyset pagination");
+        }
+
+        List<String> quotedKeys = new ArrayList<>(keyColumns.size());
+        for (String keyColumn : keyColumns) {
+            quotedKeys.add(quoteIdentifier(keyColumn));
+        }
+        String keyTuple = quotedKeys.size() == 1 ? quotedKeys.get(0) : "(" + String.join(", ", quotedKeys) + ")";
+        String direction = forward ? "" : " DESC";
 
-            ResultSetMetaData meta = rs.getMetaData();
-            int colCount = meta.getColumnCount();
-            List<String> columns = new ArrayList<>(colCount);
-            for (int i = 1; i <= colCount; i++) {
-                columns.add(meta.getColumnLabel(i));
+        StringBuilder sql = new StringBuilder("SELECT * FROM ").append(tableName);
+        if (boundaryKey != null) {
+            String placeholders = "?" + ", ?".repeat(keyColumns.size() - 1);
+            sql.append(" WHERE ").append(keyTuple).append(forward ? " > " : " < ")
+                    .append(keyColumns.size() == 1 ? placeholders : "(" + placeholders + ")");
+        }
+        sql.append(" ORDER BY ").append(String.join(direction + ", ", quotedKeys)).append(direction);
+        sql.append(" LIMIT ?");
+
+        try (Connection conn = getConnection();
+             PreparedStatement st = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            if (boundaryKey != null) {
+                for (Object value : boundaryKey) {
+                    st.setObject(index++, value);
+                }
             }
+            st.setInt(index, limit);
 
-            List<Map<String, Object>> rows = new ArrayList<>();
-            while (rs.next()) {
-                Map<String, Object> row = new HashMap<>();
-                for (int i = 1; i <= colCount; i++) {
-                    row.put(meta.getColumnLabel(i), rs.getObject(i));
+            try (ResultSet rs = st.executeQuery()) {
+                ResultTable result = readResult(rs);
+                if (!forward) {
+                    result.reverseRows();
                 }
-                rows.add(row);
+                return result;
+            }
+        }
+    }
+
+    // Переход к произвольной позиции (прыжок полосой прокрутки), когда соседний блок с граничным ключом неизвестен.
+    // Для таблиц без первичного ключа orderColumns пуст и порядок строк не гарантирован.
+    public ResultTable fetchPageByOffset(String tableName, List<String> orderColumns, long offset, int limit) throws SQLException {
+        if (!isSafeIdentifier(tableName)) {
+            throw new IllegalArgumentException("Invalid table name");
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT * FROM ").append(tableName);
+        if (orderColumns != null && !orderColumns.isEmpty()) {
+            List<String> quoted = new ArrayList<>(orderColumns.size());
+            for (String column : orderColumns) {
+                quoted.add(quoteIdentifier(column));
             }
+            sql.append(" ORDER BY ").append(String.join(", ", quoted));
+        }
+        sql.append(" LIMIT ? OFFSET ?");
 
-            return new QueryResult(columns, rows);
+        try (Connection conn = getConnection();
+             PreparedStatement st = conn.prepareStatement(sql.toString())) {
+            st.setInt(1, limit);
+            st.setLong(2, offset);
+            try (ResultSet rs = st.executeQuery()) {
+                return readResult(rs);
+            }
         }
     }
 
-    private boolean isSafeIdentifier(String ident) {
-        return ident != null && ident.matches("[A-Za-z0-9_]+");
+    // Оценка числа строк из статистики планировщика (pg_class.reltuples) без сканирования таблицы;
+    // -1, если таблица еще ни разу не анализировалась
+    public long estimateRows(String tableName) throws SQLException {
+        if (!isSafeIdentifier(tableName)) {
+            throw new IllegalArgumentException("Invalid table name");
+        }
+        try (Connection conn = getConnection();
+             PreparedStatement st = conn.prepareStatement("SELECT reltuples FROM pg_class WHERE oid = to_regclass(?)")) {
+            st.setString(1, quoteIdentifier(tableName));
+            try (ResultSet rs = st.executeQuery()) {
+                return rs.next() ? Math.max(-1, (long) rs.getDouble(1)) : -1;
+            }
+        }
     }
 
-    public void close() {
+    private ResultTable readResult(ResultSet rs) throws SQLException {
+        ResultTable result = ResultTable.forResultSet(rs.getMetaData());
+        while (rs.next()) {
+            result.appendRow(rs);
+        }
+        return result;
     }
 
-    @Getter
-    public static class QueryResult {
-        private final List<String> columns;
-        private final List<Map<String, Object>> rows;
+    public static String quoteIdentifier(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
 
-        public QueryResult(List<String> columns, List<Map<String, Object>> rows) {
-            this.columns = columns;
-            this.rows = rows;
-        }
+    private boolean isSafeIdentifier(String ident) {
+        return ident != null && ident.matches("[A-Za-z0-9_]+");
+    }
 
+    public void close() {
+        if (connectionPool != null) {
+            connectionPool.close();
+        }
     }
 }
@@ -0,0 +1,41 @@
+package org.example.service;
+
+import lombok.Getter;
+
+// В каком формате выгружаются таблицы и результаты запросов
+@Getter
+public enum ExportFormat {
+    // Книга Excel: стили, ширина столбцов, листы-продолжения; самый медленный и объемный
+    XLSX("Excel (.xlsx)", ".xlsx"),
+    // RFC 4180, UTF-8 с BOM - открывается в Excel и загружается обратно импортом
+    CSV("CSV (.csv)", ".csv"),
+    // Объект JSON на строку
+    JSON_LINES("JSON Lines (.jsonl)", ".jsonl"),
+    // Двоичный колоночный формат: группы строк, каждый столбец сжат отдельно (см. ColumnarExportWriter)
+    COLUMNAR("Колоночный двоичный (.tcol)", ".tcol");
+
+    private final String displayName;
+    private final String extension;
+
+    ExportFormat(String displayName, String extension) {
+        this.displayName = displayName;
+        this.extension = extension;
+    }
+
+    public static ExportFormat fromConfig(String value, ExportFormat fallback) {
+        if (value == null || value.isBlank()) {
+            return fallback;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown export format: " + value + ", using " + fallback);
+            return fallback;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
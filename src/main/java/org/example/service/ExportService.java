@@ -2,8 +2,13 @@ package org.example.service;
 
 import lombok.Getter;
 import lombok.Setter;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.example.entity.ResultTable;
+import org.example.util.EnvConfig;
 
 import java.io.*;
 import java.nio.file.Files;
@@ -11,14 +16,48 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.*;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 public class ExportService {
     private final DatabaseService databaseService;
     private static final String EXPORT_DIR = "exports";
     private static final String DATE_FORMAT = "yyyyMMdd_HHmmss";
+    // Строки таблицы читаются курсором порциями по FETCH_SIZE, а не всем результатом сразу
+    private static final int FETCH_SIZE = Math.max(1, EnvConfig.getInt("EXPORT_FETCH_SIZE", 1000));
+    // Потоковая запись: в памяти только последние ROW_WINDOW строк листа, остальные уже во временном файле
+    private static final int ROW_WINDOW = Math.max(1, EnvConfig.getInt("EXPORT_ROW_WINDOW", 500));
+    private static final boolean COMPRESS_TEMP_FILES = EnvConfig.getBoolean("EXPORT_COMPRESS_TEMP_FILES", true);
+    public static final boolean DEFAULT_STREAMING = EnvConfig.getBoolean("EXPORT_STREAMING", true);
+    public static final int DEFAULT_PARALLEL_JOBS = Math.max(1, EnvConfig.getInt("EXPORT_PARALLEL_JOBS", 4));
+    public static final boolean DEFAULT_BUNDLE = EnvConfig.getBoolean("EXPORT_BUNDLE", false);
+    public static final ColumnWidthMode DEFAULT_COLUMN_WIDTHS =
+            ColumnWidthMode.fromConfig(EnvConfig.get("EXPORT_COLUMN_WIDTHS", null), ColumnWidthMode.ESTIMATE);
+    // Лист XLSX вмещает 1 048 576 строк вместе с заголовком, дальше строки идут на лист-продолжение
+    private static final int MAX_SHEET_ROWS = (int) Math.max(2, Math.min(SpreadsheetVersion.EXCEL2007.getMaxRows(),
+            EnvConfig.getLong("EXPORT_MAX_SHEET_ROWS", SpreadsheetVersion.EXCEL2007.getMaxRows())));
+    // Строк данных в одном файле экспорта таблицы или запроса; 0 - без деления на файлы
+    public static final long DEFAULT_MAX_FILE_ROWS = Math.max(0, EnvConfig.getLong("EXPORT_MAX_FILE_ROWS", 0));
+    private static final int MAX_SHEET_NAME = 31;
+    public static final ExportFormat DEFAULT_FORMAT =
+            ExportFormat.fromConfig(EnvConfig.get("EXPORT_FORMAT", null), ExportFormat.XLSX);
+    private static final String BUNDLE_EXTENSION = ".zip";
 
     public ExportService(DatabaseService databaseService) {
         this.databaseService = databaseService;
@@ -38,15 +77,38 @@ public class ExportService {
     }
 
     public ExportResult exportCurrentSchema() {
+        return exportCurrentSchema(ProgressListener.NONE);
+    }
+
+    public ExportResult exportCurrentSchema(ProgressListener progress) {
+        return exportCurrentSchema(DEFAULT_STREAMING, progress);
+    }
+
+    public ExportResult exportCurrentSchema(boolean streaming, ProgressListener progress) {
+        return exportCurrentSchema(DEFAULT_FORMAT, streaming, DEFAULT_PARALLEL_JOBS, DEFAULT_BUNDLE, DEFAULT_COLUMN_WIDTHS,
+                progress);
+    }
+
+    // streaming - SXSSF с ограниченным окном строк, память не зависит от размера таблиц;
+    // иначе вся книга строится в памяти (XSSF). Все таблицы читаются из одного снимка базы, при jobs > 1 -
+    // параллельно на отдельных соединениях. bundle - каждая таблица в своем файле внутри архива .zip
+    // (для форматов, кроме XLSX, - всегда); widths - как подбирать ширину столбцов XLSX
+    public ExportResult exportCurrentSchema(ExportFormat format, boolean streaming, int jobs, boolean bundle,
+                                            ColumnWidthMode widths, ProgressListener progress) {
+        if (format != ExportFormat.XLSX) {
+            bundle = true;
+        }
         ExportResult result = new ExportResult();
+        long started = System.currentTimeMillis();
+        Path filePath = null;
 
         try {
             String schema = databaseService.getCurrentSchema();
             String timestamp = new SimpleDateFormat(DATE_FORMAT).format(new Date());
-            String fileName = String.format("schema_%s_%s.xlsx", schema, timestamp);
-            Path filePath = Paths.get(EXPORT_DIR, fileName);
+            String fileName = String.format("schema_%s_%s%s", schema, timestamp, bundle ? BUNDLE_EXTENSION : ".xlsx");
+            filePath = Paths.get(EXPORT_DIR, fileName);
 
-            List<String> tables = databaseService.getTablesInCurrentSchema();
+            List<String> tables = databaseService.getCatalog(schema).getTableNames();
 
             if (tables.isEmpty()) {
                 result.setSuccess(false);
@@ -54,28 +116,45 @@ public class ExportService {
                 return result;
             }
 
-            try (Workbook workbook = new XSSFWorkbook()) {
-                createSchemaInfoSheet(workbook, schema, tables);
-
-                for (String table : tables) {
-                    exportTableToSheet(workbook, table);
-                }
+            // Листы SXSSF пишутся независимо друг от друга, а общая таблица строк XSSF - нет:
+            // в одну книгу в памяти пишет только один поток
+            int workers = Math.min(Math.min(jobs, tables.size()), Math.max(1, databaseService.getPoolStats().getMaxSize() - 1));
+            if (!streaming && !bundle) {
+                workers = 1;
+            }
 
-                try (FileOutputStream outputStream = new FileOutputStream(filePath.toFile())) {
-                    workbook.write(outputStream);
-                }
+            try (Connection conn = databaseService.getConnection(schema)) {
+                BackupService.beginSnapshotTransaction(conn);
+                List<TableStats> stats = bundle
+                        ? exportBundle(conn, schema, tables, format, streaming, workers, widths, filePath, progress)
+                        : exportWorkbook(conn, schema, tables, streaming, workers, widths, filePath, progress);
+                conn.commit();
 
+                long rows = stats.stream().mapToLong(TableStats::getRows).sum();
                 result.setSuccess(true);
-                result.setMessage("Schema exported successfully: " + fileName);
+                result.setMessage(String.format("Schema exported successfully: %s (%d rows in %.1f s, %d %s)",
+                        fileName, rows, (System.currentTimeMillis() - started) / 1000.0, workers,
+                        workers == 1 ? "thread" : "threads"));
                 result.setExportFile(filePath.toFile());
                 result.setTablesCount(tables.size());
-
-            } catch (IOException e) {
-                result.setSuccess(false);
-                result.setMessage("Error writing export file: " + e.getMessage());
+                result.setTableStats(stats);
+                for (TableStats table : stats) {
+                    System.out.printf("Exported %s: %d rows in %d ms%s%n", table.getTableName(), table.getRows(),
+                            table.getElapsedMillis(), table.getParts().size() > 1
+                                    ? " on " + table.getParts().size() + " sheets" : "");
+                }
             }
 
+        } catch (CancellationException e) {
+            deletePartialExport(filePath);
+            result.setSuccess(false);
+            result.setMessage("Export cancelled");
+        } catch (IOException e) {
+            deletePartialExport(filePath);
+            result.setSuccess(false);
+            result.setMessage("Error writing export file: " + e.getMessage());
         } catch (SQLException e) {
+            deletePartialExport(filePath);
             result.setSuccess(false);
             result.setMessage("Database error during export: " + e.getMessage());
         }
@@ -83,26 +162,285 @@ public class ExportService {
         return result;
     }
 
+    private List<TableStats> exportWorkbook(Connection conn, String schema, List<String> tables, boolean streaming,
+                                            int workers, ColumnWidthMode widths, Path filePath, ProgressListener progress)
+            throws SQLException, IOException {
+        try (Workbook workbook = createWorkbook(streaming)) {
+            ExportStyles styles = new ExportStyles(workbook);
+            createSchemaInfoSheet(workbook, schema, tables);
+            // Листы создаются заранее в текущем потоке - их порядок не зависит от порядка завершения
+            Map<String, SheetParts> sheets = new HashMap<>();
+            for (String tableName : tables) {
+                sheets.put(tableName, new SheetParts(workbook, styles,
+                        createSheet(workbook, sheetName(tableName, 1), widths), tableName, widths));
+            }
+
+            List<TableStats> stats = runTableExports(conn, schema, tables, workers, progress,
+                    (workerConn, tableName) -> exportTableToSheet(workerConn, sheets.get(tableName), tableName, progress));
+
+            // Продолжения создавались в конце книги по ходу экспорта - ставим их сразу за листом своей таблицы
+            List<ExportPart> parts = new ArrayList<>();
+            for (TableStats table : stats) {
+                for (ExportPart part : table.getParts()) {
+                    part.fileName = filePath.getFileName().toString();
+                    workbook.setSheetOrder(part.getSheetName(), parts.size() + 1);
+                    parts.add(part);
+                }
+            }
+            if (parts.size() > tables.size()) {
+                createPartsSheet(workbook, styles, parts, 1);
+            }
+
+            progress.progress(tables.size(), tables.size(), "Запись файла " + filePath.getFileName());
+            writeWorkbook(workbook, filePath);
+            return stats;
+        }
+    }
+
+    // Каждая таблица - отдельный файл во временном каталоге; готовые файлы дописываются в архив по мере завершения
+    private List<TableStats> exportBundle(Connection conn, String schema, List<String> tables, ExportFormat format,
+                                          boolean streaming, int workers, ColumnWidthMode widths, Path filePath,
+                                          ProgressListener progress) throws SQLException, IOException {
+        Path tempDir = filePath.toAbsolutePath().getParent();
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(filePath)))) {
+            // Книги .xlsx и файлы .tcol уже сжаты, повторное сжатие только тратит время. Текстовые форматы
+            // сжимаются при копировании в архив - под общей блокировкой, но на самой быстрой степени
+            boolean compressed = format == ExportFormat.XLSX || format == ExportFormat.COLUMNAR;
+            zip.setLevel(compressed ? Deflater.NO_COMPRESSION : Deflater.BEST_SPEED);
+            if (format == ExportFormat.XLSX) {
+                try (Workbook info = createWorkbook(streaming)) {
+                    createSchemaInfoSheet(info, schema, tables);
+                    zip.putNextEntry(new ZipEntry("schema_info.xlsx"));
+                    info.write(new NonClosingOutputStream(zip));
+                    zip.closeEntry();
+                }
+            }
+
+            return runTableExports(conn, schema, tables, workers, progress, (workerConn, tableName) -> {
+                Path temp = Files.createTempFile(tempDir, ".export-", ".tmp");
+                String entryName = tableName + format.getExtension();
+                try {
+                    TableStats stats;
+                    if (format == ExportFormat.XLSX) {
+                        try (SheetParts parts = new SheetParts(tableName, streaming, widths, 0, temp, entryName)) {
+                            stats = exportTableToSheet(workerConn, parts, tableName, progress);
+                            parts.finish();
+                        }
+                    } else {
+                        stats = exportTableToFile(workerConn, format, tableName, temp, progress);
+                    }
+                    synchronized (zip) {
+                        zip.putNextEntry(new ZipEntry(entryName));
+                        Files.copy(temp, zip);
+                        zip.closeEntry();
+                    }
+                    return stats;
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            });
+        }
+    }
+
+    private interface TableExport {
+        TableStats export(Connection conn, String tableName) throws SQLException, IOException;
+    }
+
+    // Один поток - таблицы читаются на соединении координатора. Иначе координатор экспортирует снимок
+    // своей транзакции (pg_export_snapshot), а каждый поток открывает соединение с SET TRANSACTION SNAPSHOT.
+    // Результат - в исходном порядке таблиц
+    private List<TableStats> runTableExports(Connection conn, String schema, List<String> tables, int workers,
+                                             ProgressListener progress, TableExport export)
+            throws SQLException, IOException {
+        Map<String, TableStats> done = new ConcurrentHashMap<>();
+        if (workers <= 1) {
+            for (int i = 0; i < tables.size(); i++) {
+                if (progress.isCancelled()) {
+                    throw new CancellationException();
+                }
+                progress.progress(i, tables.size(), "Экспорт таблицы " + tables.get(i));
+                done.put(tables.get(i), export.export(conn, tables.get(i)));
+            }
+            return orderedStats(tables, done);
+        }
+
+        String snapshot = BackupService.exportSnapshot(conn);
+        BlockingQueue<String> pending = new LinkedBlockingQueue<>(
+                BackupService.orderBySize(conn, schema, tables));
+        AtomicReference<Exception> error = new AtomicReference<>();
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "export-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int w = 0; w < workers; w++) {
+                executor.execute(() -> {
+                    try (Connection workerConn = databaseService.getConnection(schema)) {
+                        BackupService.joinSnapshot(workerConn, snapshot);
+                        String tableName;
+                        while (error.get() == null && (tableName = pending.poll()) != null) {
+                            done.put(tableName, export.export(workerConn, tableName));
+                        }
+                        workerConn.commit();
+                    } catch (Exception e) {
+                        error.compareAndSet(null, e);
+                    }
+                });
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(200, TimeUnit.MILLISECONDS)) {
+                if (progress.isCancelled()) {
+                    error.compareAndSet(null, new CancellationException());
+                }
+                progress.progress(done.size(), tables.size(), "Экспорт: готово таблиц " + done.size() + " из " +
+                        tables.size() + " (" + workers + " потоков)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error.compareAndSet(null, new CancellationException());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Exception failure = error.get();
+        if (failure instanceof CancellationException) throw (CancellationException) failure;
+        if (failure instanceof SQLException) throw (SQLException) failure;
+        if (failure instanceof IOException) throw (IOException) failure;
+        if (failure != null) {
+            throw new SQLException("Export worker failed: " + failure.getMessage(), failure);
+        }
+        return orderedStats(tables, done);
+    }
+
+    private static List<TableStats> orderedStats(List<String> tables, Map<String, TableStats> done) {
+        List<TableStats> stats = new ArrayList<>();
+        for (String tableName : tables) {
+            stats.add(done.get(tableName));
+        }
+        return stats;
+    }
+
+    private static void deletePartialExport(Path filePath) {
+        if (filePath == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(filePath);
+        } catch (IOException e) {
+            System.err.println("Failed to delete partial export " + filePath + ": " + e.getMessage());
+        }
+    }
+
     public ExportResult exportTable(String tableName) {
+        return exportTable(tableName, ProgressListener.NONE);
+    }
+
+    public ExportResult exportTable(String tableName, ProgressListener progress) {
+        return exportTable(tableName, DEFAULT_FORMAT, progress);
+    }
+
+    public ExportResult exportTable(String tableName, ExportFormat format, ProgressListener progress) {
+        if (format == ExportFormat.XLSX) {
+            return exportTable(tableName, DEFAULT_STREAMING, DEFAULT_COLUMN_WIDTHS, DEFAULT_MAX_FILE_ROWS, progress);
+        }
         ExportResult result = new ExportResult();
+        Path filePath = null;
 
         try {
-            String timestamp = new SimpleDateFormat(DATE_FORMAT).format(new Date());
-            String fileName = String.format("table_%s_%s.xlsx", tableName, timestamp);
-            Path filePath = Paths.get(EXPORT_DIR, fileName);
+            String schema = databaseService.getCurrentSchema();
+            if (!databaseService.getCatalog(schema).containsTable(tableName)) {
+                result.setSuccess(false);
+                result.setMessage("Table '" + tableName + "' not found in schema: " + schema);
+                return result;
+            }
 
-            try (Workbook workbook = new XSSFWorkbook()) {
-                exportTableToSheet(workbook, tableName);
+            String timestamp = new SimpleDateFormat(DATE_FORMAT).format(new Date());
+            String fileName = String.format("table_%s_%s%s", tableName, timestamp, format.getExtension());
+            filePath = Paths.get(EXPORT_DIR, fileName);
 
-                try (FileOutputStream outputStream = new FileOutputStream(filePath.toFile())) {
-                    workbook.write(outputStream);
+            try (Connection conn = databaseService.getConnection(schema)) {
+                progress.progress(0, -1, "Экспорт таблицы " + tableName);
+                TableStats stats;
+                conn.setAutoCommit(false);
+                try {
+                    stats = exportTableToFile(conn, format, tableName, filePath, progress);
+                    conn.commit();
+                } finally {
+                    endTransaction(conn);
                 }
 
                 result.setSuccess(true);
-                result.setMessage("Table exported successfully: " + fileName);
+                result.setMessage("Table exported successfully: " + fileName
+                        + throughput(stats.getRows(), Files.size(filePath), stats.getElapsedMillis()));
                 result.setExportFile(filePath.toFile());
                 result.setTablesCount(1);
+                result.setTableStats(List.of(stats));
+            }
+
+        } catch (CancellationException e) {
+            deletePartialExport(filePath);
+            result.setSuccess(false);
+            result.setMessage("Export cancelled");
+        } catch (IOException e) {
+            deletePartialExport(filePath);
+            result.setSuccess(false);
+            result.setMessage("Error writing export file: " + e.getMessage());
+        } catch (SQLException e) {
+            deletePartialExport(filePath);
+            result.setSuccess(false);
+            result.setMessage("Database error during export: " + e.getMessage());
+        }
+
+        return result;
+    }
+
+    // maxFileRows > 0 - таблица делится на файлы _part1, _part2... не больше чем по столько строк
+    // и оглавление _manifest.xlsx с диапазонами строк каждой части
+    public ExportResult exportTable(String tableName, boolean streaming, ColumnWidthMode widths, long maxFileRows,
+                                    ProgressListener progress) {
+        ExportResult result = new ExportResult();
+
+        try {
+            String schema = databaseService.getCurrentSchema();
+            if (!databaseService.getCatalog(schema).containsTable(tableName)) {
+                result.setSuccess(false);
+                result.setMessage("Table '" + tableName + "' not found in schema: " + schema);
+                return result;
+            }
+
+            String timestamp = new SimpleDateFormat(DATE_FORMAT).format(new Date());
+            String fileName = String.format("table_%s_%s.xlsx", tableName, timestamp);
+            Path filePath = Paths.get(EXPORT_DIR, fileName);
+
+            try (Connection conn = databaseService.getConnection(schema);
+                 SheetParts parts = new SheetParts(tableName, streaming, widths, maxFileRows, filePath, fileName)) {
+                try {
+                    progress.progress(0, -1, "Экспорт таблицы " + tableName);
+                    TableStats stats;
+                    conn.setAutoCommit(false);
+                    try {
+                        stats = exportTableToSheet(conn, parts, tableName, progress);
+                        conn.commit();
+                    } finally {
+                        endTransaction(conn);
+                    }
+                    Path exported = parts.finish();
 
+                    result.setSuccess(true);
+                    result.setMessage("Table exported successfully: " + exported.getFileName() + splitSummary(parts));
+                    result.setExportFile(exported.toFile());
+                    result.setTablesCount(1);
+                    result.setTableStats(List.of(stats));
+                } catch (CancellationException | IOException | SQLException e) {
+                    parts.deleteFiles();
+                    throw e;
+                }
+
+            } catch (CancellationException e) {
+                result.setSuccess(false);
+                result.setMessage("Export cancelled");
             } catch (IOException e) {
                 result.setSuccess(false);
                 result.setMessage("Error writing export file: " + e.getMessage());
@@ -116,7 +454,47 @@ public class ExportService {
         return result;
     }
 
-    public ExportResult exportQueryResults(String queryName, List<String> columns, List<Map<String, Object>> data) {
+    public ExportResult exportQueryResults(String queryName, List<String> columns, List<ResultTable> chunks) {
+        return exportQueryResults(queryName, columns, chunks, DEFAULT_FORMAT);
+    }
+
+    public ExportResult exportQueryResults(String queryName, List<String> columns, List<ResultTable> chunks,
+                                           ExportFormat format) {
+        if (format == ExportFormat.XLSX) {
+            return exportQueryResults(queryName, columns, chunks, DEFAULT_STREAMING, DEFAULT_COLUMN_WIDTHS,
+                    DEFAULT_MAX_FILE_ROWS);
+        }
+        ExportResult result = new ExportResult();
+        long started = System.currentTimeMillis();
+
+        String timestamp = new SimpleDateFormat(DATE_FORMAT).format(new Date());
+        String fileName = String.format("query_%s_%s%s",
+                queryName.replaceAll("[^a-zA-Z0-9]", "_"), timestamp, format.getExtension());
+        Path filePath = Paths.get(EXPORT_DIR, fileName);
+
+        try {
+            long rows;
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(filePath))) {
+                rows = writeResultTables(ExportWriter.open(format, out), columns, chunks);
+            }
+
+            result.setSuccess(true);
+            result.setMessage("Query results exported successfully: " + fileName
+                    + throughput(rows, Files.size(filePath), System.currentTimeMillis() - started));
+            result.setExportFile(filePath.toFile());
+            result.setTablesCount(1);
+
+        } catch (Exception e) {
+            deletePartialExport(filePath);
+            result.setSuccess(false);
+            result.setMessage("Error during export: " + e.getMessage());
+        }
+
+        return result;
+    }
+
+    public ExportResult exportQueryResults(String queryName, List<String> columns, List<ResultTable> chunks,
+                                           boolean streaming, ColumnWidthMode widths, long maxFileRows) {
         ExportResult result = new ExportResult();
 
         try {
@@ -125,42 +503,48 @@ public class ExportService {
                     queryName.replaceAll("[^a-zA-Z0-9]", "_"), timestamp);
             Path filePath = Paths.get(EXPORT_DIR, fileName);
 
-            try (Workbook workbook = new XSSFWorkbook()) {
-                Sheet sheet = workbook.createSheet("Query Results");
+            try (SheetParts parts = new SheetParts("Query Results", streaming, widths, maxFileRows, filePath, fileName)) {
+                try {
+                    ColumnWidthEstimator estimator = parts.estimator();
+                    parts.header(columns);
 
-                Row headerRow = sheet.createRow(0);
-                for (int i = 0; i < columns.size(); i++) {
-                    Cell cell = headerRow.createCell(i);
-                    cell.setCellValue(columns.get(i));
-                    cell.setCellStyle(createHeaderStyle(workbook));
-                }
+                    for (ResultTable chunk : chunks) {
+                        for (int r = 0; r < chunk.getRowCount(); r++) {
+                            Row row = parts.nextRow();
+                            ExportStyles styles = parts.styles();
 
-                for (int rowIndex = 0; rowIndex < data.size(); rowIndex++) {
-                    Row row = sheet.createRow(rowIndex + 1);
-                    Map<String, Object> rowData = data.get(rowIndex);
-
-                    for (int colIndex = 0; colIndex < columns.size(); colIndex++) {
-                        String columnName = columns.get(colIndex);
-                        Object value = rowData.get(columnName);
-                        Cell cell = row.createCell(colIndex);
-
-                        if (value != null) {
-                            setCellValue(cell, value);
+                            for (int colIndex = 0; colIndex < columns.size(); colIndex++) {
+                                if (chunk.isNull(r, colIndex)) {
+                                    continue;
+                                }
+                                Cell cell = row.createCell(colIndex);
+                                if (chunk.isNumeric(colIndex)) {
+                                    double value = chunk.getDouble(r, colIndex);
+                                    cell.setCellValue(value);
+                                    estimator.number(colIndex, value);
+                                } else {
+                                    Object value = chunk.getValue(r, colIndex);
+                                    setCellValue(cell, value, styles);
+                                    estimator.value(colIndex, value);
+                                }
+                            }
+                            estimator.rowWritten();
                         }
                     }
-                }
 
-                autoSizeColumns(sheet, columns.size());
+                    parts.applyWidths();
+                    Path exported = parts.finish();
 
-                try (FileOutputStream outputStream = new FileOutputStream(filePath.toFile())) {
-                    workbook.write(outputStream);
+                    result.setSuccess(true);
+                    result.setMessage("Query results exported successfully: " + exported.getFileName()
+                            + splitSummary(parts));
+                    result.setExportFile(exported.toFile());
+                    result.setTablesCount(1);
+                } catch (IOException | RuntimeException e) {
+                    parts.deleteFiles();
+                    throw e;
                 }
 
-                result.setSuccess(true);
-                result.setMessage("Query results exported successfully: " + fileName);
-                result.setExportFile(filePath.toFile());
-                result.setTablesCount(1);
-
             } catch (IOException e) {
                 result.setSuccess(false);
                 result.setMessage("Error writing export file: " + e.getMessage());
@@ -174,8 +558,53 @@ public class ExportService {
         return result;
     }
 
+    // Скорость потоковых форматов - для сравнения с XLSX
+    private static String throughput(long rows, long bytes, long elapsedMillis) {
+        double seconds = Math.max(elapsedMillis, 1) / 1000.0;
+        return String.format(" (%d rows, %.1f MB in %.1f s: %.0f rows/s, %.1f MB/s)", rows, bytes / 1048576.0,
+                seconds, rows / seconds, bytes / 1048576.0 / seconds);
+    }
+
+    // Пусто, если все поместилось на один лист
+    private static String splitSummary(SheetParts parts) {
+        if (parts.getFileCount() > 1) {
+            return String.format(" (%d rows in %d files)", parts.getRows(), parts.getFileCount());
+        }
+        if (parts.getParts().size() > 1) {
+            return String.format(" (%d rows on %d sheets)", parts.getRows(), parts.getParts().size());
+        }
+        return "";
+    }
+
+    private static Workbook createWorkbook(boolean streaming) {
+        if (!streaming) {
+            return new XSSFWorkbook();
+        }
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        workbook.setCompressTempFiles(COMPRESS_TEMP_FILES);
+        return workbook;
+    }
+
+    // Автоширина на потоковом листе работает только по строкам, которые лист отслеживал до сброса на диск;
+    // отслеживание само по себе дорогое, поэтому включается только для AUTO_SIZE
+    private static Sheet createSheet(Workbook workbook, String name, ColumnWidthMode widths) {
+        Sheet sheet = workbook.createSheet(name);
+        if (widths == ColumnWidthMode.AUTO_SIZE && sheet instanceof SXSSFSheet) {
+            ((SXSSFSheet) sheet).trackAllColumnsForAutoSizing();
+        }
+        return sheet;
+    }
+
+    // Временные файлы потоковой книги удаляет ее close() - книги открываются в try-with-resources
+    private static void writeWorkbook(Workbook workbook, Path filePath) throws IOException {
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(filePath.toFile()))) {
+            workbook.write(outputStream);
+        }
+    }
+
     private void createSchemaInfoSheet(Workbook workbook, String schema, List<String> tables) {
-        Sheet sheet = workbook.createSheet("Schema Info");
+        // Лист из нескольких строк - точная автоширина здесь ничего не стоит
+        Sheet sheet = createSheet(workbook, "Schema Info", ColumnWidthMode.AUTO_SIZE);
 
         Row titleRow = sheet.createRow(0);
         titleRow.createCell(0).setCellValue("Database Schema Export");
@@ -204,49 +633,226 @@ public class ExportService {
         autoSizeColumns(sheet, 2);
     }
 
-    private void exportTableToSheet(Workbook workbook, String tableName) throws SQLException {
-        Sheet sheet = workbook.createSheet(tableName);
+    // Соединение уже вне autocommit (иначе драйвер не откроет курсор с fetch size); транзакцию ведет
+    // вызывающий код. Отмена проверяется каждую порцию строк
+    private TableStats exportTableToSheet(Connection conn, SheetParts parts, String tableName, ProgressListener progress)
+            throws SQLException, IOException {
+        long started = System.currentTimeMillis();
+        ColumnWidthEstimator estimator = parts.estimator();
+        try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM " + tableName)) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                int columnCount = metaData.getColumnCount();
 
-        try (Connection conn = databaseService.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT * FROM " + tableName)) {
+                List<String> header = new ArrayList<>();
+                for (int i = 1; i <= columnCount; i++) {
+                    header.add(metaData.getColumnName(i));
+                }
+                parts.header(header);
 
-            ResultSetMetaData metaData = rs.getMetaData();
-            int columnCount = metaData.getColumnCount();
+                long rowCount = 0;
+                while (rs.next()) {
+                    if (++rowCount % FETCH_SIZE == 0 && progress.isCancelled()) {
+                        throw new CancellationException();
+                    }
+                    Row row = parts.nextRow();
+                    ExportStyles styles = parts.styles();
+                    for (int i = 1; i <= columnCount; i++) {
+                        Cell cell = row.createCell(i - 1);
+                        Object value = rs.getObject(i);
+                        setCellValue(cell, value, styles);
+                        estimator.value(i - 1, value);
+                    }
+                    estimator.rowWritten();
+                }
 
-            Row headerRow = sheet.createRow(0);
-            for (int i = 1; i <= columnCount; i++) {
-                Cell cell = headerRow.createCell(i - 1);
-                cell.setCellValue(metaData.getColumnName(i));
-                cell.setCellStyle(createHeaderStyle(workbook));
+                parts.applyWidths();
             }
+        }
+        return new TableStats(tableName, parts.getRows(), System.currentTimeMillis() - started, parts.getParts());
+    }
 
-            int rowIndex = 1;
-            while (rs.next()) {
-                Row row = sheet.createRow(rowIndex++);
-                for (int i = 1; i <= columnCount; i++) {
-                    Cell cell = row.createCell(i - 1);
-                    Object value = rs.getObject(i);
-                    setCellValue(cell, value);
+    private TableStats exportTableToFile(Connection conn, ExportFormat format, String tableName, Path filePath,
+                                         ProgressListener progress) throws SQLException, IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(filePath))) {
+            return exportTableToWriter(conn, ExportWriter.open(format, out), tableName, progress);
+        }
+    }
+
+    // То же чтение курсором, что и для XLSX. Числа и логические значения берутся примитивами,
+    // остальное - текстом сервера (getString): без разбора в объекты и обратного форматирования
+    private TableStats exportTableToWriter(Connection conn, ExportWriter writer, String tableName,
+                                           ProgressListener progress) throws SQLException, IOException {
+        long started = System.currentTimeMillis();
+        long rowCount = 0;
+        try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM " + tableName)) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                ResultTable layout = ResultTable.forResultSet(metaData);
+                int columnCount = layout.getColumnCount();
+                ResultTable.ColumnKind[] kinds = new ResultTable.ColumnKind[columnCount];
+                boolean[] numbers = new boolean[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    kinds[i] = layout.getKind(i);
+                    numbers[i] = isNumberType(metaData.getColumnType(i + 1));
+                }
+                writer.begin(layout.getColumns(), Arrays.asList(kinds));
+
+                while (rs.next()) {
+                    if (++rowCount % FETCH_SIZE == 0 && progress.isCancelled()) {
+                        throw new CancellationException();
+                    }
+                    for (int i = 0; i < columnCount; i++) {
+                        writeColumn(rs, i, kinds[i], numbers[i], writer);
+                    }
+                    writer.endRow();
+                }
+                writer.finish();
+            }
+        }
+        return new TableStats(tableName, rowCount, System.currentTimeMillis() - started, List.of());
+    }
+
+    private static void writeColumn(ResultSet rs, int index, ResultTable.ColumnKind kind, boolean number,
+                                    ExportWriter writer) throws SQLException, IOException {
+        int column = index + 1;
+        switch (kind) {
+            case INT:
+            case LONG: {
+                long value = rs.getLong(column);
+                if (rs.wasNull()) writer.writeNull(index);
+                else writer.writeLong(index, value);
+                return;
+            }
+            case DOUBLE: {
+                double value = rs.getDouble(column);
+                if (rs.wasNull()) writer.writeNull(index);
+                else writer.writeDouble(index, value);
+                return;
+            }
+            case BOOLEAN: {
+                boolean value = rs.getBoolean(column);
+                if (rs.wasNull()) writer.writeNull(index);
+                else writer.writeBoolean(index, value);
+                return;
+            }
+            default: {
+                String value = rs.getString(column);
+                if (value == null) writer.writeNull(index);
+                else if (number) writer.writeNumber(index, value);
+                else writer.writeText(index, value);
+            }
+        }
+    }
+
+    // Числовые типы, которые ResultTable держит объектами
+    private static boolean isNumberType(int sqlType) {
+        return sqlType == Types.NUMERIC || sqlType == Types.DECIMAL || sqlType == Types.REAL
+                || sqlType == Types.SMALLINT || sqlType == Types.TINYINT;
+    }
+
+    private static long writeResultTables(ExportWriter writer, List<String> columns, List<ResultTable> chunks)
+            throws IOException {
+        List<ResultTable.ColumnKind> kinds = new ArrayList<>();
+        for (int i = 0; i < columns.size(); i++) {
+            kinds.add(chunks.isEmpty() ? ResultTable.ColumnKind.OBJECT : chunks.get(0).getKind(i));
+        }
+        writer.begin(columns, kinds);
+
+        long rows = 0;
+        for (ResultTable chunk : chunks) {
+            for (int r = 0; r < chunk.getRowCount(); r++) {
+                for (int c = 0; c < columns.size(); c++) {
+                    if (chunk.isNull(r, c)) {
+                        writer.writeNull(c);
+                        continue;
+                    }
+                    switch (kinds.get(c)) {
+                        case INT:
+                        case LONG:
+                            writer.writeLong(c, chunk.getLong(r, c));
+                            break;
+                        case DOUBLE:
+                            writer.writeDouble(c, chunk.getDouble(r, c));
+                            break;
+                        case BOOLEAN:
+                            writer.writeBoolean(c, (Boolean) chunk.getValue(r, c));
+                            break;
+                        default:
+                            writer.writeValue(c, chunk.getValue(r, c));
+                    }
                 }
+                writer.endRow();
+                rows++;
             }
+        }
+        writer.finish();
+        return rows;
+    }
 
-            autoSizeColumns(sheet, columnCount);
+    // Имя листа XLSX - не длиннее 31 символа; продолжения - "имя (2)", "имя (3)"...
+    private static String sheetName(String tableName, int number) {
+        String suffix = number == 1 ? "" : " (" + number + ")";
+        int max = MAX_SHEET_NAME - suffix.length();
+        return (tableName.length() > max ? tableName.substring(0, max) : tableName) + suffix;
+    }
+
+    // "table_x.xlsx" -> "table_x_part2.xlsx"
+    private static Path suffixedPath(Path filePath, String suffix) {
+        String name = filePath.getFileName().toString();
+        return filePath.resolveSibling(suffixedName(name, suffix));
+    }
 
+    private static String suffixedName(String name, String suffix) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name + suffix : name.substring(0, dot) + suffix + name.substring(dot);
+    }
+
+    // Оглавление частей: какие строки таблицы на каком листе и в каком файле
+    private static void createPartsSheet(Workbook workbook, ExportStyles styles, List<ExportPart> parts, int position) {
+        Sheet sheet = createSheet(workbook, "Export Parts", ColumnWidthMode.AUTO_SIZE);
+        workbook.setSheetOrder(sheet.getSheetName(), position);
+
+        String[] header = {"Part", "Table", "File", "Sheet", "First row", "Last row", "Rows"};
+        Row headerRow = sheet.createRow(0);
+        for (int i = 0; i < header.length; i++) {
+            Cell cell = headerRow.createCell(i);
+            cell.setCellValue(header[i]);
+            cell.setCellStyle(styles.header());
+        }
+
+        for (int i = 0; i < parts.size(); i++) {
+            ExportPart part = parts.get(i);
+            Row row = sheet.createRow(i + 1);
+            row.createCell(0).setCellValue(i + 1);
+            row.createCell(1).setCellValue(part.getTableName());
+            row.createCell(2).setCellValue(part.getFileName());
+            row.createCell(3).setCellValue(part.getSheetName());
+            if (part.getRows() > 0) {
+                row.createCell(4).setCellValue(part.getFirstRow());
+                row.createCell(5).setCellValue(part.getLastRow());
+            }
+            row.createCell(6).setCellValue(part.getRows());
+        }
+
+        for (int i = 0; i < header.length; i++) {
+            sheet.autoSizeColumn(i);
         }
     }
 
-    private CellStyle createHeaderStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        Font font = workbook.createFont();
-        font.setBold(true);
-        style.setFont(font);
-        style.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-        style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        return style;
+    private void endTransaction(Connection conn) {
+        try {
+            // После успешного commit откатывать нечего; после ошибки - снимаем прерванную транзакцию
+            conn.rollback();
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            System.err.println("Failed to end export transaction: " + e.getMessage());
+        }
     }
 
-    private void setCellValue(Cell cell, Object value) {
+    private void setCellValue(Cell cell, Object value, ExportStyles styles) {
         if (value == null) {
             cell.setCellValue("");
         } else if (value instanceof Number) {
@@ -255,6 +861,7 @@ public class ExportService {
             cell.setCellValue((Boolean) value);
         } else if (value instanceof Date) {
             cell.setCellValue((Date) value);
+            cell.setCellStyle(styles.date());
         } else {
             cell.setCellValue(value.toString());
         }
@@ -266,6 +873,270 @@ public class ExportService {
         }
     }
 
+    // Стили создаются один раз на книгу: у XLSX ограничено число стилей, и каждый лишний стиль
+    // увеличивает файл. Листы одной книги могут заполняться из нескольких потоков
+    private static class ExportStyles {
+        private final Workbook workbook;
+        private CellStyle header;
+        private CellStyle date;
+
+        ExportStyles(Workbook workbook) {
+            this.workbook = workbook;
+        }
+
+        synchronized CellStyle header() {
+            if (header == null) {
+                header = workbook.createCellStyle();
+                Font font = workbook.createFont();
+                font.setBold(true);
+                header.setFont(font);
+                header.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+                header.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+            }
+            return header;
+        }
+
+        synchronized CellStyle date() {
+            if (date == null) {
+                date = workbook.createCellStyle();
+                date.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd hh:mm:ss"));
+            }
+            return date;
+        }
+    }
+
+    // Строки одной таблицы по листам: на лист помещается MAX_SHEET_ROWS строк вместе с заголовком, дальше
+    // создается лист-продолжение с тем же заголовком. Лист в общей книге схемы продолжается в той же книге;
+    // своя книга при maxFileRows > 0 еще и делится на файлы - заполненная книга сразу записывается в _partN
+    // и закрывается, а finish() добавляет оглавление _manifest.xlsx
+    private static class SheetParts implements AutoCloseable {
+        private final String tableName;
+        private final ColumnWidthMode widths;
+        private final ColumnWidthEstimator estimator;
+        private final boolean streaming;
+        private final long maxFileRows;
+        // null - лист в чужой книге, ее записывает вызывающий код
+        private final Path filePath;
+        private final String fileName;
+        @Getter
+        private final List<ExportPart> parts = new ArrayList<>();
+        // Листы таблицы в текущей книге
+        private final List<Sheet> sheets = new ArrayList<>();
+        private final List<Path> files = new ArrayList<>();
+        private Workbook workbook;
+        private ExportStyles styles;
+        private Sheet sheet;
+        private List<String> header = List.of();
+        private int sheetRows;
+        private long fileRows;
+        @Getter
+        private long rows;
+        private int firstPartInFile;
+
+        SheetParts(Workbook workbook, ExportStyles styles, Sheet sheet, String tableName, ColumnWidthMode widths) {
+            this(tableName, false, widths, 0, null, null);
+            this.workbook = workbook;
+            this.styles = styles;
+            startSheet(sheet);
+        }
+
+        SheetParts(String tableName, boolean streaming, ColumnWidthMode widths, long maxFileRows, Path filePath,
+                   String fileName) {
+            this.tableName = tableName;
+            this.widths = widths;
+            this.estimator = new ColumnWidthEstimator(widths);
+            this.streaming = streaming;
+            this.maxFileRows = maxFileRows;
+            this.filePath = filePath;
+            this.fileName = fileName;
+            if (filePath != null) {
+                openWorkbook();
+            }
+        }
+
+        ColumnWidthEstimator estimator() {
+            return estimator;
+        }
+
+        ExportStyles styles() {
+            return styles;
+        }
+
+        int getFileCount() {
+            return (int) parts.stream().map(ExportPart::getFileName).distinct().count();
+        }
+
+        // Вызывается до первой строки данных
+        void header(List<String> names) {
+            header = names;
+            for (int i = 0; i < names.size(); i++) {
+                estimator.header(i, names.get(i));
+            }
+            writeHeader();
+        }
+
+        Row nextRow() throws IOException {
+            if (maxFileRows > 0 && fileRows >= maxFileRows) {
+                applyWidths();
+                String suffix = "_part" + (files.size() + 1);
+                writeFile(suffixedPath(filePath, suffix), suffixedName(fileName, suffix));
+                openWorkbook();
+            } else if (sheetRows >= MAX_SHEET_ROWS) {
+                // Листы общей книги схемы заполняются из нескольких потоков
+                Sheet next;
+                synchronized (workbook) {
+                    next = createSheet(workbook, sheetName(tableName, sheets.size() + 1), widths);
+                }
+                startSheet(next);
+            }
+            fileRows++;
+            parts.get(parts.size() - 1).lastRow = ++rows;
+            return sheet.createRow(sheetRows++);
+        }
+
+        void applyWidths() {
+            for (Sheet tableSheet : sheets) {
+                estimator.apply(tableSheet, header.size());
+            }
+        }
+
+        // Записывает последнюю книгу; возвращает файл, который показывается пользователю:
+        // саму книгу или оглавление, если таблица разделена на файлы
+        Path finish() throws IOException {
+            if (files.isEmpty()) {
+                assignFile(fileName);
+                if (parts.size() > 1) {
+                    createPartsSheet(workbook, styles, parts, 0);
+                }
+                writeFile(filePath, fileName);
+                return filePath;
+            }
+
+            String suffix = "_part" + (files.size() + 1);
+            writeFile(suffixedPath(filePath, suffix), suffixedName(fileName, suffix));
+            Path manifest = suffixedPath(filePath, "_manifest");
+            try (Workbook index = createWorkbook(false)) {
+                createPartsSheet(index, new ExportStyles(index), parts, 0);
+                files.add(manifest);
+                writeWorkbook(index, manifest);
+            }
+            return manifest;
+        }
+
+        // После ошибки или отмены - уже записанные части не нужны
+        void deleteFiles() {
+            for (Path file : files) {
+                deletePartialExport(file);
+            }
+            files.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (filePath != null && workbook != null) {
+                workbook.close();
+                workbook = null;
+            }
+        }
+
+        private void openWorkbook() {
+            workbook = createWorkbook(streaming);
+            styles = new ExportStyles(workbook);
+            sheets.clear();
+            firstPartInFile = parts.size();
+            fileRows = 0;
+            startSheet(createSheet(workbook, sheetName(tableName, 1), widths));
+        }
+
+        private void startSheet(Sheet next) {
+            sheet = next;
+            sheets.add(next);
+            sheetRows = 1;
+            parts.add(new ExportPart(tableName, next.getSheetName(), rows + 1));
+            writeHeader();
+        }
+
+        private void writeHeader() {
+            if (header.isEmpty()) {
+                return;
+            }
+            Row headerRow = sheet.createRow(0);
+            for (int i = 0; i < header.size(); i++) {
+                Cell cell = headerRow.createCell(i);
+                cell.setCellValue(header.get(i));
+                cell.setCellStyle(styles.header());
+            }
+        }
+
+        private void writeFile(Path path, String name) throws IOException {
+            assignFile(name);
+            files.add(path);
+            writeWorkbook(workbook, path);
+            workbook.close();
+            workbook = null;
+        }
+
+        private void assignFile(String name) {
+            for (int i = firstPartInFile; i < parts.size(); i++) {
+                parts.get(i).fileName = name;
+            }
+        }
+    }
+
+    // Диапазон строк таблицы на одном листе; строки данных нумеруются с 1, заголовок не считается
+    @Getter
+    public static class ExportPart {
+        private final String tableName;
+        private final String sheetName;
+        private final long firstRow;
+        private long lastRow;
+        private String fileName;
+
+        ExportPart(String tableName, String sheetName, long firstRow) {
+            this.tableName = tableName;
+            this.sheetName = sheetName;
+            this.firstRow = firstRow;
+            this.lastRow = firstRow - 1;
+        }
+
+        public long getRows() {
+            return lastRow - firstRow + 1;
+        }
+    }
+
+    // Закрытие книги не должно закрывать архив, в который она пишется
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    @Getter
+    public static class TableStats {
+        private final String tableName;
+        private final long rows;
+        private final long elapsedMillis;
+        // Листы (и файлы), по которым разложены строки таблицы
+        private final List<ExportPart> parts;
+
+        TableStats(String tableName, long rows, long elapsedMillis, List<ExportPart> parts) {
+            this.tableName = tableName;
+            this.rows = rows;
+            this.elapsedMillis = elapsedMillis;
+            this.parts = parts;
+        }
+    }
+
     @Setter
     @Getter
     public static class ExportResult {
@@ -273,6 +1144,8 @@ public class ExportService {
         private String message;
         private File exportFile;
         private int tablesCount;
+        // Время и число строк по таблицам в исходном порядке (экспорт схемы)
+        private List<TableStats> tableStats = new ArrayList<>();
 
     }
 }
\ No newline at end of file
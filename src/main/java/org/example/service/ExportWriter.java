@@ -0,0 +1,60 @@
+package org.example.service;
+
+import org.example.entity.ResultTable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.List;
+
+// Построчная запись экспорта в потоковом формате (все, кроме XLSX). Значения передаются по столбцам:
+// столбцы INT/LONG, DOUBLE и BOOLEAN - примитивами без упаковки, остальные - текстом или числом.
+// Строка заканчивается endRow(); finish() дописывает хвост формата, но не закрывает поток
+interface ExportWriter {
+
+    void begin(List<String> columns, List<ResultTable.ColumnKind> kinds) throws IOException;
+
+    void writeNull(int column) throws IOException;
+
+    void writeLong(int column, long value) throws IOException;
+
+    void writeDouble(int column, double value) throws IOException;
+
+    void writeBoolean(int column, boolean value) throws IOException;
+
+    // Число из столбца OBJECT (numeric, real, smallint) в текстовом виде сервера - как есть, без разбора;
+    // форматы, где у чисел есть свой тип, не берут его в кавычки. "NaN" и "Infinity" тоже приходят сюда
+    void writeNumber(int column, String value) throws IOException;
+
+    void writeText(int column, CharSequence value) throws IOException;
+
+    void endRow() throws IOException;
+
+    void finish() throws IOException;
+
+    // Значение столбца OBJECT из ResultTable
+    default void writeValue(int column, Object value) throws IOException {
+        if (value == null) {
+            writeNull(column);
+        } else if (value instanceof BigDecimal) {
+            writeNumber(column, ((BigDecimal) value).toPlainString());
+        } else if (value instanceof Number) {
+            writeNumber(column, value.toString());
+        } else {
+            writeText(column, value.toString());
+        }
+    }
+
+    static ExportWriter open(ExportFormat format, OutputStream out) {
+        switch (format) {
+            case CSV:
+                return new CsvExportWriter(out);
+            case JSON_LINES:
+                return new JsonLinesExportWriter(out);
+            case COLUMNAR:
+                return new ColumnarExportWriter(out);
+            default:
+                throw new IllegalArgumentException("No streaming writer for " + format);
+        }
+    }
+}
@@ -0,0 +1,729 @@
+package org.example.service;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.example.entity.Column;
+import org.example.entity.Table;
+import org.example.util.CountingInputStream;
+import org.example.util.EnvConfig;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+// Загрузка CSV/XLSX в таблицу через COPY ... FROM STDIN. Файл читается потоково, строки проверяются
+// по метаданным таблицы; не прошедшие проверку пишутся в отдельный CSV и в таблицу не попадают
+public class ImportService {
+    private static final String IMPORT_DIR = "imports";
+    private static final String DATE_FORMAT = "yyyyMMdd_HHmmss";
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+    private static final int PROGRESS_INTERVAL = 5_000;
+    private static final int MAX_REJECTED_ROWS = EnvConfig.getInt("IMPORT_MAX_REJECTED_ROWS", 10_000);
+
+    private static final DateTimeFormatter[] DATE_FORMATS = {
+            DateTimeFormatter.ISO_LOCAL_DATE,
+            DateTimeFormatter.ofPattern("dd.MM.yyyy"),
+            DateTimeFormatter.ofPattern("d.M.yyyy")
+    };
+    private static final DateTimeFormatter[] TIMESTAMP_FORMATS = {
+            DateTimeFormatter.ofPattern("yyyy-MM-dd[ ]['T']HH:mm[:ss][.SSSSSS][.SSS][.S]"),
+            DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm[:ss]"),
+            DateTimeFormatter.ofPattern("d.M.yyyy H:mm[:ss]")
+    };
+
+    private final DatabaseService databaseService;
+
+    public ImportService(DatabaseService databaseService) {
+        this.databaseService = databaseService;
+        createImportDirectory();
+    }
+
+    private void createImportDirectory() {
+        try {
+            Path importPath = Paths.get(IMPORT_DIR);
+            if (!Files.exists(importPath)) {
+                Files.createDirectories(importPath);
+                System.out.println("Created import directory: " + importPath.toAbsolutePath());
+            }
+        } catch (IOException e) {
+            System.err.println("Error creating import directory: " + e.getMessage());
+        }
+    }
+
+    public ImportResult importFile(String tableName, File file, ProgressListener progress) {
+        ImportResult result = new ImportResult();
+        long start = System.currentTimeMillis();
+
+        String schema = databaseService.getCurrentSchema();
+        Table table;
+        try {
+            table = databaseService.getCatalog(schema).getTable(tableName);
+        } catch (SQLException e) {
+            result.setSuccess(false);
+            result.setMessage("Database error during import: " + e.getMessage());
+            return result;
+        }
+        if (table == null) {
+            result.setSuccess(false);
+            result.setMessage("Table '" + tableName + "' not found in schema: " + schema);
+            return result;
+        }
+
+        String timestamp = new SimpleDateFormat(DATE_FORMAT).format(new Date());
+        File rejectedFile = Paths.get(IMPORT_DIR, String.format("rejected_%s_%s.csv", tableName, timestamp)).toFile();
+
+        try (Connection conn = databaseService.getConnection(schema);
+             CopySink sink = new CopySink(conn.unwrap(PGConnection.class).getCopyAPI(), table, rejectedFile, progress)) {
+
+            if (file.getName().toLowerCase(Locale.ROOT).endsWith(".xlsx")) {
+                readXlsx(file, tableName, sink);
+            } else {
+                readCsv(file, sink);
+            }
+            long imported = sink.finish();
+            databaseService.fireTableChanged(tableName);
+
+            result.setSuccess(true);
+            result.setRowsImported(imported);
+            result.setRowsRejected(sink.rejected);
+            result.setRejectedFile(sink.rejected > 0 ? rejectedFile : null);
+            result.setElapsedMillis(System.currentTimeMillis() - start);
+            result.setMessage(String.format("Импортировано строк: %d за %.1f с%s%s", imported,
+                    result.getElapsedMillis() / 1000.0,
+                    sink.rejected > 0 ? ", отклонено: " + sink.rejected + " (см. " + rejectedFile.getName() + ")" : "",
+                    sink.ignoredColumns.isEmpty() ? "" : ". Пропущены столбцы файла: " + String.join(", ", sink.ignoredColumns)));
+
+        } catch (ImportAbortedException e) {
+            result.setSuccess(false);
+            result.setMessage(e.getMessage());
+        } catch (SQLException e) {
+            result.setSuccess(false);
+            result.setMessage("Ошибка импорта, данные не загружены: " + e.getMessage());
+        } catch (Exception e) {
+            result.setSuccess(false);
+            result.setMessage("Error reading import file: " + e.getMessage());
+        }
+
+        return result;
+    }
+
+    // ========== ЧТЕНИЕ CSV ==========
+
+    private void readCsv(File file, CopySink sink) throws IOException, SQLException {
+        long total = file.length();
+        try (CountingInputStream counter = new CountingInputStream(new FileInputStream(file));
+             Reader reader = new BufferedReader(new InputStreamReader(counter, StandardCharsets.UTF_8), 1 << 16)) {
+
+            CsvParser parser = new CsvParser(reader);
+            List<String> header = parser.next();
+            if (header == null) {
+                throw new ImportAbortedException("Файл пуст");
+            }
+            if (!header.isEmpty() && header.get(0) != null && header.get(0).startsWith("\uFEFF")) {
+                header.set(0, header.get(0).substring(1));
+            }
+            sink.header(header);
+
+            List<String> record;
+            while ((record = parser.next()) != null) {
+                if (record.size() == 1 && record.get(0) == null) {
+                    continue;
+                }
+                sink.row(record, parser.getLine(), counter.getCount(), total);
+            }
+        }
+    }
+
+    // RFC 4180: поля в кавычках могут содержать разделитель, перевод строки и "" как кавычку.
+    // Разделитель (',', ';' или табуляция) определяется по первой строке. Пустое поле без кавычек - null
+    // (NULL, как пишет экспорт), "" в кавычках - пустая строка
+    private static class CsvParser {
+        private final Reader reader;
+        private final char[] buffer = new char[1 << 16];
+        private final char delimiter;
+        private final StringBuilder field = new StringBuilder();
+        private boolean fieldQuoted;
+        private int position;
+        private int limit;
+        private long line = 1;
+        private long recordLine = 1;
+
+        CsvParser(Reader reader) throws IOException {
+            this.reader = reader;
+            fill();
+            this.delimiter = detectDelimiter();
+        }
+
+        private boolean fill() throws IOException {
+            int n = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            limit = Math.max(n, 0);
+            return n > 0;
+        }
+
+        private int read() throws IOException {
+            if (position >= limit && !fill()) {
+                return -1;
+            }
+            return buffer[position++];
+        }
+
+        private int peek() throws IOException {
+            if (position >= limit && !fill()) {
+                return -1;
+            }
+            return buffer[position];
+        }
+
+        private char detectDelimiter() {
+            int commas = 0;
+            int semicolons = 0;
+            int tabs = 0;
+            boolean quoted = false;
+            for (int i = 0; i < limit; i++) {
+                char c = buffer[i];
+                if (c == '"') {
+                    quoted = !quoted;
+                } else if (!quoted) {
+                    if (c == '\n') break;
+                    if (c == ',') commas++;
+                    else if (c == ';') semicolons++;
+                    else if (c == '\t') tabs++;
+                }
+            }
+            if (tabs > commas && tabs > semicolons) return '\t';
+            return semicolons > commas ? ';' : ',';
+        }
+
+        long getLine() {
+            return recordLine;
+        }
+
+        List<String> next() throws IOException {
+            if (peek() < 0) {
+                return null;
+            }
+            recordLine = line;
+
+            List<String> fields = new ArrayList<>();
+            field.setLength(0);
+            fieldQuoted = false;
+            boolean quoted = false;
+            while (true) {
+                int c = read();
+                if (c < 0) {
+                    fields.add(endField());
+                    return fields;
+                }
+                char ch = (char) c;
+                if (quoted) {
+                    if (ch == '"') {
+                        if (peek() == '"') {
+                            read();
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        if (ch == '\n') line++;
+                        field.append(ch);
+                    }
+                } else if (ch == '"' && field.length() == 0) {
+                    quoted = true;
+                    fieldQuoted = true;
+                } else if (ch == delimiter) {
+                    fields.add(endField());
+                } else if (ch == '\r' || ch == '\n') {
+                    if (ch == '\r' && peek() == '\n') {
+                        read();
+                    }
+                    line++;
+                    fields.add(endField());
+                    return fields;
+                } else {
+                    field.append(ch);
+                }
+            }
+        }
+
+        private String endField() {
+            String value = field.length() == 0 && !fieldQuoted ? null : field.toString();
+            field.setLength(0);
+            fieldQuoted = false;
+            return value;
+        }
+    }
+
+    // ========== ЧТЕНИЕ XLSX ==========
+
+    // Потоковый SAX-разбор листа: в памяти только общая таблица строк, а не вся книга.
+    // Берется лист с именем таблицы (как в экспорте схемы), иначе первый
+    private void readXlsx(File file, String tableName, CopySink sink) throws Exception {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+
+            int sheetIndex = 0;
+            int targetIndex = 0;
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                sheets.next().close();
+                if (sheets.getSheetName().equalsIgnoreCase(tableName)) {
+                    targetIndex = sheetIndex;
+                }
+                sheetIndex++;
+            }
+
+            sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            for (int i = 0; sheets.hasNext(); i++) {
+                try (InputStream sheet = sheets.next()) {
+                    if (i != targetIndex) {
+                        continue;
+                    }
+                    XMLReader parser = XMLHelper.newXMLReader();
+                    parser.setContentHandler(new XSSFSheetXMLHandler(styles, null, strings,
+                            new SheetRowHandler(sink), new RawValueFormatter(), false));
+                    try {
+                        parser.parse(new InputSource(sheet));
+                    } catch (SheetRowException e) {
+                        throw e.getCause();
+                    }
+                    return;
+                }
+            }
+            throw new ImportAbortedException("В файле нет листов");
+        }
+    }
+
+    // Даты - в ISO, числа - без форматирования ячейки (разделителей групп, округления)
+    private static class RawValueFormatter extends DataFormatter {
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            if (DateUtil.isADateFormat(formatIndex, formatString) && DateUtil.isValidExcelDate(value)) {
+                LocalDateTime dateTime = DateUtil.getLocalDateTime(value);
+                return dateTime.toLocalTime().toSecondOfDay() == 0
+                        ? dateTime.toLocalDate().toString()
+                        : dateTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+            }
+            return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    private static class SheetRowHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final CopySink sink;
+        private final List<String> cells = new ArrayList<>();
+        private boolean headerRead;
+        private int nextColumn;
+
+        SheetRowHandler(CopySink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            cells.clear();
+            nextColumn = 0;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            // Пустые ячейки в XML листа пропускаются - восстанавливаем позицию по адресу, пропуски - null
+            int column = cellReference != null ? new CellReference(cellReference).getCol() : nextColumn;
+            while (cells.size() < column) {
+                cells.add(null);
+            }
+            cells.add(formattedValue);
+            nextColumn = column + 1;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            try {
+                if (!headerRead) {
+                    headerRead = true;
+                    sink.header(new ArrayList<>(cells));
+                } else if (!cells.isEmpty()) {
+                    sink.row(cells, rowNum + 1L, -1, -1);
+                }
+            } catch (IOException | SQLException e) {
+                throw new SheetRowException(e);
+            }
+        }
+    }
+
+    private static class SheetRowException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SheetRowException(Exception cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized Exception getCause() {
+            return (Exception) super.getCause();
+        }
+    }
+
+    private static class ImportAbortedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ImportAbortedException(String message) {
+            super(message);
+        }
+    }
+
+    // ========== ЗАПИСЬ В COPY ==========
+
+    // Проверяет и переводит строки файла в текстовый формат COPY; данные уходят на сервер блоками
+    private static class CopySink implements Closeable {
+        private final CopyManager copyManager;
+        private final Table table;
+        private final File rejectedFile;
+        private final ProgressListener progress;
+        private final List<String> ignoredColumns = new ArrayList<>();
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(COPY_BUFFER_SIZE + 4096);
+        private final StringBuilder line = new StringBuilder(256);
+
+        private List<String> header;
+        private Column[] targetColumns;
+        private int[] sourceIndexes;
+        private ValueKind[] kinds;
+        private CopyIn copyIn;
+        private BufferedWriter rejectedWriter;
+        private long rows;
+        private long rejected;
+
+        CopySink(CopyManager copyManager, Table table, File rejectedFile, ProgressListener progress) {
+            this.copyManager = copyManager;
+            this.table = table;
+            this.rejectedFile = rejectedFile;
+            this.progress = progress;
+        }
+
+        // Столбцы файла сопоставляются со столбцами таблицы по имени без учета регистра
+        void header(List<String> fileColumns) throws SQLException {
+            header = new ArrayList<>(fileColumns);
+            Map<String, Column> byName = new HashMap<>();
+            for (Column column : table.getColumns()) {
+                byName.put(column.getName().toLowerCase(Locale.ROOT), column);
+            }
+
+            List<Column> columns = new ArrayList<>();
+            List<Integer> indexes = new ArrayList<>();
+            Set<String> mapped = new HashSet<>();
+            for (int i = 0; i < fileColumns.size(); i++) {
+                String fileColumn = fileColumns.get(i) == null ? "" : fileColumns.get(i).trim();
+                String name = fileColumn.toLowerCase(Locale.ROOT);
+                Column column = byName.get(name);
+                if (column == null || !mapped.add(name)) {
+                    if (!name.isEmpty()) ignoredColumns.add(fileColumn);
+                    continue;
+                }
+                columns.add(column);
+                indexes.add(i);
+            }
+            if (columns.isEmpty()) {
+                throw new ImportAbortedException("Ни один столбец файла не совпадает со столбцами таблицы " + table.getName());
+            }
+            for (Column column : table.getColumns()) {
+                if (!column.isNullable() && column.getDefaultValue() == null &&
+                        !mapped.contains(column.getName().toLowerCase(Locale.ROOT))) {
+                    throw new ImportAbortedException("Обязательное поле '" + column.getName() + "' отсутствует в файле");
+                }
+            }
+
+            targetColumns = columns.toArray(new Column[0]);
+            sourceIndexes = indexes.stream().mapToInt(Integer::intValue).toArray();
+            kinds = new ValueKind[targetColumns.length];
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < targetColumns.length; i++) {
+                kinds[i] = ValueKind.of(targetColumns[i].getType());
+                names.add(DatabaseService.quoteIdentifier(targetColumns[i].getName()));
+            }
+
+            copyIn = copyManager.copyIn("COPY " + DatabaseService.quoteIdentifier(table.getName()) +
+                    " (" + String.join(", ", names) + ") FROM STDIN");
+        }
+
+        void row(List<String> values, long lineNumber, long bytesRead, long totalBytes) throws IOException, SQLException {
+            line.setLength(0);
+            try {
+                for (int i = 0; i < targetColumns.length; i++) {
+                    if (i > 0) line.append('\t');
+                    int index = sourceIndexes[i];
+                    String raw = index < values.size() ? values.get(index) : null;
+                    // Текст загружается как есть, "" остается пустой строкой; у чисел, дат и логических
+                    // значений пробелы по краям отбрасываются, а пустое значение - NULL
+                    if (raw != null && kinds[i] != ValueKind.TEXT) {
+                        raw = raw.trim();
+                        if (raw.isEmpty()) {
+                            raw = null;
+                        }
+                    }
+                    if (raw == null) {
+                        if (!targetColumns[i].isNullable()) {
+                            throw new IllegalArgumentException("пустое значение в обязательном поле " + targetColumns[i].getName());
+                        }
+                        line.append("\\N");
+                    } else {
+                        appendEscaped(kinds[i].convert(raw, targetColumns[i]));
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                reject(values, lineNumber, e.getMessage());
+                return;
+            }
+            line.append('\n');
+            buffer.write(line.toString().getBytes(StandardCharsets.UTF_8));
+            if (buffer.size() >= COPY_BUFFER_SIZE) {
+                flush();
+            }
+
+            if (++rows % PROGRESS_INTERVAL == 0) {
+                if (progress.isCancelled()) {
+                    throw new ImportAbortedException("Import cancelled");
+                }
+                progress.progress(totalBytes > 0 ? bytesRead : rows, totalBytes,
+                        "Импорт в " + table.getName() + ": " + rows + " строк");
+            }
+        }
+
+        // Текстовый формат COPY: \ и управляющие символы экранируются обратной косой чертой
+        private void appendEscaped(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '\\':
+                        line.append("\\\\");
+                        break;
+                    case '\t':
+                        line.append("\\t");
+                        break;
+                    case '\n':
+                        line.append("\\n");
+                        break;
+                    case '\r':
+                        line.append("\\r");
+                        break;
+                    default:
+                        line.append(c);
+                }
+            }
+        }
+
+        private void reject(List<String> values, long lineNumber, String reason) throws IOException {
+            rejected++;
+            if (MAX_REJECTED_ROWS > 0 && rejected > MAX_REJECTED_ROWS) {
+                throw new ImportAbortedException("Слишком много некорректных строк (больше " + MAX_REJECTED_ROWS +
+                        "), импорт отменен. Последняя ошибка: строка " + lineNumber + ": " + reason);
+            }
+            if (rejectedWriter == null) {
+                rejectedWriter = Files.newBufferedWriter(rejectedFile.toPath(), StandardCharsets.UTF_8);
+                List<String> columns = new ArrayList<>(header);
+                columns.add("import_error");
+                writeCsvLine(columns);
+            }
+            List<String> record = new ArrayList<>(values);
+            while (record.size() < header.size()) {
+                record.add(null);
+            }
+            record.add("строка " + lineNumber + ": " + reason);
+            writeCsvLine(record);
+        }
+
+        private void writeCsvLine(List<String> values) throws IOException {
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) rejectedWriter.write(',');
+                String value = values.get(i);
+                if (value == null) {
+                    continue;
+                }
+                if (value.isEmpty() || value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                    rejectedWriter.write('"');
+                    rejectedWriter.write(value.replace("\"", "\"\""));
+                    rejectedWriter.write('"');
+                } else {
+                    rejectedWriter.write(value);
+                }
+            }
+            rejectedWriter.newLine();
+        }
+
+        private void flush() throws SQLException {
+            if (buffer.size() > 0) {
+                copyIn.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+                buffer.reset();
+            }
+        }
+
+        long finish() throws SQLException {
+            if (copyIn == null) {
+                throw new ImportAbortedException("В файле нет строки заголовка");
+            }
+            flush();
+            long imported = copyIn.endCopy();
+            copyIn = null;
+            return imported;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (rejectedWriter != null) {
+                rejectedWriter.close();
+            }
+            // COPY не завершен (ошибка или отмена) - сервер откатывает все уже переданные строки
+            if (copyIn != null && copyIn.isActive()) {
+                try {
+                    copyIn.cancelCopy();
+                } catch (SQLException e) {
+                    System.err.println("Failed to cancel COPY: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Проверка и нормализация значения по типу столбца до отправки на сервер: ошибка в одной строке
+    // не должна обрывать весь COPY
+    private enum ValueKind {
+        SMALLINT, INTEGER, BIGINT, NUMERIC, BOOLEAN, DATE, TIMESTAMP, TEXT;
+
+        static ValueKind of(String type) {
+            switch (type == null ? "" : type.toLowerCase(Locale.ROOT)) {
+                case "int2":
+                case "smallserial":
+                    return SMALLINT;
+                case "int4":
+                case "serial":
+                    return INTEGER;
+                case "int8":
+                case "bigserial":
+                    return BIGINT;
+                case "numeric":
+                case "float4":
+                case "float8":
+                    return NUMERIC;
+                case "bool":
+                    return BOOLEAN;
+                case "date":
+                    return DATE;
+                case "timestamp":
+                case "timestamptz":
+                    return TIMESTAMP;
+                default:
+                    return TEXT;
+            }
+        }
+
+        String convert(String value, Column column) {
+            switch (this) {
+                case SMALLINT:
+                    return checkRange(value, column, Short.MIN_VALUE, Short.MAX_VALUE);
+                case INTEGER:
+                    return checkRange(value, column, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                case BIGINT:
+                    return checkRange(value, column, Long.MIN_VALUE, Long.MAX_VALUE);
+                case NUMERIC:
+                    // Excel с русской локалью сохраняет дробную часть через запятую
+                    String number = value.replaceAll("[\\s\\u00A0\\u202F]", "").replace(',', '.');
+                    try {
+                        new BigDecimal(number);
+                        return number;
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("'" + value + "' не число (" + column.getName() + ")");
+                    }
+                case BOOLEAN:
+                    switch (value.toLowerCase(Locale.ROOT)) {
+                        case "true": case "t": case "1": case "yes": case "y": case "да":
+                            return "t";
+                        case "false": case "f": case "0": case "no": case "n": case "нет":
+                            return "f";
+                        default:
+                            throw new IllegalArgumentException("'" + value + "' не логическое значение (" + column.getName() + ")");
+                    }
+                case DATE:
+                    for (DateTimeFormatter format : DATE_FORMATS) {
+                        try {
+                            return LocalDate.parse(value, format).toString();
+                        } catch (DateTimeParseException ignored) {
+                            // пробуем следующий формат
+                        }
+                    }
+                    throw new IllegalArgumentException("'" + value + "' не дата (" + column.getName() + ")");
+                case TIMESTAMP:
+                    for (DateTimeFormatter format : TIMESTAMP_FORMATS) {
+                        try {
+                            return LocalDateTime.parse(value, format).toString().replace('T', ' ');
+                        } catch (DateTimeParseException ignored) {
+                            // пробуем следующий формат
+                        }
+                    }
+                    for (DateTimeFormatter format : DATE_FORMATS) {
+                        try {
+                            return LocalDate.parse(value, format) + " 00:00:00";
+                        } catch (DateTimeParseException ignored) {
+                            // пробуем следующий формат
+                        }
+                    }
+                    throw new IllegalArgumentException("'" + value + "' не дата и время (" + column.getName() + ")");
+                default:
+                    return value;
+            }
+        }
+
+        private static String checkRange(String value, Column column, long min, long max) {
+            String number = value;
+            // Целые из Excel могут прийти как "15.0"
+            if (number.endsWith(".0")) {
+                number = number.substring(0, number.length() - 2);
+            }
+            try {
+                long parsed = Long.parseLong(number);
+                if (parsed < min || parsed > max) {
+                    throw new IllegalArgumentException("'" + value + "' вне диапазона (" + column.getName() + ")");
+                }
+                return number;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("'" + value + "' не целое число (" + column.getName() + ")");
+            }
+        }
+    }
+
+    @Setter
+    @Getter
+    public static class ImportResult {
+        private boolean success;
+        private String message;
+        private long rowsImported;
+        private long rowsRejected;
+        private File rejectedFile;
+        private long elapsedMillis;
+    }
+}
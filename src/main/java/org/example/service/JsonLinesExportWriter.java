@@ -0,0 +1,103 @@
+package org.example.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.example.entity.ResultTable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+// JSON Lines: объект на строку, имена столбцов - ключи. Пишет потоковый JsonGenerator без дерева объектов;
+// имена столбцов кодируются один раз. Числа numeric переносятся текстом сервера - без потери точности
+class JsonLinesExportWriter implements ExportWriter {
+    private static final JsonFactory FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    private final JsonGenerator generator;
+    private SerializedString[] names;
+
+    JsonLinesExportWriter(OutputStream out) {
+        try {
+            generator = FACTORY.createGenerator(out, JsonEncoding.UTF8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // Строки разделяются переводом строки, а не пробелом по умолчанию
+        generator.setRootValueSeparator(null);
+    }
+
+    @Override
+    public void begin(List<String> columns, List<ResultTable.ColumnKind> kinds) {
+        names = new SerializedString[columns.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = new SerializedString(columns.get(i));
+        }
+    }
+
+    @Override
+    public void writeNull(int column) throws IOException {
+        field(column);
+        generator.writeNull();
+    }
+
+    @Override
+    public void writeLong(int column, long value) throws IOException {
+        field(column);
+        generator.writeNumber(value);
+    }
+
+    @Override
+    public void writeDouble(int column, double value) throws IOException {
+        field(column);
+        generator.writeNumber(value);
+    }
+
+    @Override
+    public void writeBoolean(int column, boolean value) throws IOException {
+        field(column);
+        generator.writeBoolean(value);
+    }
+
+    // Текст сервера уже в синтаксисе числа JSON; NaN и Infinity в JSON не числа - пишутся строкой
+    @Override
+    public void writeNumber(int column, String value) throws IOException {
+        field(column);
+        if (!value.isEmpty() && Character.isDigit(value.charAt(value.length() - 1))) {
+            generator.writeNumber(value);
+        } else {
+            generator.writeString(value);
+        }
+    }
+
+    @Override
+    public void writeText(int column, CharSequence value) throws IOException {
+        field(column);
+        generator.writeString(value.toString());
+    }
+
+    @Override
+    public void endRow() throws IOException {
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    @Override
+    public void finish() throws IOException {
+        // Поток не закрывается - AUTO_CLOSE_TARGET выключен
+        generator.close();
+    }
+
+    // Первое значение строки открывает объект
+    private void field(int column) throws IOException {
+        if (column == 0) {
+            generator.writeStartObject();
+        }
+        generator.writeFieldName(names[column]);
+    }
+}
@@ -0,0 +1,45 @@
+package org.example.service;
+
+import org.example.entity.SchemaCatalog;
+import org.example.util.EnvConfig;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class MetadataCache {
+    // 0 - записи живут до явной инвалидации
+    private final long ttlMs;
+    private final Map<String, SchemaCatalog> catalogs = new ConcurrentHashMap<>();
+
+    public MetadataCache() {
+        this.ttlMs = EnvConfig.getLong("METADATA_CACHE_TTL_MS", 0);
+    }
+
+    public SchemaCatalog get(String schema) {
+        SchemaCatalog catalog = catalogs.get(key(schema));
+        if (catalog == null) {
+            return null;
+        }
+        if (ttlMs > 0 && System.currentTimeMillis() - catalog.getLoadedAt() > ttlMs) {
+            catalogs.remove(key(schema), catalog);
+            return null;
+        }
+        return catalog;
+    }
+
+    public void put(SchemaCatalog catalog) {
+        catalogs.put(key(catalog.getSchema()), catalog);
+    }
+
+    public void invalidateSchema(String schema) {
+        catalogs.remove(key(schema));
+    }
+
+    public void invalidateAll() {
+        catalogs.clear();
+    }
+
+    private static String key(String schema) {
+        return schema == null ? "public" : schema;
+    }
+}
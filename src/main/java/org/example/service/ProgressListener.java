@@ -0,0 +1,14 @@
+package org.example.service;
+
+// Отчет о ходе долгих операций (бэкап, восстановление, экспорт) и проверка отмены между шагами
+public interface ProgressListener {
+    ProgressListener NONE = new ProgressListener() {
+    };
+
+    default void progress(long done, long total, String message) {
+    }
+
+    default boolean isCancelled() {
+        return false;
+    }
+}
@@ -0,0 +1,252 @@
+package org.example.service;
+
+import lombok.Getter;
+import org.example.entity.ResultTable;
+import org.example.util.EnvConfig;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Кэш результатов запросов консоли: ключ - схема + нормализованный текст запроса.
+// LRU с ограничением по числу записей и оценочному объему, TTL, сброс по изменению таблиц, упомянутых в запросе
+public class QueryResultCache {
+    private static final String TABLE_NAME = "((?:\"[^\"]+\"|[\\w$]+)(?:\\s*\\.\\s*(?:\"[^\"]+\"|[\\w$]+))?)";
+    private static final Pattern TABLE_REFERENCE_PATTERN =
+            Pattern.compile("\\b(?:from|join)\\s+" + TABLE_NAME, Pattern.CASE_INSENSITIVE);
+    // Продолжение списка через запятую: FROM clients c, orders o
+    private static final Pattern TABLE_LIST_PATTERN =
+            Pattern.compile("\\G(?:\\s+(?:as\\s+)?[\\w$]+)?\\s*,\\s*" + TABLE_NAME, Pattern.CASE_INSENSITIVE);
+    // Результат таких запросов меняется без изменения данных
+    private static final Pattern VOLATILE_PATTERN =
+            Pattern.compile("\\b(now|random|nextval|setval|currval|clock_timestamp|statement_timestamp|timeofday|" +
+                    "current_timestamp|current_time|localtimestamp|localtime|gen_random_uuid|txid_current)\\b",
+                    Pattern.CASE_INSENSITIVE);
+
+    private final long ttlMs;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    // Растет при каждой инвалидации: результат, прочитанный во время записи в таблицы, не кладется в кэш
+    private long version;
+    private long hits;
+    private long misses;
+
+    public QueryResultCache() {
+        this.ttlMs = EnvConfig.getLong("QUERY_CACHE_TTL_MS", 300_000);
+        this.maxEntries = Math.max(1, EnvConfig.getInt("QUERY_CACHE_MAX_ENTRIES", 32));
+        this.maxBytes = EnvConfig.getLong("QUERY_CACHE_MAX_BYTES", 64L * 1024 * 1024);
+    }
+
+    public boolean isCacheable(String sql) {
+        return !VOLATILE_PATTERN.matcher(stripLiteralsAndComments(sql)).find();
+    }
+
+    public synchronized Entry get(String schema, String sql) {
+        String key = key(schema, sql);
+        Entry entry = entries.get(key);
+        if (entry != null && ttlMs > 0 && System.currentTimeMillis() - entry.createdAt > ttlMs) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return entry;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    // tables пуст - таблицы запроса неизвестны, запись сбрасывается при любом изменении данных.
+    // startVersion - getVersion() до начала запроса: если за время выполнения был сброс, результат не кэшируется
+    public synchronized void put(String schema, String sql, List<String> columns, List<ResultTable> chunks,
+                                 int rowCount, boolean truncated, Set<String> tables, long startVersion) {
+        if (startVersion != version) {
+            return;
+        }
+        long bytes = 0;
+        for (ResultTable chunk : chunks) {
+            bytes += chunk.estimateBytes();
+        }
+        if (bytes > maxBytes) {
+            return;
+        }
+
+        String key = key(schema, sql);
+        remove(key);
+        Entry entry = new Entry(columns, chunks, rowCount, truncated, tables, bytes);
+        entries.put(key, entry);
+        totalBytes += bytes;
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalBytes > maxBytes) && eldest.hasNext()) {
+            Entry evicted = eldest.next().getValue();
+            totalBytes -= evicted.bytes;
+            eldest.remove();
+        }
+    }
+
+    // tableName == null - изменились неизвестные таблицы, сбрасываем все
+    public synchronized void invalidateTable(String tableName) {
+        if (tableName == null) {
+            invalidateAll();
+            return;
+        }
+        version++;
+        String table = tableName.toLowerCase(Locale.ROOT);
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            // Если таблицы запроса разобрать не удалось, запись сбрасывается при любом изменении
+            if (entry.tables.isEmpty() || entry.tables.contains(table)) {
+                totalBytes -= entry.bytes;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        version++;
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    public synchronized String getStats() {
+        return String.format("entries=%d, ~%d KB, hits=%d, misses=%d", entries.size(), totalBytes / 1024, hits, misses);
+    }
+
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            totalBytes -= old.bytes;
+        }
+    }
+
+    private static String key(String schema, String sql) {
+        return (schema == null ? "public" : schema) + "\n" + normalize(sql);
+    }
+
+    // Схлопывает пробелы, убирает комментарии и завершающую ';', приводит к нижнему регистру всё, кроме литералов
+    static String normalize(String sql) {
+        StringBuilder out = new StringBuilder(sql.length());
+        boolean pendingSpace = false;
+        int i = 0;
+        int n = sql.length();
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+                while (i < n && sql.charAt(i) != '\n') i++;
+                pendingSpace = true;
+                continue;
+            }
+            if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+                pendingSpace = true;
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                i++;
+                continue;
+            }
+            if (pendingSpace && out.length() > 0) {
+                out.append(' ');
+            }
+            pendingSpace = false;
+            if (c == '\'' || c == '"') {
+                int end = i + 1;
+                while (end < n) {
+                    if (sql.charAt(end) == c) {
+                        if (end + 1 < n && sql.charAt(end + 1) == c) {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                end = Math.min(end + 1, n);
+                out.append(sql, i, end);
+                i = end;
+                continue;
+            }
+            out.append(Character.toLowerCase(c));
+            i++;
+        }
+        int len = out.length();
+        while (len > 0 && (out.charAt(len - 1) == ';' || out.charAt(len - 1) == ' ')) {
+            len--;
+        }
+        out.setLength(len);
+        return out.toString();
+    }
+
+    private static String stripLiteralsAndComments(String sql) {
+        return normalize(sql).replaceAll("'(?:[^']|'')*'", "''");
+    }
+
+    // Имена таблиц после FROM/JOIN (и через запятую в FROM) без схемы, в нижнем регистре.
+    // FROM (подзапрос) не попадает: после FROM идет скобка
+    public static Set<String> referencedTables(String sql) {
+        Set<String> tables = new HashSet<>();
+        String text = stripLiteralsAndComments(sql);
+        Matcher matcher = TABLE_REFERENCE_PATTERN.matcher(text);
+        while (matcher.find()) {
+            tables.add(tableName(matcher.group(1)));
+
+            Matcher list = TABLE_LIST_PATTERN.matcher(text);
+            list.region(matcher.end(), text.length());
+            while (list.find()) {
+                tables.add(tableName(list.group(1)));
+                list.region(list.end(), text.length());
+            }
+        }
+        return tables;
+    }
+
+    private static String tableName(String reference) {
+        String name = reference;
+        int dot = name.lastIndexOf('.');
+        if (dot >= 0) {
+            name = name.substring(dot + 1).trim();
+        }
+        if (name.startsWith("\"") && name.endsWith("\"") && name.length() > 1) {
+            name = name.substring(1, name.length() - 1);
+        }
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    @Getter
+    public static class Entry {
+        private final List<String> columns;
+        private final List<ResultTable> chunks;
+        private final int rowCount;
+        private final boolean truncated;
+        private final Set<String> tables;
+        private final long bytes;
+        private final long createdAt = System.currentTimeMillis();
+
+        Entry(List<String> columns, List<ResultTable> chunks, int rowCount, boolean truncated,
+              Set<String> tables, long bytes) {
+            this.columns = Collections.unmodifiableList(columns);
+            this.chunks = Collections.unmodifiableList(chunks);
+            this.rowCount = rowCount;
+            this.truncated = truncated;
+            this.tables = Collections.unmodifiableSet(tables);
+            this.bytes = bytes;
+        }
+    }
+}
@@ -3,22 +3,48 @@ package org.example.service;
 import lombok.Getter;
 import lombok.Setter;
 import org.example.entity.Query;
+import org.example.entity.ResultTable;
+import org.example.entity.SchemaCatalog;
+import org.example.util.EnvConfig;
 import org.example.util.JsonFileHandler;
 
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 public class QueryService {
     private final DatabaseService databaseService;
     private final List<Query> savedQueries;
+    private final QueryResultCache resultCache = new QueryResultCache();
+    @Getter
+    @Setter
+    private volatile boolean cacheEnabled = EnvConfig.getBoolean("QUERY_CACHE_ENABLED", false);
     private static final String QUERIES_FILE = "saved_queries.json";
+    private static final Pattern SESSION_STATE_PATTERN =
+            Pattern.compile("\\b(search_path|set\\s+schema|reset\\s+all|discard\\s+all)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern DDL_PATTERN =
+            Pattern.compile("\\b(create|alter|drop)\\s+", Pattern.CASE_INSENSITIVE);
+    // SQLSTATE query_canceled: и Statement.cancel(), и statement_timeout
+    private static final String QUERY_CANCELED_STATE = "57014";
+    public static final int DEFAULT_TIMEOUT_SECONDS = EnvConfig.getInt("QUERY_TIMEOUT_SEC", 0);
+    // Общий предел для запросов консоли, если у запроса нет своего таймаута. Только здесь, а не на всех соединениях
+    // пула: бэкап, восстановление, экспорт и импорт на больших таблицах законно работают дольше
+    private static final long STATEMENT_TIMEOUT_MS = EnvConfig.getLong("DB_STATEMENT_TIMEOUT_MS", 0);
+    // Запросы, возвращающие строки, читаются курсором порциями по FETCH_SIZE
+    private static final Pattern ROW_QUERY_PATTERN =
+            Pattern.compile("^\\s*\\(?\\s*(select|with|values|table)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern DML_PATTERN =
+            Pattern.compile("\\b(insert|update|delete|merge|truncate)\\b", Pattern.CASE_INSENSITIVE);
+    private static final int FETCH_SIZE = EnvConfig.getInt("QUERY_FETCH_SIZE", 500);
+    private static final int MAX_ROWS = Math.min(Integer.MAX_VALUE - 1, EnvConfig.getInt("QUERY_MAX_ROWS", 100_000));
 
     public QueryService(DatabaseService databaseService) {
         this.databaseService = databaseService;
         this.savedQueries = loadSavedQueries();
+        databaseService.addTableChangeListener(resultCache::invalidateTable);
 
         if (savedQueries.isEmpty()) {
             initializeSampleQueries();
@@ -54,55 +80,236 @@ public class QueryService {
     }
 
     public QueryResult executeQuery(String sqlQuery) {
+        return executeQuery(sqlQuery, new QueryExecution(DEFAULT_TIMEOUT_SECONDS));
+    }
+
+    public QueryResult executeQuery(String sqlQuery, QueryExecution execution) {
+        ResultTable[] data = new ResultTable[1];
+        // Одна порция на весь результат
+        QueryResult result = execute(sqlQuery, execution, chunk -> data[0] = chunk, Integer.MAX_VALUE);
+        result.setData(data[0]);
+        return result;
+    }
+
+    // Строки отдаются потребителю порциями по мере чтения курсора и в результате не сохраняются.
+    // Потребитель вызывается в потоке, выполняющем запрос
+    public QueryResult executeQuery(String sqlQuery, QueryExecution execution, RowConsumer consumer) {
+        int chunkRows = FETCH_SIZE > 0 ? FETCH_SIZE : 500;
+        boolean cacheable = cacheEnabled && ROW_QUERY_PATTERN.matcher(sqlQuery).find()
+                && !DML_PATTERN.matcher(sqlQuery).find() && resultCache.isCacheable(sqlQuery);
+        if (!cacheable) {
+            return execute(sqlQuery, execution, consumer, chunkRows);
+        }
+
+        String schema = databaseService.getCurrentSchema();
+        QueryResultCache.Entry cached = resultCache.get(schema, sqlQuery);
+        if (cached != null) {
+            return replayCached(cached, execution, consumer);
+        }
+
+        long version = resultCache.getVersion();
+        List<ResultTable> chunks = new ArrayList<>();
+        QueryResult result = execute(sqlQuery, execution, new RowConsumer() {
+            @Override
+            public void onColumns(List<String> columns) {
+                consumer.onColumns(columns);
+            }
+
+            @Override
+            public void onRows(ResultTable rows) {
+                chunks.add(rows);
+                consumer.onRows(rows);
+            }
+        }, chunkRows);
+
+        if (result.isSuccess() && !execution.isCancelled()) {
+            resultCache.put(schema, sqlQuery, result.getColumns(), chunks, result.getRowCount(),
+                    result.isTruncated(), cachedTables(sqlQuery), version);
+        }
+        return result;
+    }
+
+    private QueryResult replayCached(QueryResultCache.Entry cached, QueryExecution execution, RowConsumer consumer) {
+        execution.start();
+        QueryResult result = new QueryResult();
+        result.getColumns().addAll(cached.getColumns());
+        consumer.onColumns(result.getColumns());
+        for (ResultTable chunk : cached.getChunks()) {
+            consumer.onRows(chunk);
+        }
+        result.setRowCount(cached.getRowCount());
+        result.setTruncated(cached.isTruncated());
+        result.setFromCache(true);
+        result.setSuccess(true);
+        result.setMessage("Запрос выполнен успешно (из кэша). Найдено строк: " + cached.getRowCount() +
+                (cached.isTruncated() ? " (показаны первые " + MAX_ROWS + ")" : ""));
+        result.setElapsedMillis(execution.getElapsedMillis());
+        return result;
+    }
+
+    // Таблицы, при изменении которых запись сбрасывается. Если в запросе есть что-то кроме таблиц
+    // текущей схемы (представление, CTE, таблица другой схемы), запись сбрасывается при любом изменении
+    private Set<String> cachedTables(String sqlQuery) {
+        Set<String> tables = QueryResultCache.referencedTables(sqlQuery);
+        try {
+            SchemaCatalog catalog = databaseService.getCatalog();
+            for (String table : tables) {
+                if (!catalog.containsTable(table)) {
+                    return Collections.emptySet();
+                }
+            }
+            return tables;
+        } catch (SQLException e) {
+            return Collections.emptySet();
+        }
+    }
+
+    public void clearResultCache() {
+        resultCache.invalidateAll();
+    }
+
+    public String getResultCacheStats() {
+        return resultCache.getStats();
+    }
+
+    private QueryResult execute(String sqlQuery, QueryExecution execution, RowConsumer consumer, int chunkRows) {
         QueryResult result = new QueryResult();
+        execution.start();
 
         try (Connection conn = databaseService.getConnection()) {
+            if (SESSION_STATE_PATTERN.matcher(sqlQuery).find()) {
+                databaseService.invalidateSessionState(conn);
+            }
 
+            boolean timeoutSet = false;
+            // Курсор с fetch size драйвер открывает только вне autocommit; DDL и прочее оставляем в autocommit
+            boolean streaming = FETCH_SIZE > 0 && ROW_QUERY_PATTERN.matcher(sqlQuery).find();
             try (PreparedStatement statement = conn.prepareStatement(sqlQuery)) {
+                long timeoutMs = execution.getTimeoutSeconds() > 0
+                        ? execution.getTimeoutSeconds() * 1000L
+                        : STATEMENT_TIMEOUT_MS;
+                if (timeoutMs > 0) {
+                    try (Statement st = conn.createStatement()) {
+                        st.execute("SET statement_timeout = " + timeoutMs);
+                    }
+                    timeoutSet = true;
+                }
+                if (streaming) {
+                    conn.setAutoCommit(false);
+                    statement.setFetchSize(FETCH_SIZE);
+                }
+                if (MAX_ROWS > 0) {
+                    // На одну строку больше лимита - чтобы знать, что результат обрезан
+                    statement.setMaxRows(MAX_ROWS + 1);
+                }
 
+                execution.attach(statement);
                 boolean hasResults = statement.execute();
 
+                if (DDL_PATTERN.matcher(sqlQuery).find()) {
+                    databaseService.getMetadataCache().invalidateSchema(databaseService.getCurrentSchema());
+                }
+                if (!streaming || DML_PATTERN.matcher(sqlQuery).find()) {
+                    // Произвольный оператор из консоли мог изменить любые таблицы
+                    databaseService.fireTableChanged(null);
+                }
+
                 if (hasResults) {
                     try (ResultSet resultSet = statement.getResultSet()) {
-                        ResultSetMetaData metaData = resultSet.getMetaData();
-                        int columnCount = metaData.getColumnCount();
-
-                        for (int i = 1; i <= columnCount; i++) {
-                            result.getColumns().add(metaData.getColumnName(i));
-                        }
-
-                        while (resultSet.next()) {
-                            Map<String, Object> row = new LinkedHashMap<>();
-                            for (int i = 1; i <= columnCount; i++) {
-                                String columnName = metaData.getColumnName(i);
-                                row.put(columnName, resultSet.getObject(i));
-                            }
-                            result.getData().add(row);
-                        }
-
-                        result.setSuccess(true);
-                        result.setMessage("Запрос выполнен успешно. Найдено строк: " + result.getData().size());
+                        readRows(resultSet, execution, consumer, chunkRows, result);
                     }
+                    result.setSuccess(true);
+                    result.setMessage("Запрос выполнен успешно. Найдено строк: " + result.getRowCount() +
+                            (result.isTruncated() ? " (показаны первые " + MAX_ROWS + ")" : ""));
                 } else {
                     int affectedRows = statement.getUpdateCount();
                     result.setSuccess(true);
                     result.setMessage("Запрос выполнен. Затронуто строк: " + affectedRows);
                 }
+
+                if (streaming) {
+                    conn.commit();
+                }
+            } finally {
+                execution.detach();
+                if (streaming) {
+                    endTransaction(conn);
+                }
+                if (timeoutSet) {
+                    resetStatementTimeout(conn);
+                }
             }
 
         } catch (SQLException e) {
             result.setSuccess(false);
-            result.setMessage("Ошибка выполнения запроса: " + e.getMessage());
-            e.printStackTrace();
+            if (execution.isCancelled()) {
+                result.setMessage("Запрос отменен");
+            } else if (QUERY_CANCELED_STATE.equals(e.getSQLState())) {
+                result.setMessage("Запрос прерван по таймауту (statement_timeout): " + e.getMessage());
+            } else {
+                result.setMessage("Ошибка выполнения запроса: " + e.getMessage());
+                e.printStackTrace();
+            }
         } catch (Exception e) {
             result.setSuccess(false);
             result.setMessage("Неожиданная ошибка: " + e.getMessage());
             e.printStackTrace();
         }
 
+        result.setElapsedMillis(execution.getElapsedMillis());
         return result;
     }
 
+    private void readRows(ResultSet resultSet, QueryExecution execution, RowConsumer consumer,
+                          int chunkRows, QueryResult result) throws SQLException {
+        ResultTable chunk = ResultTable.forResultSet(resultSet.getMetaData());
+        result.getColumns().addAll(chunk.getColumns());
+        consumer.onColumns(result.getColumns());
+
+        int rowCount = 0;
+        while (resultSet.next()) {
+            if (MAX_ROWS > 0 && rowCount >= MAX_ROWS) {
+                // Дальше не читаем: курсор закроется вместе с транзакцией
+                result.setTruncated(true);
+                break;
+            }
+            if (execution.isCancelled()) {
+                break;
+            }
+
+            chunk.appendRow(resultSet);
+            rowCount++;
+
+            if (chunk.getRowCount() >= chunkRows) {
+                consumer.onRows(chunk);
+                chunk = chunk.emptyCopy();
+            }
+        }
+        if (chunk.getRowCount() > 0 || rowCount == 0) {
+            consumer.onRows(chunk);
+        }
+        result.setRowCount(rowCount);
+    }
+
+    private void endTransaction(Connection conn) {
+        try {
+            // После успешного commit откатывать нечего; после ошибки - снимаем прерванную транзакцию
+            conn.rollback();
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            System.err.println("Failed to end streaming transaction: " + e.getMessage());
+        }
+    }
+
+    private void resetStatementTimeout(Connection conn) {
+        try (Statement st = conn.createStatement()) {
+            st.execute("RESET statement_timeout");
+        } catch (SQLException e) {
+            // Соединение могло оборваться; при следующей выдаче пул его проверит
+            System.err.println("Failed to reset statement_timeout: " + e.getMessage());
+        }
+    }
+
     public void saveQuery(String name, String query, String description) {
         deleteSavedQuery(name);
 
@@ -129,12 +336,78 @@ public class QueryService {
         private boolean success;
         @Setter
         private String message;
+        @Setter
+        private long elapsedMillis;
+        @Setter
+        private int rowCount;
+        // Строк было больше QUERY_MAX_ROWS, чтение остановлено
+        @Setter
+        private boolean truncated;
+        @Setter
+        private boolean fromCache;
         private final List<String> columns;
-        private final List<Map<String, Object>> data;
+        // Заполняется только при выполнении без потребителя строк
+        @Setter
+        private ResultTable data;
 
         public QueryResult() {
             this.columns = new ArrayList<>();
-            this.data = new ArrayList<>();
+        }
+    }
+
+    public interface RowConsumer {
+        default void onColumns(List<String> columns) {
+        }
+
+        // Порция строк; после передачи потребителю больше не изменяется
+        void onRows(ResultTable rows);
+    }
+
+    // Дескриптор выполняемого запроса: позволяет прервать его из другого потока через Statement.cancel()
+    public static class QueryExecution {
+        @Getter
+        private final int timeoutSeconds;
+        private volatile long startedAt;
+        private volatile Statement statement;
+        private volatile boolean cancelled;
+
+        public QueryExecution(int timeoutSeconds) {
+            this.timeoutSeconds = Math.max(0, timeoutSeconds);
+        }
+
+        void start() {
+            startedAt = System.currentTimeMillis();
+        }
+
+        void attach(Statement statement) throws SQLException {
+            if (cancelled) {
+                throw new SQLException("Query cancelled before start", QUERY_CANCELED_STATE);
+            }
+            this.statement = statement;
+        }
+
+        void detach() {
+            statement = null;
+        }
+
+        public void cancel() {
+            cancelled = true;
+            Statement current = statement;
+            if (current != null) {
+                try {
+                    current.cancel();
+                } catch (SQLException e) {
+                    System.err.println("Failed to cancel query: " + e.getMessage());
+                }
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public long getElapsedMillis() {
+            return startedAt == 0 ? 0 : System.currentTimeMillis() - startedAt;
         }
     }
 }
@@ -1,52 +1,37 @@
 package org.example.service;
 
 import org.example.entity.Column;
+import org.example.entity.SchemaCatalog;
 import org.example.entity.Table;
+import org.example.util.EnvConfig;
 
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class TableService {
+    // Сколько строк копится в одном PreparedStatement до executeBatch
+    private static final int BATCH_SIZE = Math.max(1, EnvConfig.getInt("DB_BATCH_SIZE", 500));
+
     private final DatabaseService databaseService;
+    private final MetadataCache metadataCache;
 
     public TableService(DatabaseService databaseService) {
         this.databaseService = databaseService;
+        this.metadataCache = databaseService.getMetadataCache();
     }
 
     // ========== МЕТОДЫ ДЛЯ ПОЛУЧЕНИЯ ДАННЫХ ==========
 
     public Table getTableInfo(String tableName) throws SQLException {
-        System.out.println("Loading table info for: " + tableName);
-        System.out.println("Current schema: " + databaseService.getCurrentSchema());
-
-        Table table = new Table(tableName);
-
-        try (Connection conn = databaseService.getConnection()) {
-            DatabaseMetaData metaData = conn.getMetaData();
-
-            try (ResultSet tables = metaData.getTables(null, databaseService.getCurrentSchema(), tableName, new String[]{"TABLE"})) {
-                if (!tables.next()) {
-                    throw new SQLException("Table '" + tableName + "' not found in schema '" + databaseService.getCurrentSchema() + "'");
-                }
-            }
-
-            List<String> primaryKeys = getPrimaryKeys(metaData, tableName);
-            System.out.println("Primary keys: " + primaryKeys);
-
-            Map<String, String[]> foreignKeys = getForeignKeys(metaData, tableName);
-            System.out.println("Foreign keys: " + foreignKeys);
-
-            getColumnInfo(metaData, tableName, table, primaryKeys, foreignKeys);
-
-            System.out.println("Loaded " + table.getColumns().size() + " columns");
-        } catch (SQLException e) {
-            System.err.println("SQL Error in getTableInfo: " + e.getMessage());
-            throw e;
+        Table table = databaseService.getCatalog().getTable(tableName);
+        if (table == null) {
+            throw new SQLException("Table '" + tableName + "' not found in schema '" + databaseService.getCurrentSchema() + "'");
         }
-
         return table;
     }
 
@@ -54,26 +39,141 @@ public class TableService {
 
     public boolean insertData(String tableName, Map<String, Object> values) throws SQLException {
         validateRequiredFields(tableName, values);
-        return executeInsert(tableName, values);
+        boolean inserted = executeInsert(tableName, values);
+        notifyTableChanged(tableName, false);
+        return inserted;
     }
 
     public boolean updateData(String tableName, Map<String, Object> oldData, Map<String, Object> newData) throws SQLException {
         String primaryKey = findPrimaryKeyColumn(tableName);
 
+        boolean updated;
         if (primaryKey != null && oldData.containsKey(primaryKey)) {
-            return executeUpdateByPrimaryKey(tableName, newData, primaryKey, oldData.get(primaryKey));
+            updated = executeUpdateByPrimaryKey(tableName, newData, primaryKey, oldData.get(primaryKey));
         } else {
-            return executeUpdateByAllFields(tableName, oldData, newData);
+            updated = executeUpdateByAllFields(tableName, oldData, newData);
         }
+        notifyTableChanged(tableName, true);
+        return updated;
     }
 
     public boolean deleteData(String tableName, Map<String, Object> recordData) throws SQLException {
         String primaryKey = findPrimaryKeyColumn(tableName);
 
+        boolean deleted;
         if (primaryKey != null && recordData.containsKey(primaryKey)) {
-            return executeDeleteByPrimaryKey(tableName, primaryKey, recordData.get(primaryKey));
+            deleted = executeDeleteByPrimaryKey(tableName, primaryKey, recordData.get(primaryKey));
         } else {
-            return executeDeleteByAllFields(tableName, recordData);
+            deleted = executeDeleteByAllFields(tableName, recordData);
+        }
+        notifyTableChanged(tableName, true);
+        return deleted;
+    }
+
+    // ========== ПАКЕТНЫЕ CRUD ОПЕРАЦИИ ==========
+    // Все строки пишутся через одно соединение в одной транзакции: при ошибке не применяется ни одна.
+    // Подряд идущие строки с одинаковым SQL идут в один PreparedStatement через addBatch, порядок строк сохраняется
+
+    // Строки группируются по набору столбцов: на каждый набор - один PreparedStatement (и с
+    // reWriteBatchedInserts - многострочные INSERT), внутри набора порядок строк сохраняется.
+    // Структура таблицы для проверки обязательных полей читается один раз на пакет
+    public int insertBatch(String tableName, List<Map<String, Object>> rows) throws SQLException {
+        Table tableInfo = getTableInfo(tableName);
+        Map<Set<String>, List<Map<String, Object>>> byColumns = new LinkedHashMap<>();
+        for (Map<String, Object> values : rows) {
+            validateRequiredFields(tableInfo, values);
+            byColumns.computeIfAbsent(new HashSet<>(values.keySet()), columns -> new ArrayList<>()).add(values);
+        }
+
+        List<BatchRow> batch = new ArrayList<>(rows.size());
+        for (List<Map<String, Object>> group : byColumns.values()) {
+            List<String> columns = new ArrayList<>(group.get(0).keySet());
+            String sql = buildInsertSQL(tableName, group.get(0));
+            for (Map<String, Object> values : group) {
+                List<Object> parameters = new ArrayList<>(columns.size());
+                for (String column : columns) {
+                    parameters.add(values.get(column));
+                }
+                batch.add(new BatchRow(sql, parameters));
+            }
+        }
+        int inserted = executeBatch(batch);
+        notifyTableChanged(tableName, false);
+        return inserted;
+    }
+
+    // newRows.get(i) - новые значения для oldRows.get(i); первичный ключ в newRows игнорируется
+    public int updateBatch(String tableName, List<Map<String, Object>> oldRows,
+                           List<Map<String, Object>> newRows) throws SQLException {
+        if (oldRows.size() != newRows.size()) {
+            throw new IllegalArgumentException("oldRows and newRows must have the same size");
+        }
+        String primaryKey = findPrimaryKeyColumn(tableName);
+
+        List<BatchRow> batch = new ArrayList<>(oldRows.size());
+        for (int i = 0; i < oldRows.size(); i++) {
+            Map<String, Object> oldData = oldRows.get(i);
+            Map<String, Object> newData = newRows.get(i);
+            List<Object> parameters = new ArrayList<>();
+            if (primaryKey != null && oldData.containsKey(primaryKey)) {
+                for (Map.Entry<String, Object> entry : newData.entrySet()) {
+                    if (!entry.getKey().equals(primaryKey)) {
+                        parameters.add(entry.getValue());
+                    }
+                }
+                if (parameters.isEmpty()) {
+                    continue;
+                }
+                parameters.add(oldData.get(primaryKey));
+                batch.add(new BatchRow(buildUpdateSQLByPrimaryKey(tableName, newData, primaryKey), parameters));
+            } else {
+                parameters.addAll(newData.values());
+                parameters.addAll(oldData.values());
+                batch.add(new BatchRow(buildUpdateSQLByAllFields(tableName, oldData, newData), parameters));
+            }
+        }
+        int updated = executeBatch(batch);
+        notifyTableChanged(tableName, true);
+        return updated;
+    }
+
+    public int deleteBatch(String tableName, List<Map<String, Object>> rows) throws SQLException {
+        String primaryKey = findPrimaryKeyColumn(tableName);
+
+        List<BatchRow> batch = new ArrayList<>(rows.size());
+        for (Map<String, Object> recordData : rows) {
+            if (primaryKey != null && recordData.containsKey(primaryKey)) {
+                List<Object> parameters = new ArrayList<>();
+                parameters.add(recordData.get(primaryKey));
+                batch.add(new BatchRow(buildDeleteSQLByPrimaryKey(tableName, primaryKey), parameters));
+            } else {
+                batch.add(new BatchRow(buildDeleteSQLByAllFields(tableName, recordData),
+                        new ArrayList<>(recordData.values())));
+            }
+        }
+        int deleted = executeBatch(batch);
+        notifyTableChanged(tableName, true);
+        return deleted;
+    }
+
+    // ON UPDATE/ON DELETE CASCADE меняют и таблицы, ссылающиеся на измененную
+    private void notifyTableChanged(String tableName, boolean withReferencing) {
+        databaseService.fireTableChanged(tableName);
+        if (!withReferencing) {
+            return;
+        }
+        try {
+            SchemaCatalog catalog = databaseService.getCatalog();
+            for (String name : catalog.getTableNames()) {
+                for (Column column : catalog.getTable(name).getColumns()) {
+                    if (tableName.equals(column.getForeignKeyTable())) {
+                        databaseService.fireTableChanged(name);
+                        break;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            databaseService.fireTableChanged(null);
         }
     }
 
@@ -136,6 +236,85 @@ public class TableService {
         }
     }
 
+    // Возвращает число затронутых строк. С reWriteBatchedInserts драйвер не сообщает счетчики
+    // (SUCCESS_NO_INFO) - такие строки считаются записанными
+    private int executeBatch(List<BatchRow> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        try (Connection conn = databaseService.getConnection()) {
+            conn.setAutoCommit(false);
+            PreparedStatement statement = null;
+            String statementSql = null;
+            int pending = 0;
+            int affected = 0;
+            try {
+                for (BatchRow row : rows) {
+                    if (!row.sql.equals(statementSql)) {
+                        // SQL сменился - накопленный пакет выполняется до следующей строки
+                        if (pending > 0) {
+                            affected += countAffected(statement.executeBatch());
+                            pending = 0;
+                        }
+                        if (statement != null) {
+                            statement.close();
+                        }
+                        statement = conn.prepareStatement(row.sql);
+                        statementSql = row.sql;
+                    }
+                    setParameters(statement, row.parameters);
+                    statement.addBatch();
+                    if (++pending >= BATCH_SIZE) {
+                        affected += countAffected(statement.executeBatch());
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    affected += countAffected(statement.executeBatch());
+                }
+                conn.commit();
+                return affected;
+            } catch (SQLException | RuntimeException e) {
+                // Откат до finally: setAutoCommit(true) зафиксировал бы уже выполненную часть пакета
+                conn.rollback();
+                // Реальная причина ошибки пакета лежит в getNextException
+                if (e instanceof BatchUpdateException && ((SQLException) e).getNextException() != null) {
+                    SQLException cause = ((SQLException) e).getNextException();
+                    throw new SQLException(cause.getMessage(), cause.getSQLState(), e);
+                }
+                throw e;
+            } finally {
+                if (statement != null) {
+                    statement.close();
+                }
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static int countAffected(int[] counts) {
+        int affected = 0;
+        for (int count : counts) {
+            if (count == Statement.SUCCESS_NO_INFO) {
+                affected++;
+            } else if (count > 0) {
+                affected += count;
+            }
+        }
+        return affected;
+    }
+
+    private static class BatchRow {
+        private final String sql;
+        private final List<Object> parameters;
+
+        BatchRow(String sql, List<Object> parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+    }
+
     // ========== ПОСТРОЕНИЕ SQL ЗАПРОСОВ ==========
 
     private String buildInsertSQL(String tableName, Map<String, Object> values) {
@@ -205,7 +384,10 @@ public class TableService {
     // ========== ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ==========
 
     private void validateRequiredFields(String tableName, Map<String, Object> values) throws SQLException {
-        Table tableInfo = getTableInfo(tableName);
+        validateRequiredFields(getTableInfo(tableName), values);
+    }
+
+    private void validateRequiredFields(Table tableInfo, Map<String, Object> values) throws SQLException {
         for (Column column : tableInfo.getColumns()) {
             if (!column.isNullable() && column.getDefaultValue() == null &&
                     !values.containsKey(column.getName())) {
@@ -215,79 +397,24 @@ public class TableService {
     }
 
     public String findPrimaryKeyColumn(String tableName) throws SQLException {
-        try (Connection conn = databaseService.getConnection()) {
-            DatabaseMetaData metaData = conn.getMetaData();
-            try (ResultSet pkResult = metaData.getPrimaryKeys(null, databaseService.getCurrentSchema(), tableName)) {
-                if (pkResult.next()) {
-                    return pkResult.getString("COLUMN_NAME");
-                }
+        for (Column column : getTableInfo(tableName).getColumns()) {
+            if (column.isPrimaryKey()) {
+                return column.getName();
             }
         }
         return null;
     }
 
+    public void clearMetadataCache() {
+        metadataCache.invalidateSchema(databaseService.getCurrentSchema());
+    }
+
     private void setParameters(PreparedStatement statement, List<Object> parameters) throws SQLException {
         for (int i = 0; i < parameters.size(); i++) {
             statement.setObject(i + 1, parameters.get(i));
         }
     }
 
-    // ========== МЕТАДАННЫЕ ТАБЛИЦ ==========
-
-    private List<String> getPrimaryKeys(DatabaseMetaData metaData, String tableName) throws SQLException {
-        List<String> primaryKeys = new ArrayList<>();
-        try (ResultSet pkResult = metaData.getPrimaryKeys(null, databaseService.getCurrentSchema(), tableName)) {
-            while (pkResult.next()) {
-                primaryKeys.add(pkResult.getString("COLUMN_NAME"));
-            }
-        }
-        return primaryKeys;
-    }
-
-    private Map<String, String[]> getForeignKeys(DatabaseMetaData metaData, String tableName) throws SQLException {
-        Map<String, String[]> foreignKeys = new HashMap<>();
-        try (ResultSet fkResult = metaData.getImportedKeys(null, databaseService.getCurrentSchema(), tableName)) {
-            while (fkResult.next()) {
-                String fkColumn = fkResult.getString("FKCOLUMN_NAME");
-                String pkTable = fkResult.getString("PKTABLE_NAME");
-                String pkColumn = fkResult.getString("PKCOLUMN_NAME");
-                foreignKeys.put(fkColumn, new String[]{pkTable, pkColumn});
-            }
-        }
-        return foreignKeys;
-    }
-
-    private void getColumnInfo(DatabaseMetaData metaData, String tableName, Table table,
-                               List<String> primaryKeys, Map<String, String[]> foreignKeys) throws SQLException {
-        try (ResultSet columnsResult = metaData.getColumns(null, databaseService.getCurrentSchema(), tableName, null)) {
-            if (!columnsResult.isBeforeFirst()) {
-                throw new SQLException("No columns found for table '" + tableName + "' in schema '" + databaseService.getCurrentSchema() + "'");
-            }
-
-            while (columnsResult.next()) {
-                String columnName = columnsResult.getString("COLUMN_NAME");
-                String columnType = columnsResult.getString("TYPE_NAME");
-                String defaultValue = columnsResult.getString("COLUMN_DEF");
-                String isNullable = columnsResult.getString("IS_NULLABLE");
-
-                System.out.println("Column: " + columnName + ", Type: " + columnType + ", Nullable: " + isNullable);
-
-                Column column = new Column(columnName, columnType);
-                column.setPrimaryKey(primaryKeys.contains(columnName));
-                column.setNullable("YES".equals(isNullable));
-                column.setDefaultValue(defaultValue);
-
-                if (foreignKeys.containsKey(columnName)) {
-                    String[] fkInfo = foreignKeys.get(columnName);
-                    column.setForeignKeyTable(fkInfo[0]);
-                    column.setForeignKeyColumn(fkInfo[1]);
-                }
-
-                table.addColumn(column);
-            }
-        }
-    }
-
     // ========== ОПЕРАЦИИ С СТРУКТУРОЙ ТАБЛИЦ ==========
 
     public boolean createTable(String tableName, List<Column> columns) throws SQLException {
@@ -296,6 +423,8 @@ public class TableService {
 
             String sql = buildCreateTableSQL(tableName, columns);
             statement.execute(sql);
+            metadataCache.invalidateSchema(databaseService.getCurrentSchema());
+            databaseService.fireTableChanged(tableName);
             return true;
         }
     }
@@ -356,6 +485,8 @@ public class TableService {
         try (Connection conn = databaseService.getConnection();
              Statement statement = conn.createStatement()) {
             statement.execute("DROP TABLE " + tableName);
+            metadataCache.invalidateSchema(databaseService.getCurrentSchema());
+            databaseService.fireTableChanged(tableName);
             return true;
         }
     }
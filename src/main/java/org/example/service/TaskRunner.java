@@ -0,0 +1,113 @@
+package org.example.service;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import org.example.util.EnvConfig;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Выполняет обращения к БД в фоновых потоках; результат, ошибка и прогресс доставляются в FX-поток
+public class TaskRunner {
+
+    @FunctionalInterface
+    public interface Job<T> {
+        T run(ProgressListener progress) throws Exception;
+    }
+
+    private final ExecutorService executor;
+    private final ObservableList<Task<?>> runningTasks = FXCollections.observableArrayList();
+
+    public TaskRunner() {
+        int threads = Math.max(1, EnvConfig.getInt("TASK_THREADS", 4));
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "db-task-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Задачи в работе, последняя - в конце списка. Меняется только в FX-потоке
+    public ObservableList<Task<?>> getRunningTasks() {
+        return runningTasks;
+    }
+
+    public <T> Task<T> submit(String title, Job<T> job, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        JobTask<T> task = new JobTask<>(title, job);
+
+        task.setOnSucceeded(e -> {
+            runningTasks.remove(task);
+            if (onSuccess != null) onSuccess.accept(task.getValue());
+        });
+        task.setOnFailed(e -> {
+            runningTasks.remove(task);
+            Throwable error = task.getException();
+            if (onError != null) {
+                onError.accept(error);
+            } else {
+                System.err.println("Task '" + title + "' failed: " + error.getMessage());
+            }
+        });
+        task.setOnCancelled(e -> runningTasks.remove(task));
+
+        runOnFxThread(() -> runningTasks.add(task));
+        executor.execute(task);
+        return task;
+    }
+
+    public void cancelAll() {
+        runOnFxThread(() -> {
+            for (Task<?> task : runningTasks.toArray(new Task<?>[0])) {
+                task.cancel(true);
+            }
+        });
+    }
+
+    public void shutdown() {
+        cancelAll();
+        executor.shutdownNow();
+    }
+
+    private static class JobTask<T> extends Task<T> implements ProgressListener {
+        private final String title;
+        private final Job<T> job;
+
+        JobTask(String title, Job<T> job) {
+            this.title = title;
+            this.job = job;
+            updateTitle(title);
+            updateMessage(title);
+        }
+
+        @Override
+        protected T call() throws Exception {
+            T result = job.run(this);
+            if (isCancelled()) {
+                throw new CancellationException(title + " cancelled");
+            }
+            return result;
+        }
+
+        @Override
+        public void progress(long done, long total, String message) {
+            updateProgress(done, total);
+            if (message != null) {
+                updateMessage(message);
+            }
+        }
+    }
+
+    private static void runOnFxThread(Runnable action) {
+        if (Platform.isFxApplicationThread()) {
+            action.run();
+        } else {
+            Platform.runLater(action);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.example.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+// Считает записанные байты и SHA-256 текущего сегмента. closeTarget == false - close() только сбрасывает
+// буферы, нижний поток (например, запись архива) остается открытым
+public class ChecksumOutputStream extends FilterOutputStream {
+    private final boolean closeTarget;
+    private final MessageDigest digest;
+    private long count;
+
+    public ChecksumOutputStream(OutputStream out, boolean closeTarget) {
+        super(out);
+        this.closeTarget = closeTarget;
+        this.digest = sha256();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        digest.update((byte) b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        digest.update(b, off, len);
+        count += len;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    // Начинает новый сегмент: байты до этого места в контрольную сумму не входят
+    public void resetDigest() {
+        digest.reset();
+    }
+
+    // SHA-256 сегмента в hex; после вызова начинается новый сегмент
+    public String finishDigest() {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closeTarget) {
+            super.close();
+        } else {
+            flush();
+        }
+    }
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -12,4 +12,29 @@ public class EnvConfig {
         }
         return value == null ? fallback : value;
     }
+
+    public static int getInt(String key, int fallback) {
+        return (int) getLong(key, fallback);
+    }
+
+    public static long getLong(String key, long fallback) {
+        String value = get(key, null);
+        if (value == null || value.isBlank()) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid numeric value for " + key + ": " + value + ", using " + fallback);
+            return fallback;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean fallback) {
+        String value = get(key, null);
+        if (value == null || value.isBlank()) {
+            return fallback;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
 }
@@ -0,0 +1,162 @@
+package org.example.util;
+
+import org.example.entity.Column;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Строки, скопированные из Excel или другой таблицы: ячейки разделены табуляцией, строки - переводом строки.
+// Первая строка - заголовок, если все ее непустые ячейки - имена столбцов таблицы; иначе ячейки идут
+// по порядку столбцов. Пустая ячейка не попадает в строку - для столбца действует значение по умолчанию.
+// Значения приводятся к типу столбца, чтобы драйвер передал их с нужным типом параметра
+public final class PastedRows {
+    private static final DateTimeFormatter[] DATE_FORMATS = {
+            DateTimeFormatter.ISO_LOCAL_DATE,
+            DateTimeFormatter.ofPattern("dd.MM.yyyy"),
+            DateTimeFormatter.ofPattern("d.M.yyyy")
+    };
+    private static final DateTimeFormatter[] TIMESTAMP_FORMATS = {
+            DateTimeFormatter.ofPattern("yyyy-MM-dd[ ]['T']HH:mm[:ss][.SSSSSS][.SSS][.S]"),
+            DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm[:ss]"),
+            DateTimeFormatter.ofPattern("d.M.yyyy H:mm[:ss]")
+    };
+
+    private PastedRows() {
+    }
+
+    // IllegalArgumentException - с номером строки и столбцом, если значение не подходит к типу
+    public static List<Map<String, Object>> parse(String text, List<Column> columns) {
+        List<String[]> lines = new ArrayList<>();
+        for (String line : text.split("\r?\n")) {
+            if (!line.isBlank()) {
+                lines.add(line.split("\t", -1));
+            }
+        }
+        if (lines.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<String, Column> byName = new HashMap<>();
+        for (Column column : columns) {
+            byName.put(column.getName().toLowerCase(Locale.ROOT), column);
+        }
+        List<Column> targets = headerColumns(lines.get(0), byName);
+        int first = 1;
+        if (targets == null) {
+            targets = columns;
+            first = 0;
+        }
+
+        List<Map<String, Object>> rows = new ArrayList<>(lines.size() - first);
+        for (int i = first; i < lines.size(); i++) {
+            String[] cells = lines.get(i);
+            if (cells.length > targets.size()) {
+                throw new IllegalArgumentException("Строка " + (i + 1) + ": ячеек больше, чем столбцов (" + targets.size() + ")");
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int c = 0; c < cells.length; c++) {
+                Column column = targets.get(c);
+                String value = cells[c].trim();
+                if (column != null && !value.isEmpty()) {
+                    try {
+                        row.put(column.getName(), convert(value, column));
+                    } catch (IllegalArgumentException | DateTimeParseException e) {
+                        throw new IllegalArgumentException("Строка " + (i + 1) + ": '" + value +
+                                "' не подходит для столбца " + column.getName() + " (" + column.getType() + ")");
+                    }
+                }
+            }
+            if (!row.isEmpty()) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    // null - первая строка не заголовок; пустые ячейки заголовка пропускают столбец (null в списке)
+    private static List<Column> headerColumns(String[] cells, Map<String, Column> byName) {
+        List<Column> header = new ArrayList<>(cells.length);
+        boolean named = false;
+        for (String cell : cells) {
+            String name = cell.trim().toLowerCase(Locale.ROOT);
+            if (name.isEmpty()) {
+                header.add(null);
+                continue;
+            }
+            Column column = byName.get(name);
+            if (column == null) {
+                return null;
+            }
+            header.add(column);
+            named = true;
+        }
+        return named ? header : null;
+    }
+
+    private static Object convert(String value, Column column) {
+        String type = column.getType() == null ? "" : column.getType().toLowerCase(Locale.ROOT);
+        switch (type) {
+            case "int2":
+            case "int4":
+                return Integer.parseInt(value);
+            case "int8":
+                return Long.parseLong(value);
+            case "numeric":
+                return new BigDecimal(number(value));
+            case "float4":
+            case "float8":
+                return Double.parseDouble(number(value));
+            case "bool":
+                switch (value.toLowerCase(Locale.ROOT)) {
+                    case "true": case "t": case "1": case "yes": case "y": case "да":
+                        return Boolean.TRUE;
+                    case "false": case "f": case "0": case "no": case "n": case "нет":
+                        return Boolean.FALSE;
+                    default:
+                        throw new IllegalArgumentException(value);
+                }
+            case "date":
+                for (DateTimeFormatter format : DATE_FORMATS) {
+                    try {
+                        return LocalDate.parse(value, format);
+                    } catch (DateTimeParseException ignored) {
+                        // пробуем следующий формат
+                    }
+                }
+                throw new IllegalArgumentException(value);
+            case "timestamp":
+            case "timestamptz":
+                for (DateTimeFormatter format : TIMESTAMP_FORMATS) {
+                    try {
+                        return LocalDateTime.parse(value, format);
+                    } catch (DateTimeParseException ignored) {
+                        // пробуем следующий формат
+                    }
+                }
+                for (DateTimeFormatter format : DATE_FORMATS) {
+                    try {
+                        return LocalDate.parse(value, format).atStartOfDay();
+                    } catch (DateTimeParseException ignored) {
+                        // пробуем следующий формат
+                    }
+                }
+                throw new IllegalArgumentException(value);
+            default:
+                return value;
+        }
+    }
+
+    // Excel с русской локалью пишет дробную часть через запятую и разделяет разряды пробелами
+    private static String number(String value) {
+        return value.replaceAll("[\\s\\u00A0\\u202F]", "").replace(',', '.');
+    }
+}
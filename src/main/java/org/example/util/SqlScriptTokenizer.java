@@ -0,0 +1,412 @@
+package org.example.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Делит SQL-скрипт на операторы прямо по байтам, без построчного чтения и сборки строк.
+// ';' считается концом оператора только вне строк ('...', E'...'), идентификаторов в кавычках,
+// $tag$-строк и комментариев. Файл читается через отображение в память окнами, поток (.sql.gz,
+// запись архива) - через буфер; в обоих случаях в памяти держится только текущий оператор.
+// Смещения - абсолютные позиции в байтах от начала скрипта
+public class SqlScriptTokenizer implements Closeable {
+    private static final int MAPPED_WINDOW_SIZE = 256 << 20;
+    private static final int STREAM_BUFFER_SIZE = 1 << 20;
+    // Байты, на которых сканирование останавливается; все остальное пропускается плотным циклом по окну
+    private static final boolean[] STATEMENT_STOPS = stops(";'\"-/$");
+    private static final boolean[] STRING_STOPS = stops("'");
+    private static final boolean[] ESCAPE_STRING_STOPS = stops("'\\");
+    private static final boolean[] IDENTIFIER_STOPS = stops("\"");
+    private static final boolean[] LINE_STOPS = stops("\n");
+    private static final boolean[] DOLLAR_STOPS = stops("$");
+
+    private final FileChannel file;
+    private final long fileSize;
+    private final ReadableByteChannel stream;
+    private boolean streamDrained;
+
+    private ByteBuffer window;
+    private long windowStart;
+
+    private long position;
+    // -1 - оператор не начат, окно можно сдвигать без оглядки на него
+    private long start = -1;
+    private long bodyEnd;
+
+    private SqlScriptTokenizer(FileChannel file, ReadableByteChannel stream) throws IOException {
+        this.file = file;
+        this.fileSize = file != null ? file.size() : 0;
+        this.stream = stream;
+        this.window = file != null ? ByteBuffer.allocate(0) : ByteBuffer.allocate(STREAM_BUFFER_SIZE).limit(0);
+    }
+
+    public static SqlScriptTokenizer map(Path path) throws IOException {
+        return new SqlScriptTokenizer(FileChannel.open(path, StandardOpenOption.READ), null);
+    }
+
+    public static SqlScriptTokenizer stream(InputStream in) throws IOException {
+        return new SqlScriptTokenizer(null, Channels.newChannel(in));
+    }
+
+    // Переходит к следующему оператору; false - скрипт закончился
+    public boolean next() throws IOException {
+        start = -1;
+        long pos = skipBlank(position);
+        if (at(pos) < 0) {
+            position = pos;
+            return false;
+        }
+        start = pos;
+        int c;
+        while ((c = at(pos = scan(pos, STATEMENT_STOPS))) >= 0) {
+            switch (c) {
+                case ';':
+                    bodyEnd = pos;
+                    position = lineEnd(pos + 1);
+                    return true;
+                case '\'':
+                    pos = skipQuoted(pos + 1, '\'', isEscapeString(pos));
+                    continue;
+                case '"':
+                    pos = skipQuoted(pos + 1, '"', false);
+                    continue;
+                case '-':
+                    if (at(pos + 1) == '-') {
+                        pos = skipLine(pos + 2);
+                        continue;
+                    }
+                    break;
+                case '/':
+                    if (at(pos + 1) == '*') {
+                        pos = skipBlockComment(pos + 2);
+                        continue;
+                    }
+                    break;
+                case '$':
+                    long closed = skipDollarQuoted(pos);
+                    if (closed > 0) {
+                        pos = closed;
+                        continue;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            pos++;
+        }
+        // Последний оператор без ';'
+        bodyEnd = pos;
+        position = pos;
+        return true;
+    }
+
+    // Начало текущего оператора
+    public long getStart() {
+        return start;
+    }
+
+    // Позиция после ';' и остатка его строки (если там только пробелы) - отсюда начинается следующий оператор
+    // или данные COPY ... FROM stdin
+    public long getPosition() {
+        return position;
+    }
+
+    // Байты оператора без ';' - представление окна без копирования; действительно до следующего вызова next()
+    public ByteBuffer slice() {
+        return window.duplicate().position((int) (start - windowStart)).limit((int) (bodyEnd - windowStart)).slice();
+    }
+
+    public String text() {
+        return decode(slice()).trim();
+    }
+
+    // Сравнение начала оператора с байтами без раскодирования
+    public boolean startsWith(byte[] prefix) {
+        if (bodyEnd - start < prefix.length) {
+            return false;
+        }
+        int offset = (int) (start - windowStart);
+        for (int i = 0; i < prefix.length; i++) {
+            if (window.get(offset + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Начало оператора - чтобы узнать его вид, не раскодируя длинный INSERT целиком
+    public String head(int maxBytes) {
+        ByteBuffer slice = slice();
+        if (slice.remaining() > maxBytes) {
+            slice.limit(maxBytes);
+        }
+        return decode(slice);
+    }
+
+    // new String по массиву заметно быстрее Charset.decode по буферу на миллионах коротких операторов
+    private static String decode(ByteBuffer bytes) {
+        byte[] copy = new byte[bytes.remaining()];
+        bytes.get(copy);
+        return new String(copy, StandardCharsets.UTF_8);
+    }
+
+    // Пропускает данные после COPY ... FROM stdin до строки "\." и возвращает позицию конца данных;
+    // данные начинаются с getPosition() до вызова
+    public long skipCopyData() throws IOException {
+        start = -1;
+        long lineStart = position;
+        while (true) {
+            int c = at(lineStart);
+            if (c < 0) {
+                throw new IOException("Unexpected end of script inside COPY data at byte " + position);
+            }
+            if (c == '\\' && at(lineStart + 1) == '.') {
+                long after = lineStart + 2;
+                if (at(after) == '\r') {
+                    after++;
+                }
+                int terminator = at(after);
+                if (terminator == '\n' || terminator < 0) {
+                    position = terminator < 0 ? after : after + 1;
+                    return lineStart;
+                }
+            }
+            lineStart = skipLine(lineStart);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            file.close();
+        } else {
+            stream.close();
+        }
+    }
+
+    // Пробелы и комментарии между операторами
+    private long skipBlank(long pos) throws IOException {
+        while (true) {
+            int c = at(pos);
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\f') {
+                pos++;
+            } else if (c == '-' && at(pos + 1) == '-') {
+                pos = skipLine(pos + 2);
+            } else if (c == '/' && at(pos + 1) == '*') {
+                pos = skipBlockComment(pos + 2);
+            } else {
+                return pos;
+            }
+        }
+    }
+
+    private long skipLine(long pos) throws IOException {
+        pos = scan(pos, LINE_STOPS);
+        return at(pos) < 0 ? pos : pos + 1;
+    }
+
+    // Комментарии /* */ в PostgreSQL могут быть вложенными
+    private long skipBlockComment(long pos) throws IOException {
+        int depth = 1;
+        int c;
+        while ((c = at(pos)) >= 0) {
+            if (c == '*' && at(pos + 1) == '/') {
+                pos += 2;
+                if (--depth == 0) {
+                    break;
+                }
+            } else if (c == '/' && at(pos + 1) == '*') {
+                pos += 2;
+                depth++;
+            } else {
+                pos++;
+            }
+        }
+        return pos;
+    }
+
+    // Удвоенная кавычка внутри - экранированная; в E'...' экранирует еще и обратная косая черта
+    private long skipQuoted(long pos, int quote, boolean backslashEscapes) throws IOException {
+        boolean[] stops = quote == '"' ? IDENTIFIER_STOPS : backslashEscapes ? ESCAPE_STRING_STOPS : STRING_STOPS;
+        int c;
+        while ((c = at(pos = scan(pos, stops))) >= 0) {
+            if (backslashEscapes && c == '\\') {
+                pos += 2;
+            } else if (c == quote) {
+                if (at(pos + 1) != quote) {
+                    return pos + 1;
+                }
+                pos += 2;
+            } else {
+                pos++;
+            }
+        }
+        return pos;
+    }
+
+    private boolean isEscapeString(long quote) throws IOException {
+        if (quote == start) {
+            return false;
+        }
+        int prefix = at(quote - 1);
+        return (prefix == 'E' || prefix == 'e') && (quote - 1 == start || !isIdentifierPart(at(quote - 2)));
+    }
+
+    // $$...$$ или $tag$...$tag$; -1 - это не начало такой строки ($1, имя с $ внутри)
+    private long skipDollarQuoted(long pos) throws IOException {
+        if (pos > start && isIdentifierPart(at(pos - 1))) {
+            return -1;
+        }
+        long tagEnd = pos + 1;
+        int c = at(tagEnd);
+        if (c != '$') {
+            if (!isIdentifierStart(c)) {
+                return -1;
+            }
+            while (isIdentifierPart(c = at(tagEnd)) && c != '$') {
+                tagEnd++;
+            }
+            if (c != '$') {
+                return -1;
+            }
+        }
+        int tagLength = (int) (tagEnd - pos + 1);
+        long body = tagEnd + 1;
+        while ((c = at(body = scan(body, DOLLAR_STOPS))) >= 0) {
+            if (c == '$' && matches(body, pos, tagLength)) {
+                return body + tagLength;
+            }
+            body++;
+        }
+        return body;
+    }
+
+    private boolean matches(long pos, long tag, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            if (at(pos + i) != at(tag + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIdentifierStart(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c >= 0x80;
+    }
+
+    private static boolean isIdentifierPart(int c) {
+        return isIdentifierStart(c) || (c >= '0' && c <= '9') || c == '$';
+    }
+
+    private long lineEnd(long pos) throws IOException {
+        long p = pos;
+        int c;
+        while ((c = at(p)) == ' ' || c == '\t' || c == '\r') {
+            p++;
+        }
+        if (c == '\n') {
+            return p + 1;
+        }
+        return c < 0 ? p : pos;
+    }
+
+    // Первая позиция с байтом из stops (или конец скрипта)
+    private long scan(long pos, boolean[] stops) throws IOException {
+        while (true) {
+            long offset = pos - windowStart;
+            if (offset < 0 || offset >= window.limit()) {
+                if (!moveWindow(pos)) {
+                    return pos;
+                }
+                offset = pos - windowStart;
+            }
+            ByteBuffer w = window;
+            int limit = w.limit();
+            int i = (int) offset;
+            while (i < limit && !stops[w.get(i) & 0xff]) {
+                i++;
+            }
+            pos = windowStart + i;
+            if (i < limit) {
+                return pos;
+            }
+        }
+    }
+
+    private static boolean[] stops(String chars) {
+        boolean[] stops = new boolean[256];
+        for (char c : chars.toCharArray()) {
+            stops[c] = true;
+        }
+        return stops;
+    }
+
+    // Байт по абсолютной позиции; -1 - конец скрипта
+    private int at(long pos) throws IOException {
+        long offset = pos - windowStart;
+        if (offset >= window.limit() || offset < 0) {
+            if (!moveWindow(pos)) {
+                return -1;
+            }
+            offset = pos - windowStart;
+        }
+        return window.get((int) offset) & 0xff;
+    }
+
+    // Окно сдвигается так, чтобы в нем остались начало текущего оператора и pos
+    private boolean moveWindow(long pos) throws IOException {
+        long keepFrom = start >= 0 ? Math.min(start, pos) : pos;
+        if (pos - keepFrom >= Integer.MAX_VALUE - 8) {
+            throw new IOException("SQL statement at byte " + keepFrom + " is too long");
+        }
+        if (file != null) {
+            if (pos >= fileSize) {
+                return false;
+            }
+            long size = Math.min(fileSize - keepFrom, Math.max(MAPPED_WINDOW_SIZE, 2 * (pos - keepFrom + 1)));
+            window = file.map(FileChannel.MapMode.READ_ONLY, keepFrom, Math.min(size, Integer.MAX_VALUE - 8));
+            windowStart = keepFrom;
+            return true;
+        }
+
+        if (keepFrom < windowStart) {
+            throw new IOException("Cannot seek backwards in a stream to byte " + keepFrom);
+        }
+        while (pos >= windowStart + window.limit()) {
+            if (streamDrained) {
+                return false;
+            }
+            fillStream(keepFrom, pos);
+        }
+        return true;
+    }
+
+    private void fillStream(long keepFrom, long pos) throws IOException {
+        int keep = (int) Math.min(keepFrom - windowStart, window.limit());
+        ByteBuffer target = window;
+        long needed = pos - keepFrom + 1;
+        if (needed > window.capacity()) {
+            target = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, 2L * window.capacity())));
+            target.put(window.duplicate().position(keep));
+        } else {
+            window.position(keep);
+            window.compact();
+        }
+        windowStart += keep;
+        while (target.hasRemaining()) {
+            if (stream.read(target) < 0) {
+                streamDrained = true;
+                break;
+            }
+        }
+        target.flip();
+        window = target;
+    }
+}